@@ -0,0 +1,100 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A token bucket of DynamoDB capacity units for one kind of capacity (reads or writes). The refill rate starts at
+ * the table's provisioned units per second, halves whenever DynamoDB throttles and creeps back up with every
+ * successful call. Callers are charged a running estimate of the operation's cost up front, which is settled
+ * against the ConsumedCapacity DynamoDB reports, so expensive scans drain the bucket in proportion to what they read.
+ *
+ * Low-priority callers (scans) only get tokens while the bucket is more than half full, leaving the rest for
+ * point reads and writes. A rate of 0 or less disables limiting.
+ */
+public class AdaptiveRateLimiter {
+
+    private static final double BURST_SECONDS = 5;
+    private static final double MIN_RATE_FACTOR = 0.25;
+    private static final double MAX_RATE_FACTOR = 2;
+    private static final double RATE_INCREASE_FACTOR = 0.02;
+    private static final double THROTTLE_DECREASE_FACTOR = 0.5;
+    private static final double LOW_PRIORITY_RESERVE = 0.5;
+    private static final double ESTIMATE_WEIGHT = 0.2;
+
+    private final double baseRate;
+    private final double defaultCost;
+    private final Map<String, Double> costEstimates = new ConcurrentHashMap<>();
+
+    private double rate;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    public AdaptiveRateLimiter(double unitsPerSecond, double defaultCost) {
+        this.baseRate = unitsPerSecond;
+        this.defaultCost = defaultCost;
+        this.rate = unitsPerSecond;
+        this.tokens = unitsPerSecond * BURST_SECONDS;
+    }
+
+    public boolean isEnabled() {
+        return baseRate > 0;
+    }
+
+    public double estimate(String operation) {
+        return costEstimates.getOrDefault(operation, defaultCost);
+    }
+
+    // Returns 0 and takes the tokens if they are available, otherwise how long to wait before trying again
+    public synchronized long tryAcquire(double cost, boolean lowPriority) {
+        if (!isEnabled()) {
+            return 0;
+        }
+
+        refill();
+
+        double capacity = rate * BURST_SECONDS;
+        double required = Math.min(capacity, lowPriority ? cost + capacity * LOW_PRIORITY_RESERVE : cost);
+
+        if (tokens >= required) {
+            tokens -= cost;
+            return 0;
+        }
+
+        return (long) Math.ceil((required - tokens) / rate * 1000);
+    }
+
+    // Settles the estimate charged by tryAcquire against the capacity the call actually consumed
+    public synchronized void onSuccess(String operation, double chargedCost, double consumedCost) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        tokens -= consumedCost - chargedCost;
+        rate = Math.min(baseRate * MAX_RATE_FACTOR, rate + baseRate * RATE_INCREASE_FACTOR);
+        costEstimates.merge(operation, consumedCost,
+                (estimate, consumed) -> estimate * (1 - ESTIMATE_WEIGHT) + consumed * ESTIMATE_WEIGHT);
+    }
+
+    public synchronized void onThrottle() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        refill();
+
+        rate = Math.max(baseRate * MIN_RATE_FACTOR, rate * THROTTLE_DECREASE_FACTOR);
+        tokens = Math.min(tokens, 0);
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+
+        tokens = Math.min(rate * BURST_SECONDS, tokens + (now - lastRefillNanos) / 1e9 * rate);
+        lastRefillNanos = now;
+    }
+}
@@ -1,11 +1,25 @@
 package com.github.phidescode.JavaDynamoDBService;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.concurrent.ExecutionException;
-
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.crac.Core;
+import org.crac.Resource;
 import org.springframework.http.HttpStatus;
 
 import com.amazonaws.secretsmanager.caching.SecretCache;
@@ -13,7 +27,10 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
@@ -24,34 +41,335 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  * <a href=https://docs.aws.amazon.com/lambda/latest/dg/java-handler.html>Lambda
  * Java Handler</a> for more information
  */
-public class App implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+public class App implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>, Resource {
 
     private static HashMap<String, String> headers;
     private static final String ORIGIN_URL = "http://localhost:3000";
-    private static final DynamoDBHandler dbHandler = new DynamoDBHandler();
-    private final SecretCache cache = new SecretCache();
+    private static final String SECRET_NAME = "APPNAME_API_KEY";
+    private static final String PRIMING_BODY = "{\"description\": \"priming\", \"quantity\": 1}";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_BATCH_BODY_LENGTH = 1024 * 1024;
+    private static final long API_GATEWAY_TIMEOUT_MILLIS = 29_000;
+    private static final long RESPONSE_MARGIN_MILLIS = 250;
+    private static final long RETRY_EXPORT_AFTER_MILLIS = 1000;
+    private static final String NEXT_TOKEN_HEADER = "Next-Token";
+
+    // Responses depend on the API key, so shared caches must not keep them; no-cache has clients revalidate with
+    // If-None-Match, which costs a 304 instead of the body while nothing has changed
+    private static final String DEFAULT_CACHE_CONTROL = "private, no-cache";
+    private static final Set<String> NAMED_ROUTES = Set.of("export", "import", "stats", "batch", "batch-get");
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // API key lookups have a pool of their own, so exports and imports, which block for the whole request, never
+    // hold up authenticating the requests behind them
+    private static final ExecutorService executor = AsyncUtils.newBlockingExecutor("app-worker", Config.getInt("APP_WORKER_THREADS", 16));
+    private static final ExecutorService bulkExecutor = AsyncUtils.newBlockingExecutor("bulk-worker", Config.getInt("BULK_WORKER_THREADS", 4));
+    private final DynamoDBHandler dbHandler;
+    private final BulkTransfer bulkTransfer;
+    private final QuantityCoalescer quantityCoalescer;
+    private final SecretCache cache;
+
+    // Cache-Control of the cacheable GET routes, by operation; only these answer If-None-Match
+    private final Map<String, String> cacheControls;
 
     public App() {
+        this(new DynamoDBHandler(), new SecretCache());
+    }
+
+    // Lambda creates a single App per container, so the handler and secret cache live as long as the container
+    App(DynamoDBHandler dbHandler, SecretCache cache) {
+        this.dbHandler = dbHandler;
+        this.bulkTransfer = new BulkTransfer(dbHandler);
+        this.quantityCoalescer = new QuantityCoalescer(dbHandler);
+        this.cache = cache;
+        this.cacheControls = Map.of(
+                "processGetById", Config.getString("CACHE_CONTROL_GET_BEAN", DEFAULT_CACHE_CONTROL),
+                "processGetAll", Config.getString("CACHE_CONTROL_LIST_BEANS", DEFAULT_CACHE_CONTROL),
+                "processStats", Config.getString("CACHE_CONTROL_STATS", DEFAULT_CACHE_CONTROL));
+
         headers = new HashMap<>();
         headers.put("Access-Control-Allow-Origin", ORIGIN_URL);
-        headers.put("Access-Control-Allow-Headers", "Content-Type, x-api-key");
-        headers.put("Access-Control-Allow-Methods", "OPTIONS, POST, GET, PUT, DELETE");
+        headers.put("Access-Control-Allow-Headers", "Content-Type, x-api-key, Idempotency-Key, If-Match, If-None-Match");
+        headers.put("Access-Control-Expose-Headers", "ETag, Retry-After, " + NEXT_TOKEN_HEADER);
+        headers.put("Access-Control-Allow-Methods", "OPTIONS, POST, GET, PUT, PATCH, DELETE");
+
+        // With SnapStart the runtime calls beforeCheckpoint/afterRestore around the snapshot
+        Core.getGlobalContext().register(this);
+
+        // Without SnapStart, priming during init still moves first-request work into the boosted init phase
+        if (Config.getBoolean("PRIME_ON_INIT", false)) {
+            prime();
+        }
+    }
+
+    @Override
+    public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+        prime();
+    }
+
+    @Override
+    public void afterRestore(org.crac.Context<? extends Resource> context) {
+        Logger.log("Restoring from snapshot");
+
+        // connections and anything cached in the snapshot are stale by the time it is restored
+        dbHandler.reconnect();
+
+        try {
+            cache.refreshNow(SECRET_NAME);
+        } catch (InterruptedException | RuntimeException e) {
+            Logger.logError("afterRestore could not refresh secret: ", e);
+        }
+    }
+
+    // Exercises the SDK client, credentials, secret lookup and Jackson (de)serializers so that the classes are
+    // loaded and initialized before the first real request, or before the SnapStart snapshot is taken
+    void prime() {
+        Logger.log("Priming");
+
+        try {
+            cache.getSecretString(SECRET_NAME);
+        } catch (RuntimeException e) {
+            Logger.logError("prime could not fetch secret: ", e);
+        }
+
+        dbHandler.prime();
+
+        try {
+            Entity entity = new Entity("priming", EntityUtils.validateRequestBody(PRIMING_BODY));
+            String pageToken = EntityUtils.encodePageToken(EntityUtils.getItemKey(entity.getId()));
+            EntityUtils.decodePageToken(pageToken);
+
+            ResponseWriter.write(new ResponseStructure(entity, null));
+            ResponseWriter.write(new ResponseStructure(entity, null), FieldSelection.parse("id,quantity"));
+            ResponseWriter.write(new ResponseStructure(new EntityPage(List.of(entity), pageToken), null));
+            ResponseWriter.write(new ResponseStructure(List.of(BatchItemResult.ok(entity.getId(), entity)), null));
+
+            for (WireFormat format : WireFormat.values()) {
+                byte[] body = ResponseWriter.writeBytes(new ResponseStructure(entity, null), FieldSelection.ALL, format);
+                ResponseCompressor.compress(body, ResponseCompressor.GZIP);
+            }
+
+            for (HttpStatus httpStatus : List.of(HttpStatus.BAD_REQUEST, HttpStatus.UNAUTHORIZED, HttpStatus.NOT_FOUND,
+                    HttpStatus.METHOD_NOT_ALLOWED, HttpStatus.TOO_MANY_REQUESTS, HttpStatus.INTERNAL_SERVER_ERROR)) {
+                ResponseWriter.errorBody(httpStatus);
+            }
+        } catch (JsonProcessingException e) {
+            Logger.logError("prime could not serialize: ", e);
+        }
     }
 
     @Override
     public APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Context context) {
         Logger.setLogger(context.getLogger());
 
+        APIGatewayProxyResponseEvent response = handleRequest(request, getDeadline(context));
+
+        Metrics.flush();
+
+        Logger.debug("Entity cache: {}", dbHandler.getEntityCache());
+
+        return response;
+    }
+
+    // Routes a request and records its metrics, leaving the caller to flush them: once per invocation in Lambda,
+    // periodically in the standalone Server, which handles many requests at once
+    APIGatewayProxyResponseEvent handleRequest(APIGatewayProxyRequestEvent request, Deadline deadline) {
+        long startNanos = System.nanoTime();
+        Logger.debug("Processing {} request", request.getHttpMethod());
+
+        APIGatewayProxyResponseEvent response = dispatch(request, deadline);
+
+        recordRequest(request, response.getStatusCode(), startNanos);
+
+        return response;
+    }
+
+    private static void recordRequest(APIGatewayProxyRequestEvent request, int statusCode, long startNanos) {
+        Metrics.recordMillisSince("Route", getRoute(request), "Latency", startNanos);
+        if (statusCode >= 400) {
+            Metrics.increment("StatusCode", String.valueOf(statusCode), "Errors");
+        } else if (statusCode == HttpStatus.NOT_MODIFIED.value()) {
+            Metrics.increment("Route", getRoute(request), "NotModified");
+        }
+    }
+
+    // The standalone Server can stream a response body, so it sends NDJSON exports whole rather than a page at a time
+    boolean isNdjsonExport(APIGatewayProxyRequestEvent request) {
+        String[] pathSegments = request.getPath().split("/");
+
+        return "GET".equals(request.getHttpMethod()) && pathSegments.length == 3 && "export".equals(pathSegments[2])
+                && acceptsNdjson(getHeader(request, "Accept"));
+    }
+
+    /**
+     * Streams an NDJSON export, from ?nextToken= to the end of the table, for the standalone Server. open is called
+     * with the response headers and returns the body stream, once there is a first bean to write (or at the end,
+     * for an empty table). Until then a failure, e.g. a bad API key or token, is returned as an error response;
+     * null means the export was sent. After that the only way left to report a failure is to break off the
+     * response, so it is thrown.
+     */
+    APIGatewayProxyResponseEvent streamExport(APIGatewayProxyRequestEvent request, Deadline deadline, Function<Map<String, String>, OutputStream> open) {
+        long startNanos = System.nanoTime();
+        String contentEncoding = ResponseCompressor.negotiate(getHeader(request, "Accept-Encoding"));
+        Map<String, String> responseHeaders = new HashMap<>(headers);
+
+        responseHeaders.put("Content-Type", BulkTransfer.NDJSON_MEDIA_TYPE);
+        responseHeaders.put("Vary", "Accept, Accept-Encoding");
+        if (contentEncoding != null) {
+            responseHeaders.put("Content-Encoding", contentEncoding);
+        }
+
+        DeferredOutputStream output = new DeferredOutputStream(() -> {
+            try {
+                return ResponseCompressor.compressing(open.apply(responseHeaders), contentEncoding);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        APIGatewayProxyResponseEvent response = null;
+
+        try {
+            authorize(request).join();
+
+            if (bulkTransfer.export(output, getExportToken(request), Long.MAX_VALUE, deadline, checkpoint -> {}) != null) {
+                throw new ThrottledException("Export did not reach the end of the table within the request deadline", RETRY_EXPORT_AFTER_MILLIS);
+            }
+
+            output.close();
+        } catch (IOException | RuntimeException e) {
+            if (output.isOpen()) {
+                recordRequest(request, HttpStatus.INTERNAL_SERVER_ERROR.value(), startNanos);
+                throw e instanceof IOException ioException ? new UncheckedIOException(ioException) : (RuntimeException) e;
+            }
+
+            response = handleError("streamExport", e);
+        }
+
+        recordRequest(request, response == null ? HttpStatus.OK.value() : response.getStatusCode(), startNanos);
+
+        return response;
+    }
+
+    // Opens the stream it writes to on the first write, or on close when nothing was written
+    private static class DeferredOutputStream extends OutputStream {
+
+        private final Supplier<OutputStream> opener;
+        private OutputStream target;
+
+        private DeferredOutputStream(Supplier<OutputStream> opener) {
+            this.opener = opener;
+        }
+
+        private boolean isOpen() {
+            return target != null;
+        }
+
+        private OutputStream target() {
+            if (target == null) {
+                target = opener.get();
+            }
+
+            return target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            target().write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            target().close();
+        }
+    }
+
+    // Leaves time to write the response before either Lambda or API Gateway gives up on the request
+    private static Deadline getDeadline(Context context) {
+        long remainingMillis = Math.min(context.getRemainingTimeInMillis(), API_GATEWAY_TIMEOUT_MILLIS);
+
+        return Deadline.after(remainingMillis - RESPONSE_MARGIN_MILLIS);
+    }
+
+    private APIGatewayProxyResponseEvent dispatch(APIGatewayProxyRequestEvent request, Deadline deadline) {
         String httpMethod = request.getHttpMethod();
-        Logger.log("Processing " + httpMethod + " request");
 
         if ("OPTIONS".equals(httpMethod)) {
             return processOptions();
         }
 
+        CompletableFuture<Void> authorized = authorize(request);
+
+        CompletableFuture<APIGatewayProxyResponseEvent> responseFuture = switch (httpMethod) {
+            case "GET" ->
+                processGet(request, authorized, deadline);
+            case "POST" ->
+                processPostRoute(request, authorized, deadline);
+            case "PUT" ->
+                processPut(request, authorized, deadline);
+            case "PATCH" ->
+                processPatch(request, authorized, deadline);
+            case "DELETE" ->
+                processDelete(request, authorized, deadline);
+            default ->
+                authorized
+                .thenApply(ignored -> returnError(HttpStatus.METHOD_NOT_ALLOWED))
+                .exceptionally(throwable -> handleError("handleRequest", throwable));
+        };
+
+        // the only place the request blocks
+        return responseFuture.join();
+    }
+
+    // The secret lookup runs in the background while the request is parsed and, for reads, while the
+    // DynamoDB call is in flight; writes are only sent once the caller is authenticated
+    private CompletableFuture<Void> authorize(APIGatewayProxyRequestEvent request) {
+        String apiKey = getApiKey(request);
+
+        return CompletableFuture
+                .supplyAsync(() -> cache.getSecretString(SECRET_NAME), executor)
+                .thenAccept(secret -> {
+                    if (apiKey == null || !secret.equals(apiKey)) {
+                        throw new SecurityException("Could not authenticate header");
+                    }
+                });
+    }
+
+    // Metrics are dimensioned by the route template rather than the raw path, which would make every id its own metric
+    private static String getRoute(APIGatewayProxyRequestEvent request) {
+        if (request.getResource() != null) {
+            return request.getHttpMethod() + " " + request.getResource();
+        }
+
+        String[] pathSegments = request.getPath().split("/");
+
+        if (pathSegments.length >= 3 && !NAMED_ROUTES.contains(pathSegments[2])) {
+            pathSegments[2] = "{id}";
+        }
+
+        return request.getHttpMethod() + " " + String.join("/", pathSegments);
+    }
+
+    private String getApiKey(APIGatewayProxyRequestEvent request) {
         // Extract custom header from the request
         Map<String, String> requestHeaders = request.getHeaders();
 
+        if (requestHeaders == null) {
+            return null;
+        }
+
         String apiKey = requestHeaders.get("x-api-key");
 
         // x-api-key shows up in Camel-Case when run in SAM for some reason
@@ -59,170 +377,619 @@ public class App implements RequestHandler<APIGatewayProxyRequestEvent, APIGatew
             apiKey = requestHeaders.get("X-Api-Key");
         }
 
-        final String secret = cache.getSecretString("APPNAME_API_KEY");
+        return apiKey;
+    }
 
-        if (apiKey == null || !secret.equals(apiKey)) {
-            Logger.log("Could not authenticate header");
-            return returnError(HttpStatus.UNAUTHORIZED);
+    // HTTP header names are case-insensitive, and API Gateway passes them on as the client sent them
+    private static String getHeader(APIGatewayProxyRequestEvent request, String name) {
+        Map<String, String> requestHeaders = request.getHeaders();
+
+        if (requestHeaders == null) {
+            return null;
         }
 
-        return switch (httpMethod) {
-            case "GET" ->
-                processGet(request);
-            case "POST" ->
-                processPost(request);
-            case "PUT" ->
-                processPut(request);
-            case "DELETE" ->
-                processDelete(request);
-            default ->
-                returnError(HttpStatus.METHOD_NOT_ALLOWED);
-        };
+        for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+
+        return null;
+    }
+
+    private static RequestBody getRequestBody(APIGatewayProxyRequestEvent request) throws ValidationException {
+        return RequestBody.of(request, getHeader(request, "Content-Type"));
     }
 
     private APIGatewayProxyResponseEvent returnError(HttpStatus httpStatus) {
-        Logger.log("Running returnError");
-        String errorMessage = httpStatus.getReasonPhrase();
-        ResponseStructure responseContent = new ResponseStructure(null, errorMessage);
+        return createResponse(httpStatus, ResponseWriter.errorBody(httpStatus));
+    }
+
+    private APIGatewayProxyResponseEvent returnThrottled(long retryAfterMillis) {
+        APIGatewayProxyResponseEvent response = returnError(HttpStatus.TOO_MANY_REQUESTS);
+
+        Map<String, String> throttledHeaders = new HashMap<>(headers);
+        throttledHeaders.put("Retry-After", String.valueOf(Math.max(1, (retryAfterMillis + 999) / 1000)));
+        response.setHeaders(throttledHeaders);
+
+        return response;
+    }
+
+    private APIGatewayProxyResponseEvent handleError(String operation, Throwable throwable) {
+        Throwable cause = AsyncUtils.unwrap(throwable);
+
+        if (cause instanceof SecurityException) {
+            Logger.warn("{} could not authenticate header", operation);
+            return returnError(HttpStatus.UNAUTHORIZED);
+        }
+
+        if (cause instanceof ThrottledException throttledException) {
+            Logger.warn("{} shed load: {}", operation, cause.getMessage());
+            return returnThrottled(throttledException.getRetryAfterMillis());
+        }
+
+        if (cause instanceof ValidationException validationException) {
+            Logger.warn("{} rejected request: {}", operation, cause.getMessage());
+            ResponseStructure responseContent = new ResponseStructure(null, HttpStatus.BAD_REQUEST.getReasonPhrase(), validationException.getFieldErrors());
+            return createResponse(HttpStatus.BAD_REQUEST, responseContent);
+        }
+
+        if (cause instanceof ConflictException) {
+            Logger.warn("{} rejected request: {}", operation, cause.getMessage());
+            return returnError(HttpStatus.CONFLICT);
+        }
+
+        if (cause instanceof PreconditionFailedException) {
+            Logger.warn("{} rejected request: {}", operation, cause.getMessage());
+            return returnError(HttpStatus.PRECONDITION_FAILED);
+        }
+
+        if (cause instanceof NoSuchElementException
+                || cause instanceof ClassCastException
+                || cause instanceof JsonProcessingException
+                || cause instanceof IllegalArgumentException) {
+            Logger.warn("{} rejected request: {}", operation, cause.getMessage());
+            return returnError(HttpStatus.BAD_REQUEST);
+        }
+
+        Logger.logError(operation + " caught error: ", cause);
+
+        return returnError(HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    private CompletableFuture<APIGatewayProxyResponseEvent> respond(String operation, APIGatewayProxyRequestEvent request, CompletableFuture<?> dataFuture) {
+        return respond(operation, request, dataFuture, FieldSelection.ALL);
+    }
+
+    // Data is written in the format the request's Accept header asks for and compressed per Accept-Encoding;
+    // error bodies are always JSON.
+    //
+    // A single bean carries its version as an ETag, for If-Match on the next write and If-None-Match on the next
+    // read, which is answered before anything is serialized (and, when the bean is cached, without DynamoDB).
+    // Other cacheable responses are tagged with a hash of their body, which still saves sending it. Either way the
+    // tag names one representation, so responses that carry one vary on Accept and Accept-Encoding.
+    private CompletableFuture<APIGatewayProxyResponseEvent> respond(String operation, APIGatewayProxyRequestEvent request, CompletableFuture<?> dataFuture, FieldSelection fields) {
+        WireFormat format = WireFormat.forAccept(getHeader(request, "Accept"));
+        String contentEncoding = ResponseCompressor.negotiate(getHeader(request, "Accept-Encoding"));
+        String cacheControl = cacheControls.get(operation);
+        String ifNoneMatch = cacheControl == null ? null : getHeader(request, "If-None-Match");
+
+        return dataFuture
+                .thenApply(data -> {
+                    String eTag = data instanceof Entity entity ? EntityUtils.getETag(entity, fields, format, contentEncoding) : null;
+
+                    if (eTag != null && EntityUtils.matchesIfNoneMatch(ifNoneMatch, eTag)) {
+                        return returnNotModified(eTag, cacheControl);
+                    }
+
+                    APIGatewayProxyResponseEvent response = createResponse(HttpStatus.OK, new ResponseStructure(data, null), fields, format, contentEncoding);
+
+                    if (response.getStatusCode() != HttpStatus.OK.value()) {
+                        return response;
+                    }
+
+                    if (eTag == null && cacheControl != null) {
+                        eTag = EntityUtils.getContentETag(response.getBody());
+
+                        if (EntityUtils.matchesIfNoneMatch(ifNoneMatch, eTag)) {
+                            return returnNotModified(eTag, cacheControl);
+                        }
+                    }
+
+                    if (eTag != null) {
+                        Map<String, String> responseHeaders = response.getHeaders() == headers ? new HashMap<>(headers) : response.getHeaders();
+                        responseHeaders.put("ETag", eTag);
+                        responseHeaders.put("Vary", "Accept, Accept-Encoding");
+
+                        if (cacheControl != null) {
+                            responseHeaders.put("Cache-Control", cacheControl);
+                        }
+
+                        response.setHeaders(responseHeaders);
+                    }
+
+                    return response;
+                })
+                .exceptionally(throwable -> handleError(operation, throwable));
+    }
+
+    private APIGatewayProxyResponseEvent returnNotModified(String eTag, String cacheControl) {
+        Map<String, String> notModifiedHeaders = new HashMap<>(headers);
+        notModifiedHeaders.put("ETag", eTag);
+        notModifiedHeaders.put("Cache-Control", cacheControl);
+        notModifiedHeaders.put("Vary", "Accept, Accept-Encoding");
+
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+
+        response.setIsBase64Encoded(false);
+        response.setStatusCode(HttpStatus.NOT_MODIFIED.value());
+        response.setHeaders(notModifiedHeaders);
+        response.setBody("");
 
-        return createResponse(httpStatus, responseContent);
+        return response;
     }
 
-    private APIGatewayProxyResponseEvent processGet(APIGatewayProxyRequestEvent request) {
+    private CompletableFuture<APIGatewayProxyResponseEvent> processGet(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
         String[] pathSegments = request.getPath().split("/");
 
+        if (pathSegments.length == 3 && "export".equals(pathSegments[2])) {
+            return processExport(request, authorized, deadline);
+        }
+
+        if (pathSegments.length == 3 && "stats".equals(pathSegments[2])) {
+            return processStats(request, authorized, deadline);
+        }
+
+        FieldSelection fields;
+
+        try {
+            fields = getFieldSelection(request);
+        } catch (ValidationException e) {
+            return rejectFields("processGet", e, authorized);
+        }
+
         if (pathSegments.length == 3) {
-            String id = pathSegments[2];
-            return processGetById(id);
+            return processGetById(request, pathSegments[2], fields, authorized, deadline);
         }
 
-        return processGetAll();
+        return processGetAll(request, fields, authorized, deadline);
     }
 
-    private APIGatewayProxyResponseEvent processGetById(String id) {
-        try {
-            Entity entity = dbHandler.getEntity(id);
+    // One GetItem of the summary StatsHandler maintains, instead of a scan of the whole table
+    private CompletableFuture<APIGatewayProxyResponseEvent> processStats(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        if (!dbHandler.hasStats()) {
+            return authorized
+                    .thenApply(ignored -> returnError(HttpStatus.NOT_FOUND))
+                    .exceptionally(throwable -> handleError("processStats", throwable));
+        }
 
-            ResponseStructure responseContent = new ResponseStructure(entity, null);
-            return createResponse(HttpStatus.OK, responseContent);
-        } catch (NoSuchElementException e) {
-            Logger.logError("processGetById caught error: ", e);
-            return returnError(HttpStatus.BAD_REQUEST);
-        } catch (InterruptedException | ExecutionException e) {
-            Logger.logError("processGetById caught error: ", e);
-            return returnError(HttpStatus.INTERNAL_SERVER_ERROR);
+        CompletableFuture<BeanStats> statsFuture = dbHandler.getStats(deadline);
+
+        return respond("processStats", request, authorized.thenCompose(ignored -> statsFuture));
+    }
+
+    private CompletableFuture<APIGatewayProxyResponseEvent> processGetById(APIGatewayProxyRequestEvent request, String id, FieldSelection fields, CompletableFuture<Void> authorized, Deadline deadline) {
+        CompletableFuture<Entity> entityFuture = dbHandler.getEntity(id, fields, deadline);
+
+        return respond("processGetById", request, authorized.thenCompose(ignored -> entityFuture), fields);
+    }
+
+    private static FieldSelection getFieldSelection(APIGatewayProxyRequestEvent request) throws ValidationException {
+        Map<String, String> queryParameters = request.getQueryStringParameters();
+
+        return FieldSelection.parse(queryParameters == null ? null : queryParameters.get("fields"));
+    }
+
+    // Like other validation errors, an invalid fields parameter is only reported to authenticated callers
+    private CompletableFuture<APIGatewayProxyResponseEvent> rejectFields(String operation, ValidationException e, CompletableFuture<Void> authorized) {
+        return authorized
+                .<APIGatewayProxyResponseEvent>thenCompose(ignored -> CompletableFuture.failedFuture(e))
+                .exceptionally(throwable -> handleError(operation, throwable));
+    }
+
+    private CompletableFuture<APIGatewayProxyResponseEvent> processGetAll(APIGatewayProxyRequestEvent request, FieldSelection fields, CompletableFuture<Void> authorized, Deadline deadline) {
+        Map<String, String> queryParameters = request.getQueryStringParameters();
+        String nextToken = queryParameters == null ? null : queryParameters.get("nextToken");
+
+        CompletableFuture<EntityPage> pageFuture = AsyncUtils.attempt(() -> getPageLimit(queryParameters))
+                .thenCompose(limit -> dbHandler.listEntities(limit, nextToken, EntityFilter.parse(queryParameters), fields, deadline));
+
+        return respond("processGetAll", request, authorized.thenCompose(ignored -> pageFuture), fields);
+    }
+
+    private int getPageLimit(Map<String, String> queryParameters) throws IllegalArgumentException {
+        int limit = DEFAULT_PAGE_SIZE;
+
+        if (queryParameters != null && queryParameters.containsKey("limit")) {
+            limit = Integer.parseInt(queryParameters.get("limit"));
+        }
+
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
         }
+
+        return limit;
     }
 
-    private APIGatewayProxyResponseEvent processGetAll() {
-        try {
-            List<Entity> entities = dbHandler.listEntities();
+    // An export is a parallel scan read a page at a time, each page within EXPORT_MAX_BYTES and the request
+    // deadline; ?nextToken= continues it, and an NDJSON page carries the token in a Next-Token header. Scans are
+    // expensive, so unlike point reads it is not started speculatively. With Accept: application/x-ndjson beans
+    // are written straight into the body as the scan returns them, instead of being collected into a list and
+    // then serialized. The export blocks while it scans, so it runs on a bulk worker thread.
+    private CompletableFuture<APIGatewayProxyResponseEvent> processExport(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        String exportToken = getExportToken(request);
+
+        if (!acceptsNdjson(getHeader(request, "Accept"))) {
+            return respond("processExport", request, authorized.thenApplyAsync(ignored -> bulkTransfer.exportPage(exportToken, deadline), bulkExecutor));
+        }
+
+        String contentEncoding = ResponseCompressor.negotiate(getHeader(request, "Accept-Encoding"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
 
-            ResponseStructure responseContent = new ResponseStructure(entities, null);
+        return authorized
+                .thenApplyAsync(ignored -> bulkTransfer.export(output, exportToken, deadline), bulkExecutor)
+                .thenApply(nextToken -> {
+                    APIGatewayProxyResponseEvent response = createResponse(HttpStatus.OK, output.toByteArray(), BulkTransfer.NDJSON_MEDIA_TYPE, false, contentEncoding);
 
-            return createResponse(HttpStatus.OK, responseContent);
-        } catch (InterruptedException | ExecutionException e) {
-            Logger.logError("processGetAll caught error: ", e);
-            return returnError(HttpStatus.INTERNAL_SERVER_ERROR);
+                    if (nextToken != null) {
+                        response.getHeaders().put(NEXT_TOKEN_HEADER, nextToken);
+                    }
+
+                    return response;
+                })
+                .exceptionally(throwable -> handleError("processExport", throwable));
+    }
+
+    private static String getExportToken(APIGatewayProxyRequestEvent request) {
+        Map<String, String> queryParameters = request.getQueryStringParameters();
+
+        return queryParameters == null ? null : queryParameters.get("nextToken");
+    }
+
+    private static boolean acceptsNdjson(String accept) {
+        if (accept == null) {
+            return false;
+        }
+
+        for (String range : accept.split(",")) {
+            String[] parameters = range.split(";");
+
+            if (BulkTransfer.NDJSON_MEDIA_TYPE.equals(parameters[0].trim().toLowerCase(Locale.ROOT)) && WireFormat.getQuality(parameters) > 0) {
+                return true;
+            }
         }
+
+        return false;
     }
 
-    private APIGatewayProxyResponseEvent processPost(APIGatewayProxyRequestEvent request) {
+    // Body is NDJSON, one bean per line; ?skip= resumes after the checkpoint of an earlier, incomplete run
+    private CompletableFuture<APIGatewayProxyResponseEvent> processImport(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        CompletableFuture<Long> skipLinesFuture = AsyncUtils.attempt(() -> getSkipLines(request.getQueryStringParameters()));
+        CompletableFuture<RequestBody> requestBodyFuture = AsyncUtils.attempt(() -> {
+            RequestBody requestBody = getRequestBody(request);
+
+            if (requestBody.isEmpty()) {
+                throw new ValidationException("$", "request body is required");
+            }
+
+            return requestBody;
+        });
+
+        // the import blocks while it waits for its batches, so it runs on a bulk worker thread
+        return respond("processImport", request, authorized
+                .thenCompose(ignored -> skipLinesFuture)
+                .thenCombineAsync(requestBodyFuture, (skipLines, requestBody) -> {
+                    try {
+                        return bulkTransfer.importEntities(requestBody.createReader(), skipLines, deadline, checkpoint -> {});
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, bulkExecutor));
+    }
+
+    private static long getSkipLines(Map<String, String> queryParameters) throws ValidationException {
+        String skip = queryParameters == null ? null : queryParameters.get("skip");
+
+        if (skip == null) {
+            return 0;
+        }
+
         try {
-            String requestBody = request.getBody();
-            BaseEntity newEntity = EntityUtils.validateRequestBody(requestBody);
-            Entity entity = dbHandler.putEntity(newEntity);
+            long skipLines = Long.parseLong(skip);
 
-            ResponseStructure responseContent = new ResponseStructure(entity, null);
+            if (skipLines >= 0) {
+                return skipLines;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
 
-            return createResponse(HttpStatus.OK, responseContent);
-        } catch (ClassCastException | JsonProcessingException e) {
-            Logger.logError("processPost caught error: ", e);
-            return returnError(HttpStatus.BAD_REQUEST);
-        } catch (ExecutionException | InterruptedException e) {
-            Logger.logError("processPost caught error: ", e);
-            return returnError(HttpStatus.INTERNAL_SERVER_ERROR);
+        throw new ValidationException("skip", "must be a non-negative integer");
+    }
+
+    private CompletableFuture<APIGatewayProxyResponseEvent> processPostRoute(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        String[] pathSegments = request.getPath().split("/");
+
+        if (pathSegments.length == 3) {
+            return switch (pathSegments[2]) {
+                case "batch" ->
+                    processBatchWrite(request, authorized, deadline);
+                case "batch-get" ->
+                    processBatchGet(request, authorized, deadline);
+                case "import" ->
+                    processImport(request, authorized, deadline);
+                default ->
+                    authorized
+                    .thenApply(ignored -> returnError(HttpStatus.NOT_FOUND))
+                    .exceptionally(throwable -> handleError("processPostRoute", throwable));
+            };
         }
+
+        return processPost(request, authorized, deadline);
     }
 
-    private APIGatewayProxyResponseEvent processPut(APIGatewayProxyRequestEvent request) {
+    private CompletableFuture<APIGatewayProxyResponseEvent> processBatchGet(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        FieldSelection fields;
+
         try {
-            String[] pathSegments = request.getPath().split("/");
-            String id = pathSegments[2];
+            fields = getFieldSelection(request);
+        } catch (ValidationException e) {
+            return rejectFields("processBatchGet", e, authorized);
+        }
 
-            String requestBody = request.getBody();
-            BaseEntity updatedEntity = EntityUtils.validateRequestBody(requestBody);
+        CompletableFuture<List<String>> idsFuture = AsyncUtils.attempt(() -> readBatchGetIds(getRequestBody(request)));
 
-            dbHandler.updateEntity(id, updatedEntity);
+        CompletableFuture<List<BatchItemResult>> resultsFuture = idsFuture
+                .thenCompose(ids -> dbHandler.batchGetEntities(ids, fields, deadline))
+                .thenCombine(idsFuture, (resultsById, ids) -> {
+                    List<BatchItemResult> results = new ArrayList<>(ids.size());
+                    for (String id : ids) {
+                        results.add(resultsById.get(id));
+                    }
+                    return results;
+                });
 
-            ResponseStructure responseContent = new ResponseStructure(new Entity(id, updatedEntity), null);
+        return respond("processBatchGet", request, authorized.thenCompose(ignored -> resultsFuture), fields);
+    }
 
-            return createResponse(HttpStatus.OK, responseContent);
-        } catch (ClassCastException | JsonProcessingException | NoSuchElementException e) {
-            Logger.logError("processPost caught error: ", e);
-            return returnError(HttpStatus.BAD_REQUEST);
-        } catch (ExecutionException | InterruptedException e) {
-            Logger.logError("processPost caught error: ", e);
-            return returnError(HttpStatus.INTERNAL_SERVER_ERROR);
+    private List<String> readBatchGetIds(RequestBody requestBody) throws IOException {
+        checkBatchBody(requestBody);
+
+        JsonNode ids;
+
+        try (JsonParser parser = requestBody.createParser()) {
+            JsonNode root = objectMapper.readTree(parser);
+            ids = root == null ? objectMapper.missingNode() : root.path("ids");
+        }
+
+        if (!ids.isArray() || ids.isEmpty() || ids.size() > MAX_BATCH_SIZE) {
+            throw new ValidationException("ids", "must be an array of 1 to " + MAX_BATCH_SIZE + " ids");
+        }
+
+        List<String> idList = new ArrayList<>();
+        for (JsonNode id : ids) {
+            if (!id.isTextual()) {
+                throw new ValidationException("ids", "must only contain strings");
+            }
+            idList.add(id.asText());
         }
+
+        return idList;
     }
 
-    private APIGatewayProxyResponseEvent processDelete(APIGatewayProxyRequestEvent request) {
-        try {
-            String[] pathSegments = request.getPath().split("/");
-            String id = pathSegments[2];
-            dbHandler.deleteEntity(id);
-            ResponseStructure responseContent = new ResponseStructure("OK", null);
-            return createResponse(HttpStatus.OK, responseContent);
-
-        } catch (NoSuchElementException e) {
-            Logger.logError("processDelete caught error: ", e);
-            return returnError(HttpStatus.BAD_REQUEST);
-        } catch (InterruptedException | ExecutionException e) {
-            Logger.logError("processDelete caught error: ", e);
-            return returnError(HttpStatus.INTERNAL_SERVER_ERROR);
+    // Body is {"put": [{description, quantity}, ...], "delete": [id, ...]}; results come back in that order
+    private CompletableFuture<APIGatewayProxyResponseEvent> processBatchWrite(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        List<BatchItemResult> results = new ArrayList<>();
+        List<Entity> newEntities = new ArrayList<>();
+        List<String> deleteIds = new ArrayList<>();
+
+        CompletableFuture<Void> parsed = AsyncUtils.attempt(() -> {
+            readBatchWrite(getRequestBody(request), results, newEntities, deleteIds);
+            return null;
+        });
+
+        CompletableFuture<List<BatchItemResult>> resultsFuture = authorized
+                .thenCompose(ignored -> parsed)
+                .thenCompose(ignored -> dbHandler.batchWriteEntities(newEntities, deleteIds, deadline))
+                .thenApply(resultsById -> {
+                    for (int i = 0; i < results.size(); i++) {
+                        String id = results.get(i).getId();
+                        if (id != null) {
+                            results.set(i, resultsById.get(id));
+                        }
+                    }
+                    return results;
+                });
+
+        return respond("processBatchWrite", request, resultsFuture);
+    }
+
+    // Streams through the body once; invalid items get their own 400 result instead of failing the whole batch
+    private void readBatchWrite(RequestBody requestBody, List<BatchItemResult> results, List<Entity> newEntities, List<String> deleteIds) throws IOException {
+        checkBatchBody(requestBody);
+
+        try (JsonParser parser = requestBody.createParser()) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ValidationException("$", "must be a JSON object");
+            }
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+
+                if (!"put".equals(fieldName) && !"delete".equals(fieldName)) {
+                    throw new ValidationException(fieldName, "is not a known field");
+                }
+
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new ValidationException(fieldName, "must be an array");
+                }
+
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    if (results.size() >= MAX_BATCH_SIZE) {
+                        throw new ValidationException("$", "must contain at most " + MAX_BATCH_SIZE + " items");
+                    }
+
+                    if ("put".equals(fieldName)) {
+                        try {
+                            Entity entity = new Entity(EntityUtils.readBaseEntity(parser));
+                            newEntities.add(entity);
+                            results.add(BatchItemResult.ok(entity.getId(), null));
+                        } catch (ValidationException e) {
+                            results.add(BatchItemResult.error(null, HttpStatus.BAD_REQUEST.value(), e.getMessage()));
+                        }
+                    } else if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                        deleteIds.add(parser.getText());
+                        results.add(BatchItemResult.ok(parser.getText(), null));
+                    } else {
+                        parser.skipChildren();
+                        results.add(BatchItemResult.error(null, HttpStatus.BAD_REQUEST.value(), "Invalid data format: delete ids must be strings"));
+                    }
+                }
+            }
+        }
+
+        if (results.isEmpty()) {
+            throw new ValidationException("$", "must contain at least one put or delete");
         }
     }
 
-    private APIGatewayProxyResponseEvent processOptions() {
-        ResponseStructure responseContent = new ResponseStructure(null, null);
+    private void checkBatchBody(RequestBody requestBody) {
+        if (requestBody.isEmpty()) {
+            throw new ValidationException("$", "request body is required");
+        }
 
-        return createResponse(HttpStatus.OK, responseContent);
+        if (requestBody.length() > MAX_BATCH_BODY_LENGTH) {
+            throw new ValidationException("$", "request body exceeds " + MAX_BATCH_BODY_LENGTH + " characters");
+        }
     }
 
-    private APIGatewayProxyResponseEvent createResponse(HttpStatus httpStatus, ResponseStructure responseContent) {
+    private CompletableFuture<APIGatewayProxyResponseEvent> processPost(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        CompletableFuture<String> idempotencyKeyFuture = AsyncUtils.attempt(() -> EntityUtils.validateIdempotencyKey(getHeader(request, "Idempotency-Key")));
+        CompletableFuture<BaseEntity> newEntityFuture = AsyncUtils.attempt(() -> EntityUtils.validateRequestBody(getRequestBody(request)));
 
-        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+        return respond("processPost", request, authorized
+                .thenCompose(ignored -> idempotencyKeyFuture)
+                .thenCombine(newEntityFuture, (idempotencyKey, newEntity) -> dbHandler.putEntity(newEntity, idempotencyKey, deadline))
+                .thenCompose(entityFuture -> entityFuture));
+    }
 
-        response.setIsBase64Encoded(false);
-        response.setStatusCode(httpStatus.value());
-        response.setHeaders(headers);
+    private CompletableFuture<APIGatewayProxyResponseEvent> processPut(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        String[] pathSegments = request.getPath().split("/");
+        String id = pathSegments[2];
 
-        Map<String, Object> responseBody = new HashMap<>();
+        CompletableFuture<Long> expectedVersionFuture = AsyncUtils.attempt(() -> EntityUtils.parseIfMatch(getHeader(request, "If-Match")));
+        CompletableFuture<BaseEntity> updatedEntityFuture = AsyncUtils.attempt(() -> EntityUtils.validateRequestBody(getRequestBody(request)));
+
+        return respond("processPut", request, authorized
+                .thenCompose(ignored -> expectedVersionFuture)
+                .thenCombine(updatedEntityFuture, (expectedVersion, updatedEntity) -> dbHandler.updateEntity(id, updatedEntity, expectedVersion, deadline))
+                .thenCompose(entityFuture -> entityFuture));
+    }
+
+    private CompletableFuture<APIGatewayProxyResponseEvent> processPatch(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        String[] pathSegments = request.getPath().split("/");
+
+        if (pathSegments.length != 4 || !"quantity".equals(pathSegments[3])) {
+            return authorized
+                    .thenApply(ignored -> returnError(HttpStatus.METHOD_NOT_ALLOWED))
+                    .exceptionally(throwable -> handleError("processPatch", throwable));
+        }
+
+        String id = pathSegments[2];
+        CompletableFuture<Integer> deltaFuture = AsyncUtils.attempt(() -> EntityUtils.validateQuantityDelta(getRequestBody(request)));
+
+        return respond("processPatch", request, authorized
+                .thenCompose(ignored -> deltaFuture)
+                .thenCompose(delta -> quantityCoalescer.adjustQuantity(id, delta, deadline)), FieldSelection.ID_AND_QUANTITY);
+    }
+
+    private CompletableFuture<APIGatewayProxyResponseEvent> processDelete(APIGatewayProxyRequestEvent request, CompletableFuture<Void> authorized, Deadline deadline) {
+        String[] pathSegments = request.getPath().split("/");
+        String id = pathSegments[2];
 
+        CompletableFuture<Long> expectedVersionFuture = AsyncUtils.attempt(() -> EntityUtils.parseIfMatch(getHeader(request, "If-Match")));
+
+        return respond("processDelete", request, authorized
+                .thenCompose(ignored -> expectedVersionFuture)
+                .thenCompose(expectedVersion -> dbHandler.deleteEntity(id, expectedVersion, deadline))
+                .thenApply(ignored -> "OK"));
+    }
+
+    private APIGatewayProxyResponseEvent processOptions() {
+        return createResponse(HttpStatus.OK, ResponseWriter.emptyBody());
+    }
+
+    APIGatewayProxyResponseEvent createResponse(HttpStatus httpStatus, ResponseStructure responseContent) {
+        return createResponse(httpStatus, responseContent, FieldSelection.ALL);
+    }
+
+    private APIGatewayProxyResponseEvent createResponse(HttpStatus httpStatus, ResponseStructure responseContent, FieldSelection fields) {
         try {
-            Object responseData = responseContent.getData();
-            String responseErrorMessage = responseContent.getErrorMessage();
-
-            if (responseData != null) {
-                responseBody.put("data", responseData);
-                responseBody.put("errorMessage", null);
-            } else {
-                responseBody.put("data", null);
-                responseBody.put("errorMessage", responseErrorMessage);
-            }
+            return createResponse(httpStatus, ResponseWriter.write(responseContent, fields));
+        } catch (JsonProcessingException e) {
+            Logger.logError("createResponse caught error: ", e);
 
-            ObjectMapper objectMapper = new ObjectMapper();
+            return createResponse(HttpStatus.INTERNAL_SERVER_ERROR, ResponseWriter.INTERNAL_SERVER_ERROR_BODY);
+        }
+    }
+
+    // Plain JSON keeps the shared headers and a text body; other formats and compressed bodies are sent base64
+    // encoded, which API Gateway turns back into binary for the binary media types configured on the API
+    private APIGatewayProxyResponseEvent createResponse(HttpStatus httpStatus, ResponseStructure responseContent, FieldSelection fields,
+            WireFormat format, String contentEncoding) {
+        if (format == WireFormat.JSON && contentEncoding == null) {
+            return createResponse(httpStatus, responseContent, fields);
+        }
 
-            String responseBodyString = objectMapper.writeValueAsString(responseBody);
-            response.setBody(responseBodyString);
+        byte[] body;
+
+        try {
+            body = ResponseWriter.writeBytes(responseContent, fields, format);
         } catch (JsonProcessingException e) {
             Logger.logError("createResponse caught error: ", e);
-            response.setStatusCode(500);
 
-            response.setBody("{\"data\": null, \"errorMessage\": \"Internal Server Error\"}");
+            return createResponse(HttpStatus.INTERNAL_SERVER_ERROR, ResponseWriter.INTERNAL_SERVER_ERROR_BODY);
         }
 
+        return createResponse(httpStatus, body, format.getMediaType(), format.isBinary(), contentEncoding);
+    }
+
+    private APIGatewayProxyResponseEvent createResponse(HttpStatus httpStatus, byte[] body, String mediaType, boolean binary, String contentEncoding) {
+        Map<String, String> responseHeaders = new HashMap<>(headers);
+        responseHeaders.put("Content-Type", mediaType);
+        responseHeaders.put("Vary", "Accept, Accept-Encoding");
+
+        boolean compress = ResponseCompressor.shouldCompress(contentEncoding, body.length);
+
+        if (compress) {
+            body = ResponseCompressor.compress(body, contentEncoding);
+            responseHeaders.put("Content-Encoding", contentEncoding);
+        }
+
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+
+        response.setStatusCode(httpStatus.value());
+        response.setHeaders(responseHeaders);
+
+        if (compress || binary) {
+            response.setIsBase64Encoded(true);
+            response.setBody(Base64.getEncoder().encodeToString(body));
+        } else {
+            response.setIsBase64Encoded(false);
+            response.setBody(new String(body, StandardCharsets.UTF_8));
+        }
+
+        return response;
+    }
+
+    private APIGatewayProxyResponseEvent createResponse(HttpStatus httpStatus, String responseBody) {
+        APIGatewayProxyResponseEvent response = new APIGatewayProxyResponseEvent();
+
+        response.setIsBase64Encoded(false);
+        response.setStatusCode(httpStatus.value());
+        response.setHeaders(headers);
+        response.setBody(responseBody);
+
         return response;
     }
 }
@@ -0,0 +1,56 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class AsyncUtils {
+
+    private AsyncUtils() {}
+
+    // Runs a synchronous step (parsing, validation) and captures its outcome, checked exceptions included, as a future
+    public static <T> CompletableFuture<T> attempt(Callable<T> callable) {
+        try {
+            return CompletableFuture.completedFuture(callable.call());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // For tasks that block: a virtual thread per task when the JVM has them (Java 21 and later), and otherwise a
+    // fixed pool, so a burst of blocked tasks queues instead of starting a thread each
+    public static ExecutorService newBlockingExecutor(String name, int threads) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            Logger.log("Running {} tasks on virtual threads", name);
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            Logger.log("Virtual threads are not available; running {} tasks on {} threads", name, threads);
+            return Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public static Throwable unwrap(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+
+        return throwable;
+    }
+
+    // Rethrows a throwable from inside a future stage without wrapping it twice
+    public static RuntimeException propagate(Throwable throwable) {
+        if (throwable instanceof CompletionException completionException) {
+            return completionException;
+        }
+
+        return new CompletionException(throwable);
+    }
+}
@@ -0,0 +1,24 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class Backoff {
+
+    private static final long BASE_DELAY_MILLIS = 50;
+    private static final long MAX_DELAY_MILLIS = 2000;
+
+    private Backoff() {}
+
+    // "Full jitter": a random delay between 0 and the capped exponential backoff for this attempt
+    public static long delayMillis(int attempt) {
+        long ceiling = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    // Completes after delayMillis without holding a thread while waiting
+    public static CompletableFuture<Void> delay(long delayMillis) {
+        return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS));
+    }
+}
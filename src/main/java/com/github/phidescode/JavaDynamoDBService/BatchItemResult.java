@@ -0,0 +1,56 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+public class BatchItemResult {
+
+    private String id;
+    private int status;
+    private Object data;
+    private String errorMessage;
+
+    public BatchItemResult(String id, int status, Object data, String errorMessage) {
+        this.id = id;
+        this.status = status;
+        this.data = data;
+        this.errorMessage = errorMessage;
+    }
+
+    public static BatchItemResult ok(String id, Object data) {
+        return new BatchItemResult(id, 200, data, null);
+    }
+
+    public static BatchItemResult error(String id, int status, String errorMessage) {
+        return new BatchItemResult(id, status, null, errorMessage);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public Object getData() {
+        return data;
+    }
+
+    public void setData(Object data) {
+        this.data = data;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Aggregates of the beans table: how many beans there are, their total quantity and a histogram of quantities
+ * by number of digits (0, 1-9, 10-99, ...). The same class holds the summary served by GET /beans/stats and the
+ * change a single stream record makes to it, which can be negative.
+ */
+public class BeanStats {
+
+    public static final String SUMMARY_ID = "summary";
+
+    // a non-negative int has at most 10 digits
+    static final int BUCKET_COUNT = 11;
+
+    private long count;
+    private long totalQuantity;
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private Long updatedAt;
+
+    public void add(Entity entity) {
+        apply(entity, 1);
+    }
+
+    public void remove(Entity entity) {
+        apply(entity, -1);
+    }
+
+    public void add(BeanStats stats) {
+        count += stats.count;
+        totalQuantity += stats.totalQuantity;
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            buckets[bucket] += stats.buckets[bucket];
+        }
+    }
+
+    private void apply(Entity entity, int sign) {
+        count += sign;
+        totalQuantity += (long) sign * entity.getQuantity();
+        buckets[getBucket(entity.getQuantity())] += sign;
+    }
+
+    // False for a MODIFY that left the quantity as it was, or a batch whose changes cancel out
+    boolean hasChanges() {
+        if (count != 0 || totalQuantity != 0) {
+            return true;
+        }
+
+        for (long bucketCount : buckets) {
+            if (bucketCount != 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    static int getBucket(int quantity) {
+        int bucket = 0;
+
+        for (long bound = 1; quantity >= bound && bucket < BUCKET_COUNT - 1; bound *= 10) {
+            bucket++;
+        }
+
+        return bucket;
+    }
+
+    static String getBucketLabel(int bucket) {
+        if (bucket == 0) {
+            return "0";
+        }
+
+        long lowerBound = (long) Math.pow(10, bucket - 1);
+
+        return bucket == BUCKET_COUNT - 1 ? lowerBound + "+" : lowerBound + "-" + (lowerBound * 10 - 1);
+    }
+
+    long getBucketCount(int bucket) {
+        return buckets[bucket];
+    }
+
+    void setBucketCount(int bucket, long bucketCount) {
+        buckets[bucket] = bucketCount;
+    }
+
+    void setCount(long count) {
+        this.count = count;
+    }
+
+    void setTotalQuantity(long totalQuantity) {
+        this.totalQuantity = totalQuantity;
+    }
+
+    void setUpdatedAt(Long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotalQuantity() {
+        return totalQuantity;
+    }
+
+    public Double getAverageQuantity() {
+        return count > 0 ? (double) totalQuantity / count : null;
+    }
+
+    public Map<String, Long> getHistogram() {
+        Map<String, Long> histogram = new LinkedHashMap<>();
+
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            histogram.put(getBucketLabel(bucket), buckets[bucket]);
+        }
+
+        return histogram;
+    }
+
+    // Epoch milliseconds of the last stream batch applied; null before the first
+    public Long getUpdatedAt() {
+        return updatedAt;
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Command line export and import, for seeding and backing up a table from a workstation:
+ *
+ * <pre>
+ * BulkTool export [file|-] [checkpoint-file]
+ * BulkTool import [file|-] [checkpoint-file]
+ * BulkTool backfill [checkpoint-file]
+ * </pre>
+ *
+ * "-" (the default) is stdout or stdin. A run records its checkpoint in the checkpoint file (by default the file
+ * with a .checkpoint suffix; none for stdin or stdout) and starts from it when the file exists, so a run that timed
+ * out or was interrupted is resumed by running the same command again. An import checkpoints after every batch,
+ * an export after every scan round: the length of the output so far and the token that continues the scan, so a
+ * resumed export cuts off anything written after its checkpoint and appends from there. The checkpoint file is
+ * removed once the whole input has been imported or the whole table exported. Each run is limited to
+ * BULK_TIMEOUT_SECONDS (default one hour).
+ *
+ * backfill adds the indexShard attribute to beans written before the listing indexes existed, checkpointing the
+ * scan after every page (by default in backfill.checkpoint). Filtered listings only use the indexes once
+ * QUANTITY_INDEX_NAME and DESCRIPTION_INDEX_NAME are set, which should wait until it has completed.
+ */
+public class BulkTool {
+
+    private static final String STANDARD_STREAM = "-";
+    private static final String BACKFILL_CHECKPOINT = "backfill.checkpoint";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 1 && args.length <= 2 && "backfill".equals(args[0])) {
+            Deadline deadline = Deadline.after(Config.getInt("BULK_TIMEOUT_SECONDS", 3600) * 1000L);
+            System.exit(backfill(new DynamoDBHandler(), Path.of(args.length > 1 ? args[1] : BACKFILL_CHECKPOINT), deadline) ? 0 : 1);
+        }
+
+        if (args.length < 1 || args.length > 3 || !("export".equals(args[0]) || "import".equals(args[0]))) {
+            System.err.println("Usage: BulkTool export [file|-] [checkpoint-file] | BulkTool import [file|-] [checkpoint-file]"
+                    + " | BulkTool backfill [checkpoint-file]");
+            System.exit(2);
+        }
+
+        // NDJSON may be going to stdout, so log lines go to stderr
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+
+        String path = args.length > 1 ? args[1] : STANDARD_STREAM;
+        Deadline deadline = Deadline.after(Config.getInt("BULK_TIMEOUT_SECONDS", 3600) * 1000L);
+        BulkTransfer bulkTransfer = new BulkTransfer(new DynamoDBHandler());
+        String checkpointPath = args.length > 2 ? args[2] : STANDARD_STREAM.equals(path) ? null : path + ".checkpoint";
+        boolean complete;
+
+        if ("export".equals(args[0])) {
+            complete = STANDARD_STREAM.equals(path)
+                    ? export(bulkTransfer, stdout, deadline)
+                    : export(bulkTransfer, Path.of(path), Path.of(checkpointPath), deadline);
+        } else {
+            complete = importEntities(bulkTransfer, path, checkpointPath, deadline);
+        }
+
+        System.exit(complete ? 0 : 1);
+    }
+
+    private static boolean export(BulkTransfer bulkTransfer, PrintStream stdout, Deadline deadline) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(stdout)) {
+            return reportExport(bulkTransfer.export(output, null, Long.MAX_VALUE, deadline, checkpoint -> {}));
+        } catch (RuntimeException e) {
+            Logger.logError("Export failed", AsyncUtils.unwrap(e));
+            return false;
+        }
+    }
+
+    private static boolean export(BulkTransfer bulkTransfer, Path path, Path checkpointFile, Deadline deadline) throws IOException {
+        long offset = 0;
+        String exportToken = null;
+
+        if (Files.exists(checkpointFile)) {
+            String[] checkpoint = Files.readString(checkpointFile).trim().split(" ", 2);
+            offset = Long.parseLong(checkpoint[0]);
+            exportToken = checkpoint[1];
+            Logger.log("Resuming after byte {}", offset);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel))) {
+            channel.truncate(offset);
+            channel.position(offset);
+
+            String nextToken = bulkTransfer.export(output, exportToken, Long.MAX_VALUE, deadline, checkpoint -> {
+                if (checkpoint != null) {
+                    try {
+                        output.flush();
+                        saveCheckpoint(checkpointFile, channel.position() + " " + checkpoint);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+
+            if (nextToken == null) {
+                Files.deleteIfExists(checkpointFile);
+            }
+
+            return reportExport(nextToken);
+        } catch (RuntimeException e) {
+            Logger.logError("Export failed", AsyncUtils.unwrap(e));
+            return false;
+        }
+    }
+
+    private static boolean reportExport(String nextToken) {
+        if (nextToken != null) {
+            Logger.warn("Stopped before the end of the table: out of time");
+            return false;
+        }
+
+        Logger.log("Exported every bean");
+        return true;
+    }
+
+    private static boolean importEntities(BulkTransfer bulkTransfer, String path, String checkpointPath, Deadline deadline) throws IOException {
+        Path checkpointFile = checkpointPath == null ? null : Path.of(checkpointPath);
+        long skipLines = checkpointFile != null && Files.exists(checkpointFile) ? Long.parseLong(Files.readString(checkpointFile).trim()) : 0;
+
+        if (skipLines > 0) {
+            Logger.log("Resuming after line {}", skipLines);
+        }
+
+        ImportResult result;
+
+        try (BufferedReader reader = STANDARD_STREAM.equals(path)
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(path))) {
+            result = bulkTransfer.importEntities(reader, skipLines, deadline, checkpoint -> saveCheckpoint(checkpointFile, Long.toString(checkpoint)));
+        }
+
+        for (ImportError error : result.getErrors()) {
+            for (FieldError fieldError : error.getErrors()) {
+                Logger.warn("Line " + error.getLine() + ": {} {}", fieldError.getField(), fieldError.getMessage());
+            }
+        }
+
+        Logger.log("Imported {} beans, skipped " + result.getInvalid() + " invalid lines", result.getImported());
+
+        if (!result.isComplete()) {
+            Logger.warn("Stopped after line {}: {}", result.getCheckpoint(), result.isFailed() ? result.getFailure() : "out of time");
+            return false;
+        }
+
+        if (checkpointFile != null) {
+            Files.deleteIfExists(checkpointFile);
+        }
+
+        return true;
+    }
+
+    private static boolean backfill(DynamoDBHandler dbHandler, Path checkpointFile, Deadline deadline) throws IOException {
+        String nextToken = Files.exists(checkpointFile) ? Files.readString(checkpointFile).trim() : null;
+        long backfilled = 0;
+
+        if (nextToken != null) {
+            Logger.log("Resuming the backfill from {}", checkpointFile);
+        }
+
+        try {
+            do {
+                EntityPage page = dbHandler.backfillIndexKeys(nextToken, deadline).join();
+                backfilled += page.getItems().size();
+                nextToken = page.getNextToken();
+
+                if (nextToken != null) {
+                    saveCheckpoint(checkpointFile, nextToken);
+                }
+            } while (nextToken != null && deadline.allows(0));
+        } catch (RuntimeException e) {
+            Logger.logError("Backfill failed", AsyncUtils.unwrap(e));
+            return false;
+        }
+
+        Logger.log("Added indexShard to {} beans", backfilled);
+
+        if (nextToken != null) {
+            Logger.warn("Stopped before the end of the table: out of time");
+            return false;
+        }
+
+        Files.deleteIfExists(checkpointFile);
+        return true;
+    }
+
+    // Written to a temporary file and moved into place, so an interrupted run never leaves a partial checkpoint
+    private static void saveCheckpoint(Path checkpointFile, String checkpoint) {
+        if (checkpointFile == null) {
+            return;
+        }
+
+        try {
+            Path temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            Files.writeString(temporaryFile, checkpoint);
+            Files.move(temporaryFile, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
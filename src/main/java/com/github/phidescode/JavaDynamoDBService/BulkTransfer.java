@@ -0,0 +1,289 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Bulk export and import of beans as NDJSON, one {"id", "version", "description", "quantity"} object per line.
+ *
+ * Export reads the table a round of a parallel scan at a time (the next page of every segment) and writes each
+ * round before reading the next, so at most one round is held in memory. It stops after about a page of bytes, or
+ * near the deadline, and returns a token that resumes every segment where it stopped.
+ *
+ * Import reads one line at a time, validates it with the rules of POST /beans and groups valid beans in batches
+ * of 25. Each bean of a batch is its own UpdateItem, all sent at once, and at most BULK_IMPORT_CONCURRENCY batches
+ * are in flight, so up to 25 times that many writes are outstanding. Batches are completed in input order and the
+ * checkpoint only moves past a batch once every bean in it is written, so a run resumed from the checkpoint may
+ * rewrite some beans but never skips one. An imported bean gets the next version of the stored one, not the
+ * version on its line, so an ETag never stands for two different states of a bean.
+ *
+ * Lines without an id get one derived from their line number and content, so rerunning or resuming an import
+ * overwrites the beans written by an earlier run instead of duplicating them.
+ */
+public class BulkTransfer {
+
+    public static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    private static final int BATCH_SIZE = 25;
+
+    // Reading stops this long before the deadline, leaving the batches in flight, or the export response, time to finish
+    private static final long DRAIN_MILLIS = 2000;
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    private final DynamoDBHandler dbHandler;
+    private final int maxInFlightBatches;
+    private final long maxExportBytes;
+
+    private record Batch(long endLine, List<Entity> entities, CompletableFuture<Map<String, BatchItemResult>> results) {}
+
+    public BulkTransfer(DynamoDBHandler dbHandler) {
+        this(dbHandler, Config.getInt("BULK_IMPORT_CONCURRENCY", 1));
+    }
+
+    public BulkTransfer(DynamoDBHandler dbHandler, int maxInFlightBatches) {
+        this.dbHandler = dbHandler;
+        this.maxInFlightBatches = Math.max(1, maxInFlightBatches);
+        this.maxExportBytes = Config.getInt("EXPORT_MAX_BYTES", 4 * 1024 * 1024);
+    }
+
+    /**
+     * One page of a JSON export: scan rounds from exportToken, until the page holds about EXPORT_MAX_BYTES of beans
+     * or the deadline is near. The page's nextToken carries on from there in the next request, and is null once
+     * the whole table has been read; beans are in no particular order. Blocks the calling thread.
+     */
+    public EntityPage exportPage(String exportToken, Deadline deadline) {
+        List<Entity> entities = new ArrayList<>();
+        String nextToken = exportRounds(exportToken, maxExportBytes, deadline, (round, lines) -> entities.addAll(round.getItems()));
+
+        return new EntityPage(entities, nextToken);
+    }
+
+    public String export(OutputStream output, String exportToken, Deadline deadline) {
+        return export(output, exportToken, maxExportBytes, deadline, checkpoint -> {});
+    }
+
+    /**
+     * Writes beans to output as NDJSON, scan round after scan round from exportToken, until about maxBytes have
+     * been written or the deadline is near. Blocks the calling thread, which writes each round before the next is
+     * read, so a slow reader holds the scan back rather than having it buffered. onCheckpoint is called after each
+     * round with the token to carry on from; it, like the returned token, is null once the export is complete.
+     */
+    public String export(OutputStream output, String exportToken, long maxBytes, Deadline deadline, Consumer<String> onCheckpoint) {
+        return exportRounds(exportToken, maxBytes, deadline, (round, lines) -> {
+            try {
+                for (byte[] line : lines) {
+                    output.write(line);
+                    output.write('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            onCheckpoint.accept(round.getNextToken());
+        });
+    }
+
+    // Scans round after round while the next one is likely to fit in maxBytes (judged by the largest so far). A
+    // round that still does not fit is dropped, unless it is the first, and its start token returned instead, so
+    // a page never holds more than maxBytes plus one round. Returns the token to continue from.
+    private String exportRounds(String exportToken, long maxBytes, Deadline deadline, BiConsumer<EntityPage, List<byte[]>> consumer) {
+        String nextToken = exportToken;
+        long pageBytes = 0;
+        long largestRoundBytes = 0;
+        long exported = 0;
+
+        do {
+            EntityPage round = dbHandler.scanRound(nextToken, deadline).join();
+            List<byte[]> lines = new ArrayList<>(round.getItems().size());
+            long roundBytes = 0;
+
+            for (Entity entity : round.getItems()) {
+                byte[] line = writeLine(entity);
+                lines.add(line);
+                roundBytes += line.length + 1;
+            }
+
+            if (pageBytes > 0 && pageBytes + roundBytes > maxBytes) {
+                break;
+            }
+
+            consumer.accept(round, lines);
+
+            nextToken = round.getNextToken();
+            pageBytes += roundBytes;
+            largestRoundBytes = Math.max(largestRoundBytes, roundBytes);
+            exported += lines.size();
+        } while (nextToken != null && pageBytes + largestRoundBytes <= maxBytes && deadline.allows(DRAIN_MILLIS));
+
+        Metrics.add("Bulk", "Export", "Items", Metrics.Unit.COUNT, exported);
+
+        return nextToken;
+    }
+
+    private static byte[] writeLine(Entity entity) {
+        try {
+            return ResponseWriter.writeEntity(entity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Imports the lines after the first skipLines, which an earlier run reported as its checkpoint. Blocks the
+     * calling thread, which reads the input and waits for the oldest batch whenever the limit is in flight.
+     * onCheckpoint is called each time the checkpoint moves. The import stops early, incomplete, when the
+     * deadline is near or a batch could not be written (e.g. throttled beyond its retries).
+     */
+    public ImportResult importEntities(BufferedReader reader, long skipLines, Deadline deadline, LongConsumer onCheckpoint) throws IOException {
+        ImportResult result = new ImportResult();
+        Deque<Batch> inFlight = new ArrayDeque<>();
+        List<Entity> pending = new ArrayList<>(BATCH_SIZE);
+        Set<String> unwrittenIds = new HashSet<>();
+        long line = 0;
+
+        while (line < skipLines && reader.readLine() != null) {
+            line++;
+        }
+
+        result.setCheckpoint(line);
+
+        boolean endOfInput = false;
+
+        while (!result.isFailed() && deadline.allows(DRAIN_MILLIS)) {
+            String text = reader.readLine();
+
+            if (text == null) {
+                endOfInput = true;
+                break;
+            }
+
+            line++;
+
+            if (text.isBlank()) {
+                continue;
+            }
+
+            Entity entity;
+
+            try {
+                entity = readLine(text, line);
+            } catch (ValidationException e) {
+                result.addInvalid(line, e.getFieldErrors());
+                continue;
+            }
+
+            // A bean on more than one line waits for the earlier write to finish, so the last line wins; the
+            // UpdateItems in flight together land in no particular order
+            if (unwrittenIds.contains(entity.getId())) {
+                if (pending.stream().anyMatch(pendingEntity -> pendingEntity.getId().equals(entity.getId()))) {
+                    submit(pending, line - 1, inFlight, deadline);
+                    pending = new ArrayList<>(BATCH_SIZE);
+                }
+
+                while (unwrittenIds.contains(entity.getId())) {
+                    complete(inFlight.poll(), result, unwrittenIds, onCheckpoint);
+                }
+            }
+
+            pending.add(entity);
+            unwrittenIds.add(entity.getId());
+
+            if (pending.size() == BATCH_SIZE) {
+                submit(pending, line, inFlight, deadline);
+                pending = new ArrayList<>(BATCH_SIZE);
+            }
+
+            while (inFlight.size() >= maxInFlightBatches) {
+                complete(inFlight.poll(), result, unwrittenIds, onCheckpoint);
+            }
+        }
+
+        if (!result.isFailed() && !pending.isEmpty()) {
+            submit(pending, line, inFlight, deadline);
+        }
+
+        while (!inFlight.isEmpty()) {
+            complete(inFlight.poll(), result, unwrittenIds, onCheckpoint);
+        }
+
+        // invalid lines after the last batch are done with as well
+        if (!result.isFailed() && result.getCheckpoint() < line) {
+            result.setCheckpoint(line);
+            onCheckpoint.accept(line);
+        }
+
+        result.setComplete(endOfInput && !result.isFailed());
+
+        Metrics.add("Bulk", "Import", "Items", Metrics.Unit.COUNT, result.getImported());
+        Metrics.add("Bulk", "Import", "InvalidItems", Metrics.Unit.COUNT, result.getInvalid());
+
+        return result;
+    }
+
+    private void submit(List<Entity> entities, long endLine, Deque<Batch> inFlight, Deadline deadline) {
+        inFlight.add(new Batch(endLine, entities, dbHandler.importEntities(entities, deadline)));
+    }
+
+    private static Entity readLine(String text, long line) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(text)) {
+            parser.nextToken();
+            Entity entity = EntityUtils.readImportRecord(parser, getDefaultId(text, line));
+
+            if (parser.nextToken() != null) {
+                throw new ValidationException("$", "unexpected content after the JSON object");
+            }
+
+            return entity;
+        } catch (JsonProcessingException e) {
+            throw new ValidationException("$", "malformed line: " + e.getOriginalMessage());
+        }
+    }
+
+    private static String getDefaultId(String text, long line) {
+        return UUID.nameUUIDFromBytes((line + "\n" + text).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    // A batch that was not fully written stops the checkpoint where it is; batches after it still finish
+    private static void complete(Batch batch, ImportResult result, Set<String> unwrittenIds, LongConsumer onCheckpoint) {
+        Map<String, BatchItemResult> results = batch.results().join();
+        int written = 0;
+
+        for (Entity entity : batch.entities()) {
+            BatchItemResult itemResult = results.get(entity.getId());
+            unwrittenIds.remove(entity.getId());
+
+            if (itemResult != null && itemResult.getStatus() == 200) {
+                written++;
+            } else if (!result.isFailed()) {
+                result.setFailure(itemResult == null ? "Item could not be processed" : itemResult.getErrorMessage());
+            }
+        }
+
+        result.addImported(written);
+
+        if (!result.isFailed()) {
+            result.setCheckpoint(batch.endLine());
+            onCheckpoint.accept(batch.endLine());
+        }
+    }
+}
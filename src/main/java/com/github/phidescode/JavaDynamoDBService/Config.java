@@ -0,0 +1,41 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+public class Config {
+
+    private Config() {}
+
+    public static String getString(String name, String defaultValue) {
+        String value = System.getenv(name);
+
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+
+        return value.trim();
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            Logger.logError("Ignoring invalid value for " + name, e);
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        return Boolean.parseBoolean(value);
+    }
+}
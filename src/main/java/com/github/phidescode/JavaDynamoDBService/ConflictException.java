@@ -0,0 +1,11 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+// Thrown when a write would break an invariant of the stored item; mapped to 409
+public class ConflictException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ConflictException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,23 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+// The point by which a request must have its response ready; retries and waits for capacity stop once it has passed
+public class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + Math.max(0, millis) * 1_000_000);
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, (deadlineNanos - System.nanoTime()) / 1_000_000);
+    }
+
+    public boolean allows(long delayMillis) {
+        return delayMillis < remainingMillis();
+    }
+}
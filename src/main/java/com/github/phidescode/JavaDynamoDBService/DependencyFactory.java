@@ -1,10 +1,21 @@
 
 package com.github.phidescode.JavaDynamoDBService;
 
+import java.net.URI;
+
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.EnvironmentVariableCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.core.retry.RetryUtils;
+import software.amazon.awssdk.core.retry.conditions.AndRetryCondition;
+import software.amazon.awssdk.core.retry.conditions.RetryCondition;
 import software.amazon.awssdk.http.crt.AwsCrtAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClientBuilder;
 
 /**
  * The module containing all dependencies required by the {@link App}.
@@ -14,13 +25,52 @@ public class DependencyFactory {
     private DependencyFactory() {}
 
     /**
-     * @return an instance of DynamoDbAsyncClient
+     * @return an instance of DynamoDbAsyncClient. The region comes from AWS_REGION (set by Lambda) and
+     * defaults to us-east-1; DYNAMODB_ENDPOINT points the client elsewhere, e.g. at DynamoDB Local.
+     * DYNAMODB_MAX_CONCURRENCY raises the client's limit on concurrent requests for the standalone Server.
      */
     public static DynamoDbAsyncClient dynamoDbClient() {
-        return DynamoDbAsyncClient.builder()
-                       .credentialsProvider(EnvironmentVariableCredentialsProvider.create())
-                       .region(Region.US_EAST_1)
-                       .httpClientBuilder(AwsCrtAsyncHttpClient.builder())
-                       .build();
+        AwsCrtAsyncHttpClient.Builder httpClientBuilder = AwsCrtAsyncHttpClient.builder();
+        int maxConcurrency = Config.getInt("DYNAMODB_MAX_CONCURRENCY", 0);
+
+        if (maxConcurrency > 0) {
+            httpClientBuilder.maxConcurrency(maxConcurrency);
+        }
+
+        DynamoDbAsyncClientBuilder builder = DynamoDbAsyncClient.builder()
+                       .credentialsProvider(credentialsProvider())
+                       .region(Region.of(Config.getString("AWS_REGION", Region.US_EAST_1.id())))
+                       .httpClientBuilder(httpClientBuilder)
+                       .overrideConfiguration(ClientOverrideConfiguration.builder()
+                               .retryPolicy(retryPolicy())
+                               .build());
+
+        String endpoint = Config.getString("DYNAMODB_ENDPOINT", null);
+
+        if (endpoint != null) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+
+        return builder.build();
+    }
+
+    // Lambda puts the function's credentials in the environment, which is the quickest place to read them from;
+    // elsewhere, e.g. in a container running the Server, the default chain finds the task or instance role
+    private static AwsCredentialsProvider credentialsProvider() {
+        if (Config.getString("AWS_ACCESS_KEY_ID", null) != null) {
+            return EnvironmentVariableCredentialsProvider.create();
+        }
+
+        return DefaultCredentialsProvider.create();
+    }
+
+    // Throttled calls are retried by DynamoDBHandler, which backs off within the request deadline and feeds its
+    // rate limiter; the SDK still retries other transient failures
+    private static RetryPolicy retryPolicy() {
+        return RetryPolicy.builder(RetryMode.STANDARD)
+                .retryCondition(AndRetryCondition.create(
+                        RetryCondition.defaultRetryCondition(),
+                        context -> !RetryUtils.isThrottlingException(context.exception())))
+                .build();
     }
 }
@@ -1,148 +1,1402 @@
 package com.github.phidescode.JavaDynamoDBService;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
+import software.amazon.awssdk.core.exception.SdkServiceException;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
-import software.amazon.awssdk.services.dynamodb.model.AttributeValueUpdate;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.Put;
 import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
 import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
 import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
 
 public class DynamoDBHandler {
 
     private static final String TABLE_NAME = "AppnameBeans";
+    private static final int MAX_SCAN_SEGMENTS = 16;
+    private static final String TOTAL_SEGMENTS_TOKEN_KEY = "totalSegments";
+    private static final long ITEMS_PER_SCAN_SEGMENT = 1000;
+    private static final int BATCH_GET_CHUNK_SIZE = 100;
+    private static final int BATCH_WRITE_CHUNK_SIZE = 25;
+    private static final int MAX_BATCH_ATTEMPTS = 6;
+    private static final int MAX_THROTTLED_ATTEMPTS = 6;
+    private static final long MIN_RETRY_AFTER_MILLIS = 1000;
 
-    private final DynamoDbAsyncClient dynamoDbClient;
+    // A transaction holds at most 100 items: the stats summary and one marker per stream record
+    public static final int MAX_STATS_RECORDS_PER_UPDATE = 99;
+
+    private static final String PRIMING_ID = "priming";
+    private static final long PRIMING_TIMEOUT_SECONDS = 5;
+
+    private volatile DynamoDbAsyncClient dynamoDbClient;
+
+    // Optional.empty() entries cache ids that were not found
+    private final TtlCache<String, Optional<Entity>> entityCache;
+    private final long entityCacheTtlMillis;
+    private final long entityCacheNegativeTtlMillis;
+
+    // Beans created with an Idempotency-Key, by key, for replays that reach the same container
+    private final String idempotencyTableName;
+    private final long idempotencyTtlMillis;
+    private final TtlCache<String, Entity> idempotencyCache;
+
+    // Aggregates maintained from the table's stream by StatsHandler; markers outlive the stream's 24 hour retention
+    private final String statsTableName;
+    private final long statsMarkerTtlMillis;
+
+    // Scans read at most this many items per call, so that a large page or export cannot take all the read capacity
+    private final int scanPageSize;
+    private final String quantityIndexName;
+    private final String descriptionIndexName;
+    private final AdaptiveRateLimiter readLimiter;
+    private final AdaptiveRateLimiter writeLimiter;
+
+    // Point reads slower than HEDGE_PERCENTILE of recent ones get a second GetItem, for at most HEDGE_PERCENT of reads
+    private final HedgePolicy hedgePolicy;
 
     public DynamoDBHandler() {
+        this(DependencyFactory.dynamoDbClient());
+    }
+
+    // DYNAMODB_READ_UNITS_PER_SECOND and DYNAMODB_WRITE_UNITS_PER_SECOND should match the table's provisioned
+    // capacity; 0, the default, leaves calls unlimited
+    public DynamoDBHandler(DynamoDbAsyncClient dynamoDbClient) {
+        this(dynamoDbClient,
+                new AdaptiveRateLimiter(Config.getInt("DYNAMODB_READ_UNITS_PER_SECOND", 0), 0.5),
+                new AdaptiveRateLimiter(Config.getInt("DYNAMODB_WRITE_UNITS_PER_SECOND", 0), 1));
+    }
+
+    public DynamoDBHandler(DynamoDbAsyncClient dynamoDbClient, AdaptiveRateLimiter readLimiter, AdaptiveRateLimiter writeLimiter) {
+        this(dynamoDbClient, readLimiter, writeLimiter, new HedgePolicy(Config.getInt("HEDGE_PERCENTILE", 95),
+                Config.getInt("HEDGE_PERCENT", 0) / 100.0, Config.getInt("HEDGE_MIN_DELAY_MILLIS", 5)));
+    }
+
+    DynamoDBHandler(DynamoDbAsyncClient dynamoDbClient, AdaptiveRateLimiter readLimiter, AdaptiveRateLimiter writeLimiter, HedgePolicy hedgePolicy) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.readLimiter = readLimiter;
+        this.writeLimiter = writeLimiter;
+        scanPageSize = Config.getInt("SCAN_PAGE_SIZE", 100);
+        quantityIndexName = Config.getString("QUANTITY_INDEX_NAME", null);
+        descriptionIndexName = Config.getString("DESCRIPTION_INDEX_NAME", null);
+        entityCache = new TtlCache<>(Config.getInt("ENTITY_CACHE_MAX_SIZE", 1000));
+        entityCacheTtlMillis = Config.getInt("ENTITY_CACHE_TTL_SECONDS", 30) * 1000L;
+        entityCacheNegativeTtlMillis = Config.getInt("ENTITY_CACHE_NEGATIVE_TTL_SECONDS", 5) * 1000L;
+        idempotencyTableName = Config.getString("IDEMPOTENCY_TABLE_NAME", null);
+        idempotencyTtlMillis = Config.getInt("IDEMPOTENCY_TTL_SECONDS", 86_400) * 1000L;
+        idempotencyCache = new TtlCache<>(Config.getInt("IDEMPOTENCY_CACHE_MAX_SIZE", 1000));
+        statsTableName = Config.getString("STATS_TABLE_NAME", null);
+        statsMarkerTtlMillis = Config.getInt("STATS_MARKER_TTL_SECONDS", 172_800) * 1000L;
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    // Sends a GetItem for a sentinel id so the client's marshallers, signer, credentials and connection pool are initialized
+    public void prime() {
+        GetItemRequest getItemRequest = GetItemRequest.builder()
+                .key(EntityUtils.getItemKey(PRIMING_ID))
+                .tableName(TABLE_NAME)
+                .build();
+
+        try {
+            dynamoDbClient.getItem(getItemRequest).get(PRIMING_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            Logger.logError("prime could not reach DynamoDB: ", e);
+        }
+    }
+
+    // Replaces the client, e.g. after a SnapStart restore when pooled connections from the snapshot are dead
+    public void reconnect() {
+        DynamoDbAsyncClient staleClient = dynamoDbClient;
+
         dynamoDbClient = DependencyFactory.dynamoDbClient();
+        entityCache.clear();
+        staleClient.close();
+    }
+
+    public TtlCache<String, Optional<Entity>> getEntityCache() {
+        return entityCache;
     }
 
     public void closeDbClient() {
         dynamoDbClient.close();
     }
 
-    public List<Entity> listEntities() throws InterruptedException, ExecutionException {
-        List<Entity> entities = new ArrayList<>();
+    /**
+     * Lists one page of beans matching the filter, by the cheapest access path available: a Query on the secondary
+     * index whose sort key the filter constrains, which only reads the matching part of the index, or otherwise a
+     * Scan with a FilterExpression, which still reads (and is charged for) every item it examines. Any filter the
+     * key condition cannot express is applied as a FilterExpression on the Query. The indexes are partitioned by
+     * indexShard, so a Query page reads every shard concurrently and holds their results in no particular order.
+     *
+     * A page may hold fewer than limit items, or none; nextToken is set whenever more may remain, and is only
+     * valid with the same filters.
+     */
+    public CompletableFuture<EntityPage> listEntities(int limit, String nextToken, EntityFilter filter, FieldSelection fields, Deadline deadline) {
+        String indexName = chooseIndex(filter);
+        Map<String, AttributeValue> startKey;
+
+        try {
+            startKey = EntityUtils.decodePageToken(nextToken);
+            checkStartKey(startKey, indexName);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        String projectionExpression = getProjectionExpression(fields);
+
+        if (projectionExpression != null) {
+            names.putAll(fields.getExpressionAttributeNames());
+        }
+
+        if (indexName == null) {
+            List<String> conditions = new ArrayList<>();
+
+            if (filter.hasQuantityRange()) {
+                conditions.add(filter.getQuantityCondition());
+                filter.addQuantityAttributes(names, values);
+            }
 
-        Map<String, AttributeValue> token = null;
+            if (filter.hasDescriptionPrefix()) {
+                conditions.add(filter.getDescriptionCondition());
+                filter.addDescriptionAttributes(names, values);
+            }
 
-        while (true) {
             ScanRequest scanRequest = ScanRequest.builder()
                     .tableName(TABLE_NAME)
-                    .exclusiveStartKey(token)
+                    .limit(Math.min(limit, scanPageSize))
+                    .exclusiveStartKey(startKey)
+                    .projectionExpression(projectionExpression)
+                    .filterExpression(conditions.isEmpty() ? null : String.join(" AND ", conditions))
+                    .expressionAttributeNames(names.isEmpty() ? null : names)
+                    .expressionAttributeValues(values.isEmpty() ? null : values)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build();
+
+            return call("Scan", deadline, () -> dynamoDbClient.scan(scanRequest), ScanResponse::consumedCapacity)
+                    .thenApply(scanResponse -> toEntityPage(scanResponse.items(), scanResponse.lastEvaluatedKey()));
+        }
+
+        boolean quantityIndex = indexName.equals(quantityIndexName);
+        String keyCondition = "#indexShard = :indexShard AND "
+                + (quantityIndex ? filter.getQuantityCondition() : filter.getDescriptionCondition());
+        String filterExpression = null;
+
+        names.put("#indexShard", "indexShard");
+
+        if (quantityIndex) {
+            filter.addQuantityAttributes(names, values);
+
+            if (filter.hasDescriptionPrefix()) {
+                filterExpression = filter.getDescriptionCondition();
+                filter.addDescriptionAttributes(names, values);
+            }
+        } else {
+            filter.addDescriptionAttributes(names, values);
+
+            if (filter.hasQuantityRange()) {
+                filterExpression = filter.getQuantityCondition();
+                filter.addQuantityAttributes(names, values);
+            }
+        }
+
+        // Every shard still to read gets a share of the limit, the first ones a larger share when it does not
+        // divide evenly; a shard whose share is 0 is read on a later page
+        Map<Integer, Map<String, AttributeValue>> shardStartKeys = startKey == null ? getFirstShardKeys() : getShardStartKeys(startKey);
+        Map<Integer, CompletableFuture<QueryResponse>> shardFutures = new TreeMap<>();
+        int shardIndex = 0;
+
+        for (Map.Entry<Integer, Map<String, AttributeValue>> shardStartKey : shardStartKeys.entrySet()) {
+            int shardLimit = limit / shardStartKeys.size() + (shardIndex++ < limit % shardStartKeys.size() ? 1 : 0);
+
+            if (shardLimit == 0) {
+                continue;
+            }
+
+            Map<String, AttributeValue> shardValues = new HashMap<>(values);
+            shardValues.put(":indexShard", AttributeValue.builder().n(String.valueOf(shardStartKey.getKey())).build());
+
+            QueryRequest queryRequest = QueryRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .indexName(indexName)
+                    .keyConditionExpression(keyCondition)
+                    .filterExpression(filterExpression)
+                    .limit(shardLimit)
+                    .exclusiveStartKey(shardStartKey.getValue().containsKey("id") ? shardStartKey.getValue() : null)
+                    .projectionExpression(projectionExpression)
+                    .expressionAttributeNames(names)
+                    .expressionAttributeValues(shardValues)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                     .build();
 
-            CompletableFuture<ScanResponse> scanResponseFuture = dynamoDbClient.scan(scanRequest);
-            ScanResponse scanResponse = scanResponseFuture.get();
+            shardFutures.put(shardStartKey.getKey(), call("Query", deadline, () -> dynamoDbClient.query(queryRequest), QueryResponse::consumedCapacity));
+        }
+
+        return CompletableFuture.allOf(shardFutures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<Entity> entities = new ArrayList<>();
+            Map<String, AttributeValue> shardNextKeys = new HashMap<>();
+
+            for (Map.Entry<Integer, Map<String, AttributeValue>> shardStartKey : shardStartKeys.entrySet()) {
+                CompletableFuture<QueryResponse> shardFuture = shardFutures.get(shardStartKey.getKey());
+                Map<String, AttributeValue> shardNextKey = shardStartKey.getValue();
+
+                if (shardFuture != null) {
+                    QueryResponse queryResponse = shardFuture.join();
+
+                    for (Map<String, AttributeValue> item : queryResponse.items()) {
+                        entities.add(EntityUtils.getEntityFromDBItem(item));
+                    }
+
+                    shardNextKey = queryResponse.lastEvaluatedKey().isEmpty() ? null : queryResponse.lastEvaluatedKey();
+                }
+
+                if (shardNextKey != null) {
+                    shardNextKeys.put(String.valueOf(shardStartKey.getKey()), AttributeValue.builder().m(shardNextKey).build());
+                }
+            }
+
+            return new EntityPage(entities, EntityUtils.encodePageToken(shardNextKeys));
+        });
+    }
+
+    // A shard not read yet is marked by its shard number alone, without a key to start after
+    private static Map<Integer, Map<String, AttributeValue>> getFirstShardKeys() {
+        Map<Integer, Map<String, AttributeValue>> firstKeys = new TreeMap<>();
+
+        for (int shard = 0; shard < EntityUtils.INDEX_SHARDS; shard++) {
+            firstKeys.put(shard, Map.of("indexShard", AttributeValue.builder().n(String.valueOf(shard)).build()));
+        }
+
+        return firstKeys;
+    }
+
+    // Every entry of an index listing token is a shard number and the index key the shard stopped at
+    private static Map<Integer, Map<String, AttributeValue>> getShardStartKeys(Map<String, AttributeValue> token) {
+        Map<Integer, Map<String, AttributeValue>> startKeys = new TreeMap<>();
+
+        for (Map.Entry<String, AttributeValue> entry : token.entrySet()) {
+            startKeys.put(Integer.parseInt(entry.getKey()), entry.getValue().m());
+        }
+
+        return startKeys;
+    }
+
+    // Index names come from QUANTITY_INDEX_NAME and DESCRIPTION_INDEX_NAME; without them every listing is a Scan.
+    // With both filters, a description prefix usually narrows the search more than a one-sided quantity bound.
+    private String chooseIndex(EntityFilter filter) {
+        boolean useQuantityIndex = quantityIndexName != null && filter.hasQuantityRange();
+        boolean useDescriptionIndex = descriptionIndexName != null && filter.hasDescriptionPrefix();
+
+        if (useDescriptionIndex && (!useQuantityIndex || !filter.hasBothQuantityBounds())) {
+            return descriptionIndexName;
+        }
+
+        return useQuantityIndex ? quantityIndexName : null;
+    }
 
-            List<Map<String, AttributeValue>> items = scanResponse.items();
+    // DynamoDB fails a request whose start key belongs to another access path; report it as a bad token instead
+    private void checkStartKey(Map<String, AttributeValue> startKey, String indexName) throws IllegalArgumentException {
+        if (startKey == null) {
+            return;
+        }
 
-            for (Map<String, AttributeValue> item : items) {
-                entities.add(EntityUtils.getEntityFromDBItem(item));
+        if (indexName == null) {
+            if (!startKey.keySet().equals(Set.of("id"))) {
+                throw new IllegalArgumentException("nextToken does not belong to a listing with these filters");
             }
+            return;
+        }
+
+        Set<String> expectedKeys = Set.of("id", "indexShard", indexName.equals(quantityIndexName) ? "quantity" : "description");
 
-            token = scanResponse.lastEvaluatedKey();
+        for (Map.Entry<String, AttributeValue> entry : startKey.entrySet()) {
+            Map<String, AttributeValue> shardKey = entry.getValue().m();
+            String shard = entry.getKey();
 
-            if (token.isEmpty()) {
-                break;
+            if (!shard.matches("\\d{1,3}") || Integer.parseInt(shard) >= EntityUtils.INDEX_SHARDS || shardKey == null
+                    || !(shardKey.keySet().equals(expectedKeys) || shardKey.keySet().equals(Set.of("indexShard")))
+                    || !shard.equals(shardKey.get("indexShard").n())) {
+                throw new IllegalArgumentException("nextToken does not belong to a listing with these filters");
             }
         }
+    }
+
+    private static EntityPage toEntityPage(List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastEvaluatedKey) {
+        List<Entity> entities = new ArrayList<>(items.size());
+
+        for (Map<String, AttributeValue> item : items) {
+            entities.add(EntityUtils.getEntityFromDBItem(item));
+        }
 
-        return entities;
+        return new EntityPage(entities, EntityUtils.encodePageToken(lastEvaluatedKey));
     }
 
-    public Entity getEntity(String id) throws InterruptedException, ExecutionException, NoSuchElementException {
-        HashMap<String, AttributeValue> itemKey = new HashMap<>();
-        itemKey.put("id", AttributeValue.builder()
-                .s(id)
-                .build());
+    /**
+     * One page of the backfill of indexShard, for beans written before the listing indexes existed, which filtered
+     * listings on the indexes would otherwise leave out. Scans a page from nextToken for beans without the
+     * attribute and sets it on each with a conditional UpdateItem that skips beans deleted or rewritten since.
+     * Returns the updated beans and the token to carry on from, null once the whole table has been read.
+     */
+    public CompletableFuture<EntityPage> backfillIndexKeys(String nextToken, Deadline deadline) {
+        Map<String, AttributeValue> startKey;
 
-        GetItemRequest getItemRequest = GetItemRequest.builder()
-                .key(itemKey)
+        try {
+            startKey = EntityUtils.decodePageToken(nextToken);
+            checkStartKey(startKey, null);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        ScanRequest scanRequest = ScanRequest.builder()
                 .tableName(TABLE_NAME)
+                .limit(scanPageSize)
+                .exclusiveStartKey(startKey)
+                .projectionExpression("#id")
+                .filterExpression("attribute_not_exists(#indexShard)")
+                .expressionAttributeNames(Map.of("#id", "id", "#indexShard", "indexShard"))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
 
-        CompletableFuture<GetItemResponse> getItemResponseFuture = dynamoDbClient.getItem(getItemRequest);
-        GetItemResponse getItemResponse = getItemResponseFuture.get();
+        return call("Scan", deadline, () -> dynamoDbClient.scan(scanRequest), ScanResponse::consumedCapacity).thenCompose(scanResponse -> {
+            List<CompletableFuture<Entity>> updateFutures = new ArrayList<>();
+
+            for (Map<String, AttributeValue> item : scanResponse.items()) {
+                updateFutures.add(backfillIndexKey(item.get("id").s(), deadline));
+            }
+
+            return CompletableFuture.allOf(updateFutures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+                List<Entity> entities = new ArrayList<>();
+
+                for (CompletableFuture<Entity> updateFuture : updateFutures) {
+                    if (updateFuture.join() != null) {
+                        entities.add(updateFuture.join());
+                    }
+                }
 
-        Map<String, AttributeValue> item = getItemResponse.item();
+                return new EntityPage(entities, EntityUtils.encodePageToken(scanResponse.lastEvaluatedKey()));
+            });
+        });
+    }
 
-        if (item.isEmpty()) {
-            throw new NoSuchElementException("Item not found with ID: " + id);
+    // Also removes the entityType attribute that keyed the indexes before they were sharded. Null when the bean
+    // was deleted, or written with indexShard, since it was scanned.
+    private CompletableFuture<Entity> backfillIndexKey(String id, Deadline deadline) {
+        UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(EntityUtils.getItemKey(id))
+                .updateExpression("SET #indexShard = :indexShard REMOVE #entityType")
+                .conditionExpression("attribute_exists(#id) AND attribute_not_exists(#indexShard)")
+                .expressionAttributeNames(Map.of("#id", "id", "#indexShard", "indexShard", "#entityType", "entityType"))
+                .expressionAttributeValues(Map.of(":indexShard", EntityUtils.getIndexShard(id)))
+                .returnValues(ReturnValue.ALL_NEW)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+
+        return call("UpdateItem", deadline, () -> dynamoDbClient.updateItem(updateItemRequest), UpdateItemResponse::consumedCapacity)
+                .handle((updateItemResponse, throwable) -> {
+                    entityCache.invalidate(id);
+
+                    if (throwable == null) {
+                        return EntityUtils.getEntityFromDBItem(updateItemResponse.attributes());
+                    }
+
+                    if (AsyncUtils.unwrap(throwable) instanceof ConditionalCheckFailedException) {
+                        return null;
+                    }
+
+                    throw AsyncUtils.propagate(throwable);
+                });
+    }
+
+    /**
+     * One round of a resumable parallel scan, for exports: the next page of every segment that has not reached
+     * its end, scanned concurrently. The returned token holds the segment count and the LastEvaluatedKey of each
+     * unfinished segment, so the export can carry on from it in another request; it is null once every segment is
+     * done. A round holds at most MAX_SCAN_SEGMENTS pages of SCAN_PAGE_SIZE items, whatever the table's size.
+     */
+    public CompletableFuture<EntityPage> scanRound(String exportToken, Deadline deadline) {
+        Map<String, AttributeValue> token;
+        int totalSegments;
+        Map<Integer, Map<String, AttributeValue>> startKeys;
+
+        try {
+            token = EntityUtils.decodePageToken(exportToken);
+
+            if (token == null) {
+                return resolveTotalSegments(deadline).thenCompose(segments -> {
+                    Map<Integer, Map<String, AttributeValue>> firstKeys = new TreeMap<>();
+                    for (int segment = 0; segment < segments; segment++) {
+                        firstKeys.put(segment, null);
+                    }
+                    return scanRound(segments, firstKeys, deadline);
+                });
+            }
+
+            totalSegments = getTotalSegments(token);
+            startKeys = getSegmentStartKeys(token, totalSegments);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
         }
 
-        return EntityUtils.getEntityFromDBItem(item);
+        return scanRound(totalSegments, startKeys, deadline);
     }
 
-    public Entity putEntity(BaseEntity newEntity) throws InterruptedException, ExecutionException {
-        if (newEntity instanceof BaseEntity) {
-            Entity entity = new Entity(newEntity);
+    private CompletableFuture<EntityPage> scanRound(int totalSegments, Map<Integer, Map<String, AttributeValue>> startKeys, Deadline deadline) {
+        Map<Integer, CompletableFuture<ScanResponse>> segmentFutures = new TreeMap<>();
 
-            PutItemRequest newItemRequest = PutItemRequest.builder()
+        for (Map.Entry<Integer, Map<String, AttributeValue>> startKey : startKeys.entrySet()) {
+            ScanRequest scanRequest = ScanRequest.builder()
                     .tableName(TABLE_NAME)
-                    .item(EntityUtils.getItemValues(entity))
+                    .limit(scanPageSize)
+                    .segment(startKey.getKey())
+                    .totalSegments(totalSegments)
+                    .exclusiveStartKey(startKey.getValue())
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                     .build();
 
-            CompletableFuture<PutItemResponse> putItemResponseFuture = dynamoDbClient.putItem(newItemRequest);
-            putItemResponseFuture.get();
+            segmentFutures.put(startKey.getKey(), call("Scan", deadline, () -> dynamoDbClient.scan(scanRequest), ScanResponse::consumedCapacity));
+        }
+
+        return CompletableFuture.allOf(segmentFutures.values().toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<Entity> entities = new ArrayList<>();
+            Map<String, AttributeValue> nextToken = new HashMap<>();
+
+            for (Map.Entry<Integer, CompletableFuture<ScanResponse>> segmentFuture : segmentFutures.entrySet()) {
+                ScanResponse scanResponse = segmentFuture.getValue().join();
+
+                for (Map<String, AttributeValue> item : scanResponse.items()) {
+                    entities.add(EntityUtils.getEntityFromDBItem(item));
+                }
+
+                if (!scanResponse.lastEvaluatedKey().isEmpty()) {
+                    nextToken.put(String.valueOf(segmentFuture.getKey()), AttributeValue.builder().m(scanResponse.lastEvaluatedKey()).build());
+                }
+            }
+
+            if (!nextToken.isEmpty()) {
+                nextToken.put(TOTAL_SEGMENTS_TOKEN_KEY, AttributeValue.builder().n(String.valueOf(totalSegments)).build());
+            }
+
+            return new EntityPage(entities, EntityUtils.encodePageToken(nextToken));
+        });
+    }
+
+    private static int getTotalSegments(Map<String, AttributeValue> token) throws IllegalArgumentException {
+        AttributeValue totalSegments = token.get(TOTAL_SEGMENTS_TOKEN_KEY);
+
+        if (totalSegments == null || totalSegments.n() == null) {
+            throw new IllegalArgumentException("nextToken does not belong to an export");
+        }
+
+        int segments = Integer.parseInt(totalSegments.n());
+
+        if (segments < 1 || segments > MAX_SCAN_SEGMENTS) {
+            throw new IllegalArgumentException("Invalid export token");
+        }
+
+        return segments;
+    }
+
+    // Every other entry of an export token is a segment number and the base table key the segment stopped at
+    private static Map<Integer, Map<String, AttributeValue>> getSegmentStartKeys(Map<String, AttributeValue> token, int totalSegments)
+            throws IllegalArgumentException {
+        Map<Integer, Map<String, AttributeValue>> startKeys = new TreeMap<>();
+
+        for (Map.Entry<String, AttributeValue> entry : token.entrySet()) {
+            if (entry.getKey().equals(TOTAL_SEGMENTS_TOKEN_KEY)) {
+                continue;
+            }
+
+            int segment = Integer.parseInt(entry.getKey());
+            Map<String, AttributeValue> startKey = entry.getValue().m();
+
+            if (segment < 0 || segment >= totalSegments || startKey == null || !startKey.keySet().equals(Set.of("id"))) {
+                throw new IllegalArgumentException("Invalid export token");
+            }
+
+            startKeys.put(segment, startKey);
+        }
+
+        if (startKeys.isEmpty()) {
+            throw new IllegalArgumentException("Invalid export token");
+        }
+
+        return startKeys;
+    }
+
+    // SCAN_TOTAL_SEGMENTS overrides the segment count; otherwise it is sized from the table's
+    // (approximate, refreshed roughly every six hours) item count
+    private CompletableFuture<Integer> resolveTotalSegments(Deadline deadline) {
+        int configuredSegments = Config.getInt("SCAN_TOTAL_SEGMENTS", 0);
+
+        if (configuredSegments > 0) {
+            return CompletableFuture.completedFuture(Math.min(configuredSegments, MAX_SCAN_SEGMENTS));
+        }
+
+        DescribeTableRequest describeTableRequest = DescribeTableRequest.builder()
+                .tableName(TABLE_NAME)
+                .build();
+
+        return call("DescribeTable", deadline, () -> dynamoDbClient.describeTable(describeTableRequest), describeTableResponse -> null).thenApply(describeTableResponse -> {
+            long itemCount = describeTableResponse.table().itemCount();
+            long segments = (itemCount + ITEMS_PER_SCAN_SEGMENT - 1) / ITEMS_PER_SCAN_SEGMENT;
+
+            return (int) Math.max(1, Math.min(segments, MAX_SCAN_SEGMENTS));
+        });
+    }
+
+    // Cached entities are always complete and are returned whole, the response is limited to the selected fields;
+    // projected reads are not cached
+    public CompletableFuture<Entity> getEntity(String id, FieldSelection fields, Deadline deadline) {
+        Optional<Entity> cachedEntity = getCachedEntity(id);
+
+        if (cachedEntity != null) {
+            return cachedEntity
+                    .map(CompletableFuture::completedFuture)
+                    .orElseGet(() -> CompletableFuture.failedFuture(new NoSuchElementException("Item not found with ID: " + id)));
+        }
+
+        GetItemRequest getItemRequest = GetItemRequest.builder()
+                .key(EntityUtils.getItemKey(id))
+                .tableName(TABLE_NAME)
+                .projectionExpression(getProjectionExpression(fields))
+                .expressionAttributeNames(getProjectionNames(fields))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+
+        return getItem(getItemRequest, deadline).thenApply(getItemResponse -> {
+            Map<String, AttributeValue> item = getItemResponse.item();
+
+            if (item.isEmpty()) {
+                entityCache.put(id, Optional.empty(), entityCacheNegativeTtlMillis);
+                throw new NoSuchElementException("Item not found with ID: " + id);
+            }
+
+            Entity entity = EntityUtils.getEntityFromDBItem(item);
+            if (fields.isAll()) {
+                entityCache.put(id, Optional.of(entity), entityCacheTtlMillis);
+            }
 
             return entity;
-        } else {
-            throw new ClassCastException("Invalid data");
+        });
+    }
+
+    /**
+     * A GetItem that is hedged when the policy allows: if no answer has come back after the hedge delay, the same
+     * request is sent again and the first successful response is used. The other one is left to finish, since
+     * its read has been charged either way, and its latency still counts towards the next hedge delay. The read
+     * only fails when every request sent for it has failed; once it has an answer, a late failure of the other
+     * request is neither retried nor counted as an error.
+     */
+    private CompletableFuture<GetItemResponse> getItem(GetItemRequest getItemRequest, Deadline deadline) {
+        long hedgeDelayMillis = hedgePolicy.nextDelayMillis();
+
+        if (hedgeDelayMillis < 0 || !deadline.allows(hedgeDelayMillis)) {
+            return call("GetItem", deadline, () -> dynamoDbClient.getItem(getItemRequest), GetItemResponse::consumedCapacity);
         }
+
+        CompletableFuture<GetItemResponse> result = new CompletableFuture<>();
+        // requests sent and not yet failed; at 0 the read has failed and no hedge may be sent any more
+        AtomicInteger outstanding = new AtomicInteger(1);
+
+        call("GetItem", deadline, () -> dynamoDbClient.getItem(getItemRequest), GetItemResponse::consumedCapacity, result::isDone, 0)
+                .whenComplete((response, throwable) -> {
+                    if (throwable == null) {
+                        result.complete(response);
+                    } else if (outstanding.decrementAndGet() == 0) {
+                        result.completeExceptionally(throwable);
+                    }
+                });
+
+        Backoff.delay(hedgeDelayMillis).thenRun(() -> {
+            if (result.isDone() || !hedgePolicy.tryAcquire()) {
+                return;
+            }
+
+            if (outstanding.getAndUpdate(count -> count == 0 ? 0 : count + 1) == 0) {
+                return;
+            }
+
+            Metrics.increment("Operation", "GetItem", "Hedges");
+
+            call("GetItem", deadline, () -> dynamoDbClient.getItem(getItemRequest), GetItemResponse::consumedCapacity, result::isDone, 0)
+                    .whenComplete((response, throwable) -> {
+                        if (throwable == null) {
+                            if (result.complete(response)) {
+                                Metrics.increment("Operation", "GetItem", "HedgeWins");
+                            }
+                        } else if (outstanding.decrementAndGet() == 0) {
+                            result.completeExceptionally(throwable);
+                        }
+                    });
+        });
+
+        return result;
     }
 
-    public void updateEntity(String id, BaseEntity entity) throws InterruptedException, ExecutionException, NoSuchElementException {
-        getEntity(id);
+    public CompletableFuture<Entity> putEntity(BaseEntity newEntity, Deadline deadline) {
+        Entity entity = new Entity(newEntity);
 
-        HashMap<String, AttributeValue> itemKey = new HashMap<>();
-        itemKey.put("id", AttributeValue.builder()
-                .s(id)
-                .build());
+        PutItemRequest newItemRequest = PutItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .item(EntityUtils.getItemValues(entity))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+
+        return call("PutItem", deadline, () -> dynamoDbClient.putItem(newItemRequest), PutItemResponse::consumedCapacity).thenApply(putItemResponse -> {
+            entityCache.put(entity.getId(), Optional.of(entity), entityCacheTtlMillis);
+            return entity;
+        });
+    }
+
+    /**
+     * Creates a bean at most once per idempotency key. The bean and a record of it in the idempotency table are
+     * written in one transaction, conditioned on the key being unused (or its record expired). When a retry finds
+     * the key used, the failed condition returns the stored record, so the earlier bean is replayed in the same
+     * round trip and the bean table is not written again. Replays are also cached per container.
+     *
+     * Without IDEMPOTENCY_TABLE_NAME, or without a key, this is a plain putEntity.
+     */
+    public CompletableFuture<Entity> putEntity(BaseEntity newEntity, String idempotencyKey, Deadline deadline) {
+        if (idempotencyKey == null || idempotencyTableName == null) {
+            return putEntity(newEntity, deadline);
+        }
+
+        Entity cachedEntity = idempotencyCache.get(idempotencyKey);
+        Metrics.increment("Cache", "Idempotency", cachedEntity == null ? "CacheMiss" : "CacheHit");
+
+        if (cachedEntity != null) {
+            return AsyncUtils.attempt(() -> checkReplay(idempotencyKey, cachedEntity, newEntity));
+        }
+
+        Entity entity = new Entity(newEntity);
+        long nowMillis = System.currentTimeMillis();
+
+        TransactWriteItemsRequest transactWriteItemsRequest = TransactWriteItemsRequest.builder()
+                .transactItems(
+                        TransactWriteItem.builder()
+                                .put(Put.builder()
+                                        .tableName(TABLE_NAME)
+                                        .item(EntityUtils.getItemValues(entity))
+                                        .build())
+                                .build(),
+                        TransactWriteItem.builder()
+                                .put(Put.builder()
+                                        .tableName(idempotencyTableName)
+                                        .item(EntityUtils.getIdempotencyRecord(idempotencyKey, entity, (nowMillis + idempotencyTtlMillis) / 1000))
+                                        .conditionExpression(EntityUtils.IDEMPOTENCY_CONDITION)
+                                        .expressionAttributeNames(EntityUtils.getIdempotencyNames())
+                                        .expressionAttributeValues(EntityUtils.getIdempotencyValues(nowMillis / 1000))
+                                        .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                                        .build())
+                                .build())
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+
+        return call("TransactWriteItems", deadline, () -> dynamoDbClient.transactWriteItems(transactWriteItemsRequest),
+                transactWriteItemsResponse -> sumCapacity(transactWriteItemsResponse.consumedCapacity()))
+                .handle((transactWriteItemsResponse, throwable) -> {
+                    if (throwable == null) {
+                        entityCache.put(entity.getId(), Optional.of(entity), entityCacheTtlMillis);
+                        idempotencyCache.put(idempotencyKey, entity, idempotencyTtlMillis);
+                        return entity;
+                    }
+
+                    if (!(AsyncUtils.unwrap(throwable) instanceof TransactionCanceledException canceled) || !canceled.hasCancellationReasons()) {
+                        throw AsyncUtils.propagate(throwable);
+                    }
+
+                    CancellationReason recordReason = canceled.cancellationReasons().get(1);
+
+                    if ("ConditionalCheckFailed".equals(recordReason.code()) && recordReason.hasItem()) {
+                        Map<String, AttributeValue> record = recordReason.item();
+                        Entity storedEntity = EntityUtils.getEntityFromIdempotencyRecord(record);
+                        long remainingMillis = Long.parseLong(record.get("expiresAt").n()) * 1000 - System.currentTimeMillis();
+
+                        idempotencyCache.put(idempotencyKey, storedEntity, remainingMillis);
+                        return checkReplay(idempotencyKey, storedEntity, newEntity);
+                    }
+
+                    for (CancellationReason reason : canceled.cancellationReasons()) {
+                        if ("TransactionConflict".equals(reason.code())) {
+                            throw new ConflictException("A request with Idempotency-Key " + idempotencyKey + " is in progress");
+                        }
+                    }
+
+                    throw AsyncUtils.propagate(throwable);
+                });
+    }
+
+    // A key may only be replayed with the request it was first used with
+    private static Entity checkReplay(String idempotencyKey, Entity storedEntity, BaseEntity newEntity) {
+        if (!storedEntity.getDescription().equals(newEntity.getDescription()) || storedEntity.getQuantity() != newEntity.getQuantity()) {
+            throw new ValidationException("Idempotency-Key", "was already used with a different request body");
+        }
+
+        Logger.debug("Replayed bean {} for Idempotency-Key {}", storedEntity.getId(), idempotencyKey);
+        return storedEntity;
+    }
+
+    public CompletableFuture<Entity> updateEntity(String id, BaseEntity entity, Deadline deadline) {
+        return updateEntity(id, entity, null, deadline);
+    }
+
+    // A single conditional UpdateItem: the condition replaces the old read-before-write existence check and, when
+    // the caller sent If-Match, the version check it would otherwise need
+    public CompletableFuture<Entity> updateEntity(String id, BaseEntity entity, Long expectedVersion, Deadline deadline) {
+        Map<String, AttributeValue> values = EntityUtils.getUpdatedValues(id, entity);
+        EntityUtils.addExpectedVersion(values, expectedVersion);
 
-        HashMap<String, AttributeValueUpdate> updatedValues = EntityUtils.getUpdatedValues(entity);
         UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
                 .tableName(TABLE_NAME)
-                .key(itemKey)
-                .attributeUpdates(updatedValues)
+                .key(EntityUtils.getItemKey(id))
+                .updateExpression(EntityUtils.getUpdateExpression(entity))
+                .conditionExpression(EntityUtils.getVersionCondition(expectedVersion))
+                .expressionAttributeNames(EntityUtils.getUpdatedNames())
+                .expressionAttributeValues(values)
+                .returnValues(ReturnValue.ALL_NEW)
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
 
-        CompletableFuture<UpdateItemResponse> updateItemResponseFuture = dynamoDbClient.updateItem(updateItemRequest);
-        updateItemResponseFuture.get();
+        return call("UpdateItem", deadline, () -> dynamoDbClient.updateItem(updateItemRequest), UpdateItemResponse::consumedCapacity)
+                .exceptionally(throwable -> {
+                    throw getConditionFailure(id, expectedVersion, throwable);
+                })
+                .whenComplete((updateItemResponse, throwable) -> entityCache.invalidate(id))
+                .thenApply(updateItemResponse -> {
+                    Entity updatedEntity = EntityUtils.getEntityFromDBItem(updateItemResponse.attributes());
+                    entityCache.put(id, Optional.of(updatedEntity), entityCacheTtlMillis);
+                    return updatedEntity;
+                });
     }
 
-    public void deleteEntity(String id) throws InterruptedException, ExecutionException, NoSuchElementException {
-        HashMap<String, AttributeValue> keyToGet = new HashMap<>();
-        keyToGet.put("id", AttributeValue.builder()
-                .s(id)
-                .build());
+    public CompletableFuture<Entity> adjustQuantity(String id, int delta, Deadline deadline) {
+        return adjustQuantity(id, delta, 1, deadline);
+    }
 
-        DeleteItemRequest deleteItemRequest = DeleteItemRequest.builder()
+    // One conditional write, so concurrent adjustments neither lose updates nor need a read-modify-write retry loop.
+    // delta may be the sum of several adjustments, which QuantityCoalescer merges into one write. The returned
+    // entity carries only the id, the new quantity and the new version.
+    public CompletableFuture<Entity> adjustQuantity(String id, int delta, int adjustments, Deadline deadline) {
+        UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
+                .tableName(TABLE_NAME)
+                .key(EntityUtils.getItemKey(id))
+                .updateExpression(EntityUtils.QUANTITY_DELTA_EXPRESSION)
+                .conditionExpression(EntityUtils.getQuantityDeltaCondition(delta))
+                .expressionAttributeNames(EntityUtils.getQuantityDeltaNames())
+                .expressionAttributeValues(EntityUtils.getQuantityDeltaValues(id, delta, adjustments))
+                .returnValues(ReturnValue.UPDATED_NEW)
+                .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+
+        return call("UpdateItem", deadline, () -> dynamoDbClient.updateItem(updateItemRequest), UpdateItemResponse::consumedCapacity)
+                .exceptionally(throwable -> {
+                    // the old item tells a missing bean apart from a quantity the delta would take out of range
+                    if (AsyncUtils.unwrap(throwable) instanceof ConditionalCheckFailedException conditionFailure) {
+                        if (!conditionFailure.hasItem() || conditionFailure.item().isEmpty()) {
+                            throw new NoSuchElementException("Item not found with ID: " + id);
+                        }
+                        throw new ConflictException("Quantity " + conditionFailure.item().get("quantity").n()
+                                + " of " + id + " cannot be adjusted by " + delta);
+                    }
+                    throw AsyncUtils.propagate(throwable);
+                })
+                .whenComplete((updateItemResponse, throwable) -> entityCache.invalidate(id))
+                .thenApply(updateItemResponse -> new Entity(id,
+                        new BaseEntity(null, Integer.parseInt(updateItemResponse.attributes().get("quantity").n())),
+                        EntityUtils.getVersion(updateItemResponse.attributes())));
+    }
+
+    public CompletableFuture<Void> deleteEntity(String id, Deadline deadline) {
+        return deleteEntity(id, null, deadline);
+    }
+
+    // Without an expected version the delete is unconditional, and ALL_OLD tells whether there was anything to delete
+    public CompletableFuture<Void> deleteEntity(String id, Long expectedVersion, Deadline deadline) {
+        DeleteItemRequest.Builder deleteItemRequestBuilder = DeleteItemRequest.builder()
                 .tableName(TABLE_NAME)
                 .returnValues("ALL_OLD")
-                .key(keyToGet)
+                .key(EntityUtils.getItemKey(id))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL);
+
+        if (expectedVersion != null) {
+            Map<String, AttributeValue> values = new HashMap<>();
+            EntityUtils.addExpectedVersion(values, expectedVersion);
+
+            deleteItemRequestBuilder
+                    .conditionExpression(EntityUtils.getVersionCondition(expectedVersion))
+                    .expressionAttributeNames(EntityUtils.getVersionNames())
+                    .expressionAttributeValues(values.isEmpty() ? null : values)
+                    .returnValuesOnConditionCheckFailure(ReturnValuesOnConditionCheckFailure.ALL_OLD);
+        }
+
+        DeleteItemRequest deleteItemRequest = deleteItemRequestBuilder.build();
+
+        return call("DeleteItem", deadline, () -> dynamoDbClient.deleteItem(deleteItemRequest), DeleteItemResponse::consumedCapacity)
+                .exceptionally(throwable -> {
+                    throw getConditionFailure(id, expectedVersion, throwable);
+                })
+                .whenComplete((deleteItemResponse, throwable) -> entityCache.invalidate(id))
+                .thenAccept(deleteItemResponse -> {
+                    if (deleteItemResponse.attributes() == null || deleteItemResponse.attributes().isEmpty()) {
+                        throw new NoSuchElementException("Item not found with ID: " + id);
+                    }
+                });
+    }
+
+    public CompletableFuture<Map<String, BatchItemResult>> batchGetEntities(Collection<String> ids, FieldSelection fields, Deadline deadline) {
+        Map<String, BatchItemResult> results = new ConcurrentHashMap<>();
+        List<String> uniqueIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<String> uncachedIds = new ArrayList<>();
+        List<CompletableFuture<Void>> chunkFutures = new ArrayList<>();
+
+        for (String id : uniqueIds) {
+            Optional<Entity> cachedEntity = getCachedEntity(id);
+
+            if (cachedEntity == null) {
+                uncachedIds.add(id);
+            } else if (cachedEntity.isPresent()) {
+                results.put(id, BatchItemResult.ok(id, cachedEntity.get()));
+            }
+        }
+
+        for (int start = 0; start < uncachedIds.size(); start += BATCH_GET_CHUNK_SIZE) {
+            List<Map<String, AttributeValue>> keys = new ArrayList<>();
+
+            for (String id : uncachedIds.subList(start, Math.min(start + BATCH_GET_CHUNK_SIZE, uncachedIds.size()))) {
+                keys.add(EntityUtils.getItemKey(id));
+            }
+
+            chunkFutures.add(sendBatchGet(keys, fields, 0, results, deadline));
+        }
+
+        return CompletableFuture.allOf(chunkFutures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            for (String id : uniqueIds) {
+                results.putIfAbsent(id, BatchItemResult.error(id, 404, "Item not found with ID: " + id));
+            }
+
+            return results;
+        });
+    }
+
+    private CompletableFuture<Void> sendBatchGet(List<Map<String, AttributeValue>> keys, FieldSelection fields, int attempt,
+            Map<String, BatchItemResult> results, Deadline deadline) {
+        BatchGetItemRequest batchGetItemRequest = BatchGetItemRequest.builder()
+                .requestItems(Map.of(TABLE_NAME, KeysAndAttributes.builder()
+                        .keys(keys)
+                        .projectionExpression(getProjectionExpression(fields))
+                        .expressionAttributeNames(getProjectionNames(fields))
+                        .build()))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+
+        CompletableFuture<BatchGetItemResponse> responseFuture = call("BatchGetItem", deadline, () -> dynamoDbClient.batchGetItem(batchGetItemRequest),
+                batchGetItemResponse -> sumCapacity(batchGetItemResponse.consumedCapacity()));
+
+        return responseFuture.handle((batchGetItemResponse, throwable) -> {
+            if (throwable != null) {
+                Logger.logError("batchGetItem failed", throwable);
+                failKeys(keys, results, AsyncUtils.unwrap(throwable));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            for (Map<String, AttributeValue> item : batchGetItemResponse.responses().getOrDefault(TABLE_NAME, List.of())) {
+                Entity entity = EntityUtils.getEntityFromDBItem(item);
+                if (fields.isAll()) {
+                    entityCache.put(entity.getId(), Optional.of(entity), entityCacheTtlMillis);
+                }
+                results.put(entity.getId(), BatchItemResult.ok(entity.getId(), entity));
+            }
+
+            KeysAndAttributes unprocessed = batchGetItemResponse.unprocessedKeys().get(TABLE_NAME);
+
+            if (unprocessed == null || unprocessed.keys().isEmpty()) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            // unprocessed keys mean the table ran out of throughput
+            readLimiter.onThrottle();
+            long delayMillis = Backoff.delayMillis(attempt);
+
+            if (attempt + 1 >= MAX_BATCH_ATTEMPTS || !deadline.allows(delayMillis)) {
+                failKeys(unprocessed.keys(), results, new ThrottledException("BatchGetItem left keys unprocessed", MIN_RETRY_AFTER_MILLIS));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            return Backoff.delay(delayMillis)
+                    .thenCompose(ignored -> sendBatchGet(unprocessed.keys(), fields, attempt + 1, results, deadline));
+        }).thenCompose(future -> future);
+    }
+
+    // Deletes are reported as successful whether or not the item existed, as BatchWriteItem does not return old values
+    public CompletableFuture<Map<String, BatchItemResult>> batchWriteEntities(List<Entity> newEntities, Collection<String> deleteIds, Deadline deadline) {
+        Map<String, BatchItemResult> results = new ConcurrentHashMap<>();
+        List<WriteRequest> writeRequests = new ArrayList<>();
+
+        for (Entity entity : newEntities) {
+            writeRequests.add(WriteRequest.builder()
+                    .putRequest(PutRequest.builder()
+                            .item(EntityUtils.getItemValues(entity))
+                            .build())
+                    .build());
+            results.put(entity.getId(), BatchItemResult.ok(entity.getId(), entity));
+        }
+
+        for (String id : new LinkedHashSet<>(deleteIds)) {
+            writeRequests.add(WriteRequest.builder()
+                    .deleteRequest(DeleteRequest.builder()
+                            .key(EntityUtils.getItemKey(id))
+                            .build())
+                    .build());
+            results.put(id, BatchItemResult.ok(id, "OK"));
+        }
+
+        List<CompletableFuture<Void>> chunkFutures = new ArrayList<>();
+
+        for (int start = 0; start < writeRequests.size(); start += BATCH_WRITE_CHUNK_SIZE) {
+            List<WriteRequest> chunk = writeRequests.subList(start, Math.min(start + BATCH_WRITE_CHUNK_SIZE, writeRequests.size()));
+            chunkFutures.add(sendBatchWrite(chunk, 0, results, deadline));
+        }
+
+        return CompletableFuture.allOf(chunkFutures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            for (String id : deleteIds) {
+                entityCache.invalidate(id);
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Writes imported beans, whose ids may already exist. Rather than putting the version from the input, each
+     * bean is an unconditional UpdateItem that moves the stored version on by one (or starts it at 1), so an ETag
+     * handed out for an earlier state never matches the imported one. That costs the same write capacity as a
+     * BatchWriteItem put, in one call per bean, sent concurrently.
+     */
+    public CompletableFuture<Map<String, BatchItemResult>> importEntities(List<Entity> entities, Deadline deadline) {
+        Map<String, BatchItemResult> results = new ConcurrentHashMap<>();
+        Map<String, String> names = EntityUtils.getUpdatedNames();
+        CompletableFuture<?>[] writeFutures = new CompletableFuture<?>[entities.size()];
+
+        // the existence condition of a PUT is not used here
+        names.remove("#id");
+
+        for (int i = 0; i < entities.size(); i++) {
+            String id = entities.get(i).getId();
+
+            UpdateItemRequest updateItemRequest = UpdateItemRequest.builder()
+                    .tableName(TABLE_NAME)
+                    .key(EntityUtils.getItemKey(id))
+                    .updateExpression(EntityUtils.getUpdateExpression(entities.get(i)))
+                    .expressionAttributeNames(names)
+                    .expressionAttributeValues(EntityUtils.getUpdatedValues(id, entities.get(i)))
+                    .returnValues(ReturnValue.ALL_NEW)
+                    .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                    .build();
+
+            writeFutures[i] = call("UpdateItem", deadline, () -> dynamoDbClient.updateItem(updateItemRequest), UpdateItemResponse::consumedCapacity)
+                    .handle((updateItemResponse, throwable) -> {
+                        entityCache.invalidate(id);
+
+                        if (throwable != null) {
+                            Logger.logError("import of " + id + " failed", throwable);
+                            results.put(id, getFailure(id, AsyncUtils.unwrap(throwable)));
+                        } else {
+                            results.put(id, BatchItemResult.ok(id, EntityUtils.getEntityFromDBItem(updateItemResponse.attributes())));
+                        }
+
+                        return null;
+                    });
+        }
+
+        return CompletableFuture.allOf(writeFutures).thenApply(ignored -> results);
+    }
+
+    private CompletableFuture<Void> sendBatchWrite(List<WriteRequest> writeRequests, int attempt, Map<String, BatchItemResult> results, Deadline deadline) {
+        BatchWriteItemRequest batchWriteItemRequest = BatchWriteItemRequest.builder()
+                .requestItems(Map.of(TABLE_NAME, writeRequests))
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+
+        CompletableFuture<BatchWriteItemResponse> responseFuture = call("BatchWriteItem", deadline, () -> dynamoDbClient.batchWriteItem(batchWriteItemRequest),
+                batchWriteItemResponse -> sumCapacity(batchWriteItemResponse.consumedCapacity()));
+
+        return responseFuture.handle((batchWriteItemResponse, throwable) -> {
+            if (throwable != null) {
+                Logger.logError("batchWriteItem failed", throwable);
+                failWrites(writeRequests, results, AsyncUtils.unwrap(throwable));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            List<WriteRequest> unprocessed = batchWriteItemResponse.unprocessedItems().getOrDefault(TABLE_NAME, List.of());
+
+            if (unprocessed.isEmpty()) {
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            writeLimiter.onThrottle();
+            long delayMillis = Backoff.delayMillis(attempt);
+
+            if (attempt + 1 >= MAX_BATCH_ATTEMPTS || !deadline.allows(delayMillis)) {
+                failWrites(unprocessed, results, new ThrottledException("BatchWriteItem left items unprocessed", MIN_RETRY_AFTER_MILLIS));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+
+            return Backoff.delay(delayMillis)
+                    .thenCompose(ignored -> sendBatchWrite(unprocessed, attempt + 1, results, deadline));
+        }).thenCompose(future -> future);
+    }
+
+    public boolean hasStats() {
+        return statsTableName != null;
+    }
+
+    public CompletableFuture<BeanStats> getStats(Deadline deadline) {
+        GetItemRequest getItemRequest = GetItemRequest.builder()
+                .key(EntityUtils.getItemKey(BeanStats.SUMMARY_ID))
+                .tableName(statsTableName)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
                 .build();
 
-        CompletableFuture<DeleteItemResponse> deleteItemResponseFuture = dynamoDbClient.deleteItem(deleteItemRequest);
-        DeleteItemResponse deleteItemResponse = deleteItemResponseFuture.get();
+        return call("GetStats", deadline, () -> dynamoDbClient.getItem(getItemRequest), GetItemResponse::consumedCapacity)
+                .thenApply(getItemResponse -> EntityUtils.getStatsFromItem(getItemResponse.item()));
+    }
+
+    /**
+     * Adds the changes of up to MAX_STATS_RECORDS_PER_UPDATE stream records, by event id, to the stats summary.
+     * The summed changes and a marker item per record are written in one transaction, each marker conditioned on
+     * not existing yet. A record that is delivered again, e.g. when Lambda retries a batch, fails its marker's
+     * condition and is dropped before the rest is sent again, so every record is counted exactly once. Batches
+     * from other shards conflict on the summary item and are retried with backoff.
+     */
+    public CompletableFuture<Void> applyStats(Map<String, BeanStats> changes, Deadline deadline) {
+        return applyStats(new LinkedHashMap<>(changes), 0, deadline);
+    }
+
+    private CompletableFuture<Void> applyStats(Map<String, BeanStats> changes, int attempt, Deadline deadline) {
+        if (changes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        BeanStats total = new BeanStats();
+        List<String> eventIds = new ArrayList<>(changes.keySet());
+        List<TransactWriteItem> transactItems = new ArrayList<>();
+        long nowMillis = System.currentTimeMillis();
+
+        changes.values().forEach(total::add);
+
+        transactItems.add(TransactWriteItem.builder()
+                .update(Update.builder()
+                        .tableName(statsTableName)
+                        .key(EntityUtils.getItemKey(BeanStats.SUMMARY_ID))
+                        .updateExpression(EntityUtils.getStatsUpdateExpression(total))
+                        .expressionAttributeNames(EntityUtils.getStatsNames(total))
+                        .expressionAttributeValues(EntityUtils.getStatsValues(total, nowMillis))
+                        .build())
+                .build());
+
+        for (String eventId : eventIds) {
+            transactItems.add(TransactWriteItem.builder()
+                    .put(Put.builder()
+                            .tableName(statsTableName)
+                            .item(EntityUtils.getStatsMarker(eventId, (nowMillis + statsMarkerTtlMillis) / 1000))
+                            .conditionExpression(EntityUtils.STATS_MARKER_CONDITION)
+                            .expressionAttributeNames(EntityUtils.getStatsMarkerNames())
+                            .build())
+                    .build());
+        }
+
+        TransactWriteItemsRequest transactWriteItemsRequest = TransactWriteItemsRequest.builder()
+                .transactItems(transactItems)
+                .returnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                .build();
+
+        return call("ApplyStats", deadline, () -> dynamoDbClient.transactWriteItems(transactWriteItemsRequest),
+                transactWriteItemsResponse -> sumCapacity(transactWriteItemsResponse.consumedCapacity()))
+                .handle((transactWriteItemsResponse, throwable) -> {
+                    if (throwable == null) {
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+
+                    if (!(AsyncUtils.unwrap(throwable) instanceof TransactionCanceledException canceled) || !canceled.hasCancellationReasons()) {
+                        throw AsyncUtils.propagate(throwable);
+                    }
+
+                    List<CancellationReason> reasons = canceled.cancellationReasons();
+                    boolean conflict = "TransactionConflict".equals(reasons.get(0).code());
+
+                    for (int i = 1; i < reasons.size(); i++) {
+                        String code = reasons.get(i).code();
+
+                        if ("ConditionalCheckFailed".equals(code)) {
+                            changes.remove(eventIds.get(i - 1));
+                            Metrics.increment("Stats", "Stream", "DuplicateRecords");
+                        }
+
+                        conflict |= "TransactionConflict".equals(code);
+                    }
+
+                    if (changes.size() < eventIds.size()) {
+                        Logger.debug("Dropped {} stream records that were already applied", eventIds.size() - changes.size());
+                        return applyStats(changes, attempt, deadline);
+                    }
+
+                    long delayMillis = Backoff.delayMillis(attempt);
+
+                    if (!conflict || attempt + 1 >= MAX_THROTTLED_ATTEMPTS || !deadline.allows(delayMillis)) {
+                        throw AsyncUtils.propagate(throwable);
+                    }
+
+                    return Backoff.delay(delayMillis)
+                            .thenCompose(ignored -> applyStats(changes, attempt + 1, deadline));
+                }).thenCompose(future -> future);
+    }
 
-        if (deleteItemResponse.attributes() == null || deleteItemResponse.attributes().isEmpty()) {
-            throw new NoSuchElementException("Item not found with ID: " + id);
+    // Reads of every field send no projection at all
+    private static String getProjectionExpression(FieldSelection fields) {
+        return fields.isAll() ? null : fields.getProjectionExpression();
+    }
+
+    private static Map<String, String> getProjectionNames(FieldSelection fields) {
+        return fields.isAll() ? null : fields.getExpressionAttributeNames();
+    }
+
+    private Optional<Entity> getCachedEntity(String id) {
+        Optional<Entity> cachedEntity = entityCache.get(id);
+
+        Metrics.increment("Cache", "Entity", cachedEntity != null ? "CacheHit" : "CacheMiss");
+
+        return cachedEntity;
+    }
+
+    private <T> CompletableFuture<T> call(String operation, Deadline deadline, Supplier<CompletableFuture<T>> request,
+            Function<T, ConsumedCapacity> consumedCapacity) {
+        return call(operation, deadline, request, consumedCapacity, () -> false, 0);
+    }
+
+    // Sends a DynamoDB call once the rate limiter has capacity for it, retries it with backoff while DynamoDB throttles
+    // and the deadline allows, and records its latency and the capacity it consumed (requests are sent with
+    // ReturnConsumedCapacity.TOTAL). Running out of time fails the call with a ThrottledException. A call that is no
+    // longer needed, such as the losing request of a hedged read, is not retried, and its failure is not counted.
+    private <T> CompletableFuture<T> call(String operation, Deadline deadline, Supplier<CompletableFuture<T>> request,
+            Function<T, ConsumedCapacity> consumedCapacity, BooleanSupplier abandoned, int attempt) {
+        AdaptiveRateLimiter limiter = getLimiter(operation);
+        double estimatedCost = limiter == null ? 0 : limiter.estimate(operation);
+        long waitMillis = limiter == null ? 0 : limiter.tryAcquire(estimatedCost, "Scan".equals(operation));
+
+        if (waitMillis > 0) {
+            if (!deadline.allows(waitMillis)) {
+                Metrics.increment("Operation", operation, "LoadShed");
+                return CompletableFuture.failedFuture(new ThrottledException("No capacity for " + operation + " within the request deadline", waitMillis));
+            }
+
+            return Backoff.delay(waitMillis)
+                    .thenCompose(ignored -> call(operation, deadline, request, consumedCapacity, abandoned, attempt));
         }
+
+        long startNanos = System.nanoTime();
+
+        // The SDK's own timeouts are far longer than a request's deadline, which would otherwise hold its response
+        return request.get().orTimeout(deadline.remainingMillis(), TimeUnit.MILLISECONDS).handle((response, throwable) -> {
+            Metrics.recordMillisSince("Operation", operation, "DynamoDBLatency", startNanos);
+
+            if (throwable == null) {
+                // only bean reads are hedged, so only they set the hedge delay
+                if ("GetItem".equals(operation)) {
+                    hedgePolicy.record(System.nanoTime() - startNanos);
+                }
+
+                ConsumedCapacity capacity = consumedCapacity.apply(response);
+                double consumedCost = estimatedCost;
+
+                if (capacity != null && capacity.capacityUnits() != null) {
+                    consumedCost = capacity.capacityUnits();
+                    Metrics.add("Operation", operation, "ConsumedCapacity", Metrics.Unit.NONE, consumedCost);
+                }
+
+                if (limiter != null) {
+                    limiter.onSuccess(operation, estimatedCost, consumedCost);
+                }
+
+                return CompletableFuture.completedFuture(response);
+            }
+
+            Throwable cause = AsyncUtils.unwrap(throwable);
+
+            // a throttle still tells the limiter about the table's capacity
+            if (abandoned.getAsBoolean()) {
+                if (limiter != null && isThrottle(cause)) {
+                    limiter.onThrottle();
+                }
+
+                return CompletableFuture.<T>failedFuture(cause);
+            }
+
+            if (cause instanceof TimeoutException) {
+                Metrics.increment("Operation", operation, "DynamoDBTimeouts");
+                return CompletableFuture.<T>failedFuture(new ThrottledException(operation + " did not complete within the request deadline",
+                        MIN_RETRY_AFTER_MILLIS));
+            }
+
+            if (!isThrottle(cause)) {
+                Metrics.increment("Operation", operation, "DynamoDBErrors");
+                return CompletableFuture.<T>failedFuture(cause);
+            }
+
+            Metrics.increment("Operation", operation, "DynamoDBThrottles");
+
+            if (limiter != null) {
+                limiter.onThrottle();
+            }
+
+            long delayMillis = Backoff.delayMillis(attempt);
+
+            if (attempt + 1 >= MAX_THROTTLED_ATTEMPTS || !deadline.allows(delayMillis)) {
+                return CompletableFuture.<T>failedFuture(new ThrottledException(operation + " was throttled by DynamoDB",
+                        Math.max(delayMillis, MIN_RETRY_AFTER_MILLIS)));
+            }
+
+            return Backoff.delay(delayMillis)
+                    .thenCompose(ignored -> call(operation, deadline, request, consumedCapacity, abandoned, attempt + 1));
+        }).thenCompose(future -> future);
+    }
+
+    // A failed version or existence condition returns the old item, if any, which tells the two cases apart
+    private static RuntimeException getConditionFailure(String id, Long expectedVersion, Throwable throwable) {
+        if (!(AsyncUtils.unwrap(throwable) instanceof ConditionalCheckFailedException conditionFailure)) {
+            return AsyncUtils.propagate(throwable);
+        }
+
+        if (!conditionFailure.hasItem() || conditionFailure.item().isEmpty()) {
+            return new NoSuchElementException("Item not found with ID: " + id);
+        }
+
+        return new PreconditionFailedException("Version " + EntityUtils.getVersion(conditionFailure.item()) + " of " + id
+                + " does not match If-Match version " + expectedVersion);
+    }
+
+    // The limiters meter the beans table; the stats table is on demand, so its reads and transactions are not limited
+    private AdaptiveRateLimiter getLimiter(String operation) {
+        return switch (operation) {
+            case "GetItem", "BatchGetItem", "Query", "Scan" ->
+                readLimiter;
+            case "PutItem", "UpdateItem", "DeleteItem", "BatchWriteItem", "TransactWriteItems" ->
+                writeLimiter;
+            default ->
+                null;
+        };
+    }
+
+    private static boolean isThrottle(Throwable cause) {
+        return cause instanceof ProvisionedThroughputExceededException
+                || cause instanceof RequestLimitExceededException
+                || (cause instanceof SdkServiceException serviceException && serviceException.isThrottlingException())
+                || (cause instanceof TransactionCanceledException canceled && isThrottledTransaction(canceled));
+    }
+
+    // A transaction is canceled, rather than failed with a throttling error, when one of its items is throttled
+    private static boolean isThrottledTransaction(TransactionCanceledException canceled) {
+        if (!canceled.hasCancellationReasons()) {
+            return false;
+        }
+
+        for (CancellationReason reason : canceled.cancellationReasons()) {
+            if ("ThrottlingError".equals(reason.code()) || "ProvisionedThroughputExceeded".equals(reason.code())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static ConsumedCapacity sumCapacity(List<ConsumedCapacity> capacities) {
+        double capacityUnits = 0;
+
+        for (ConsumedCapacity capacity : capacities) {
+            if (capacity.capacityUnits() != null) {
+                capacityUnits += capacity.capacityUnits();
+            }
+        }
+
+        return ConsumedCapacity.builder()
+                .tableName(TABLE_NAME)
+                .capacityUnits(capacityUnits)
+                .build();
+    }
+
+    private void failKeys(List<Map<String, AttributeValue>> keys, Map<String, BatchItemResult> results, Throwable cause) {
+        for (Map<String, AttributeValue> key : keys) {
+            String id = key.get("id").s();
+            results.put(id, getFailure(id, cause));
+        }
+    }
+
+    private void failWrites(List<WriteRequest> writeRequests, Map<String, BatchItemResult> results, Throwable cause) {
+        for (WriteRequest writeRequest : writeRequests) {
+            Map<String, AttributeValue> key = writeRequest.putRequest() != null
+                    ? writeRequest.putRequest().item()
+                    : writeRequest.deleteRequest().key();
+            String id = key.get("id").s();
+            results.put(id, getFailure(id, cause));
+        }
+    }
+
+    private static BatchItemResult getFailure(String id, Throwable cause) {
+        if (cause instanceof ThrottledException) {
+            return BatchItemResult.error(id, 429, "Throughput exceeded, retry later");
+        }
+
+        return BatchItemResult.error(id, 500, "Item could not be processed");
     }
 }
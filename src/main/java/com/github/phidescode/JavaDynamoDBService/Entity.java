@@ -5,15 +5,23 @@ import java.util.UUID;
 public class Entity extends BaseEntity {
 
     private String id;
+    // Incremented by every write; 0 for items written before versions were introduced
+    private long version;
 
     public Entity(BaseEntity newEntity) {
         super(newEntity);
         this.id = UUID.randomUUID().toString();
+        this.version = 1;
     }
 
     public Entity(String id, BaseEntity newEntity) {
+        this(id, newEntity, 0);
+    }
+
+    public Entity(String id, BaseEntity newEntity, long version) {
         super(newEntity);
         this.id = id;
+        this.version = version;
     }
 
     public String getId() {
@@ -23,4 +31,12 @@ public class Entity extends BaseEntity {
     public void setId(String id) {
         this.id = id;
     }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,123 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * The minQuantity, maxQuantity and descriptionPrefix filters of GET /beans. Each filter renders as a condition that
+ * DynamoDBHandler uses either as the key condition of a Query on a secondary index or in a FilterExpression.
+ */
+public class EntityFilter {
+
+    public static final EntityFilter NONE = new EntityFilter(null, null, null);
+
+    private final Integer minQuantity;
+    private final Integer maxQuantity;
+    private final String descriptionPrefix;
+
+    private EntityFilter(Integer minQuantity, Integer maxQuantity, String descriptionPrefix) {
+        this.minQuantity = minQuantity;
+        this.maxQuantity = maxQuantity;
+        this.descriptionPrefix = descriptionPrefix;
+    }
+
+    public static EntityFilter parse(Map<String, String> queryParameters) throws ValidationException {
+        if (queryParameters == null) {
+            return NONE;
+        }
+
+        List<FieldError> fieldErrors = new ArrayList<>();
+        Integer minQuantity = parseQuantity(queryParameters, "minQuantity", fieldErrors);
+        Integer maxQuantity = parseQuantity(queryParameters, "maxQuantity", fieldErrors);
+        String descriptionPrefix = queryParameters.get("descriptionPrefix");
+
+        if (minQuantity != null && maxQuantity != null && minQuantity > maxQuantity) {
+            fieldErrors.add(new FieldError("maxQuantity", "must not be less than minQuantity"));
+        }
+
+        if (descriptionPrefix != null && descriptionPrefix.isEmpty()) {
+            fieldErrors.add(new FieldError("descriptionPrefix", "must not be empty"));
+        }
+
+        if (!fieldErrors.isEmpty()) {
+            throw new ValidationException(fieldErrors);
+        }
+
+        if (minQuantity == null && maxQuantity == null && descriptionPrefix == null) {
+            return NONE;
+        }
+
+        return new EntityFilter(minQuantity, maxQuantity, descriptionPrefix);
+    }
+
+    private static Integer parseQuantity(Map<String, String> queryParameters, String name, List<FieldError> fieldErrors) {
+        String value = queryParameters.get(name);
+
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            int quantity = Integer.parseInt(value);
+
+            if (quantity >= 0) {
+                return quantity;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+
+        fieldErrors.add(new FieldError(name, "must be a non-negative integer"));
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return this == NONE;
+    }
+
+    public boolean hasQuantityRange() {
+        return minQuantity != null || maxQuantity != null;
+    }
+
+    public boolean hasBothQuantityBounds() {
+        return minQuantity != null && maxQuantity != null;
+    }
+
+    public boolean hasDescriptionPrefix() {
+        return descriptionPrefix != null;
+    }
+
+    // Valid both as a sort key condition and in a FilterExpression
+    public String getQuantityCondition() {
+        if (hasBothQuantityBounds()) {
+            return "#quantity BETWEEN :minQuantity AND :maxQuantity";
+        }
+
+        return minQuantity != null ? "#quantity >= :minQuantity" : "#quantity <= :maxQuantity";
+    }
+
+    public String getDescriptionCondition() {
+        return "begins_with(#description, :descriptionPrefix)";
+    }
+
+    // Adds the names and values of the conditions in use; DynamoDB rejects requests that define unused ones
+    public void addQuantityAttributes(Map<String, String> names, Map<String, AttributeValue> values) {
+        names.put("#quantity", "quantity");
+
+        if (minQuantity != null) {
+            values.put(":minQuantity", AttributeValue.builder().n(minQuantity.toString()).build());
+        }
+
+        if (maxQuantity != null) {
+            values.put(":maxQuantity", AttributeValue.builder().n(maxQuantity.toString()).build());
+        }
+    }
+
+    public void addDescriptionAttributes(Map<String, String> names, Map<String, AttributeValue> values) {
+        names.put("#description", "description");
+        values.put(":descriptionPrefix", AttributeValue.builder().s(descriptionPrefix).build());
+    }
+}
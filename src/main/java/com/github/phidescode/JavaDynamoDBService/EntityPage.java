@@ -0,0 +1,23 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.List;
+
+public class EntityPage {
+
+    private final List<Entity> items;
+    private final String nextToken;
+
+    public EntityPage(List<Entity> items, String nextToken) {
+        this.items = items;
+        this.nextToken = nextToken;
+    }
+
+    public List<Entity> getItems() {
+        return items;
+    }
+
+    // null when the scan has reached the end of the table
+    public String getNextToken() {
+        return nextToken;
+    }
+}
@@ -0,0 +1,37 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+// Writes an Entity field by field instead of going through bean introspection, limited to the FieldSelection
+// passed as a writer attribute when the request asked for specific fields
+public class EntitySerializer extends StdSerializer<Entity> {
+
+    private static final long serialVersionUID = 1L;
+
+    public EntitySerializer() {
+        super(Entity.class);
+    }
+
+    @Override
+    public void serialize(Entity entity, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        FieldSelection fields = (FieldSelection) provider.getAttribute(FieldSelection.class);
+
+        generator.writeStartObject();
+        generator.writeStringField("id", entity.getId());
+        generator.writeNumberField("version", entity.getVersion());
+
+        if (fields == null || fields.includesDescription()) {
+            generator.writeStringField("description", entity.getDescription());
+        }
+
+        if (fields == null || fields.includesQuantity()) {
+            generator.writeNumberField("quantity", entity.getQuantity());
+        }
+
+        generator.writeEndObject();
+    }
+}
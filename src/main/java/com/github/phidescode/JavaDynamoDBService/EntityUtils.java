@@ -1,69 +1,478 @@
 package com.github.phidescode.JavaDynamoDBService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
-import software.amazon.awssdk.services.dynamodb.model.AttributeAction;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
-import software.amazon.awssdk.services.dynamodb.model.AttributeValueUpdate;
 
 public class EntityUtils {
 
     private final static ObjectMapper objectMapper = new ObjectMapper();
 
-    public static BaseEntity validateRequestBody(String requestBody) throws JsonMappingException, JsonProcessingException {
-        if (requestBody == null || requestBody.isEmpty()) {
-            throw new ClassCastException("Invalid data format");
+    public static final int MAX_REQUEST_BODY_LENGTH = 16 * 1024;
+
+    // Every bean carries indexShard, the partition key of the secondary indexes used for filtered listings. Beans
+    // are spread over INDEX_SHARDS partitions by id, so no single index partition takes every write and every
+    // query; a filtered listing queries all of them. Changing it moves beans between shards, so it is fixed.
+    public static final int INDEX_SHARDS = 4;
+
+    // description is the sort key of an index, and index key values must be at most 1024 bytes. They cannot be
+    // empty either, so an empty description is stored by leaving the attribute out, which keeps the bean out of
+    // the description index, where no prefix would find it anyway.
+    public static final int MAX_DESCRIPTION_BYTES = 1024;
+
+    public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
+    // Imported ids are partition key values, which DynamoDB limits to 2048 bytes
+    public static final int MAX_ID_LENGTH = 255;
+
+    public static BaseEntity validateRequestBody(String requestBody) throws ValidationException {
+        return validateRequestBody(RequestBody.json(requestBody));
+    }
+
+    public static BaseEntity validateRequestBody(RequestBody requestBody) throws ValidationException {
+        if (requestBody.isEmpty()) {
+            throw new ValidationException("$", "request body is required");
+        }
+
+        if (requestBody.length() > MAX_REQUEST_BODY_LENGTH) {
+            throw new ValidationException("$", "request body exceeds " + MAX_REQUEST_BODY_LENGTH + " characters");
+        }
+
+        try (JsonParser parser = requestBody.createParser()) {
+            parser.nextToken();
+            BaseEntity newEntity = readBaseEntity(parser);
+
+            if (parser.nextToken() != null) {
+                throw new ValidationException("$", "unexpected content after the JSON object");
+            }
+
+            return newEntity;
+        } catch (JsonProcessingException e) {
+            throw new ValidationException("$", "malformed request body: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Reads the {"delta": n} body of PATCH /beans/{id}/quantity
+    public static int validateQuantityDelta(RequestBody requestBody) throws ValidationException {
+        if (requestBody.isEmpty()) {
+            throw new ValidationException("$", "request body is required");
+        }
+
+        if (requestBody.length() > MAX_REQUEST_BODY_LENGTH) {
+            throw new ValidationException("$", "request body exceeds " + MAX_REQUEST_BODY_LENGTH + " characters");
         }
 
-        JsonNode jsonNode = objectMapper.readTree(requestBody);
+        try (JsonParser parser = requestBody.createParser()) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ValidationException("$", "must be a JSON object");
+            }
+
+            List<FieldError> fieldErrors = new ArrayList<>();
+            Integer delta = null;
+            boolean deltaSeen = false;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String fieldName = parser.currentName();
+                JsonToken valueToken = parser.nextToken();
+
+                if (!"delta".equals(fieldName)) {
+                    fieldErrors.add(new FieldError(fieldName, "is not a known field"));
+                } else if (deltaSeen) {
+                    fieldErrors.add(new FieldError(fieldName, "is duplicated"));
+                } else if (valueToken == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == JsonParser.NumberType.INT) {
+                    delta = parser.getIntValue();
+
+                    if (delta == 0) {
+                        fieldErrors.add(new FieldError(fieldName, "must not be zero"));
+                    }
+                } else {
+                    fieldErrors.add(new FieldError(fieldName, "must be an integer"));
+                }
+
+                deltaSeen |= "delta".equals(fieldName);
+                parser.skipChildren();
+            }
 
-        if (!jsonNode.has("description") || !jsonNode.get("description").isTextual() || !jsonNode.has("quantity") || !jsonNode.get("quantity").isInt()) {
-            throw new ClassCastException("Invalid data format");
+            if (!deltaSeen) {
+                fieldErrors.add(new FieldError("delta", "is required"));
+            }
+
+            if (parser.nextToken() != null) {
+                fieldErrors.add(new FieldError("$", "unexpected content after the JSON object"));
+            }
+
+            if (!fieldErrors.isEmpty()) {
+                throw new ValidationException(fieldErrors);
+            }
+
+            return delta;
+        } catch (JsonProcessingException e) {
+            throw new ValidationException("$", "malformed request body: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+    }
+
+    /**
+     * Validates and builds a BaseEntity in a single pass over the tokens of one JSON object, without an
+     * intermediate tree. The parser must be positioned on the object's START_OBJECT token and is left on
+     * its END_OBJECT token, so callers can keep streaming (e.g. through an array of entities). All field
+     * errors in the object are collected into one ValidationException.
+     */
+    public static BaseEntity readBaseEntity(JsonParser parser) throws IOException, ValidationException {
+        return readFields(parser, null);
+    }
+
+    /**
+     * Reads one line of a bulk import: the fields of a bean plus an optional id and version, as written by an
+     * export. Records without an id get the one passed in. The version is checked but not written: the import
+     * moves the stored bean's version on instead.
+     */
+    public static Entity readImportRecord(JsonParser parser, String defaultId) throws IOException, ValidationException {
+        Entity record = new Entity(null, new BaseEntity(), 1);
+        BaseEntity base = readFields(parser, record);
 
-        BaseEntity newEntity = objectMapper.treeToValue(jsonNode, BaseEntity.class);
+        record.setDescription(base.getDescription());
+        record.setQuantity(base.getQuantity());
 
-        if (newEntity.getQuantity() < 0) {
-            throw new ClassCastException("Invalid data format");
+        if (record.getId() == null) {
+            record.setId(defaultId);
         }
 
-        return newEntity;
+        return record;
     }
 
+    // Only an identity to fill in lets id and version through as known fields
+    private static BaseEntity readFields(JsonParser parser, Entity identity) throws IOException, ValidationException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            throw new ValidationException("$", "must be a JSON object");
+        }
+
+        List<FieldError> fieldErrors = new ArrayList<>();
+        String description = null;
+        Integer quantity = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            JsonToken valueToken = parser.nextToken();
+
+            switch (fieldName) {
+                case "description" -> {
+                    if (description != null) {
+                        fieldErrors.add(new FieldError(fieldName, "is duplicated"));
+                    } else if (valueToken == JsonToken.VALUE_STRING) {
+                        description = parser.getText();
+
+                        if (description.length() > MAX_DESCRIPTION_BYTES / 3
+                                && description.getBytes(StandardCharsets.UTF_8).length > MAX_DESCRIPTION_BYTES) {
+                            fieldErrors.add(new FieldError(fieldName, "must be at most " + MAX_DESCRIPTION_BYTES + " bytes"));
+                        }
+                    } else {
+                        fieldErrors.add(new FieldError(fieldName, "must be a string"));
+                    }
+                }
+                case "quantity" -> {
+                    if (quantity != null) {
+                        fieldErrors.add(new FieldError(fieldName, "is duplicated"));
+                    } else if (valueToken == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() == JsonParser.NumberType.INT) {
+                        quantity = parser.getIntValue();
+
+                        if (quantity < 0) {
+                            fieldErrors.add(new FieldError(fieldName, "must be a non-negative integer"));
+                        }
+                    } else {
+                        fieldErrors.add(new FieldError(fieldName, "must be an integer"));
+                    }
+                }
+                case "id" -> {
+                    if (identity == null) {
+                        fieldErrors.add(new FieldError(fieldName, "is not a known field"));
+                    } else if (identity.getId() != null) {
+                        fieldErrors.add(new FieldError(fieldName, "is duplicated"));
+                    } else if (valueToken == JsonToken.VALUE_STRING && !parser.getText().isEmpty()
+                            && parser.getTextLength() <= MAX_ID_LENGTH) {
+                        identity.setId(parser.getText());
+                    } else {
+                        fieldErrors.add(new FieldError(fieldName, "must be a string of 1 to " + MAX_ID_LENGTH + " characters"));
+                    }
+                }
+                case "version" -> {
+                    if (identity == null) {
+                        fieldErrors.add(new FieldError(fieldName, "is not a known field"));
+                    } else if (valueToken == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER
+                            && parser.getLongValue() >= 0) {
+                        identity.setVersion(Math.max(1, parser.getLongValue()));
+                    } else {
+                        fieldErrors.add(new FieldError(fieldName, "must be a non-negative integer"));
+                    }
+                }
+                default ->
+                    fieldErrors.add(new FieldError(fieldName, "is not a known field"));
+            }
+
+            parser.skipChildren();
+        }
+
+        if (description == null && fieldErrors.stream().noneMatch(fieldError -> "description".equals(fieldError.getField()))) {
+            fieldErrors.add(new FieldError("description", "is required"));
+        }
+
+        if (quantity == null && fieldErrors.stream().noneMatch(fieldError -> "quantity".equals(fieldError.getField()))) {
+            fieldErrors.add(new FieldError("quantity", "is required"));
+        }
+
+        if (!fieldErrors.isEmpty()) {
+            throw new ValidationException(fieldErrors);
+        }
+
+        return new BaseEntity(description, quantity);
+    }
+
+    public static HashMap<String, AttributeValue> getItemKey(String id) {
+        HashMap<String, AttributeValue> itemKey = new HashMap<>();
+
+        itemKey.put("id", AttributeValue.builder()
+                .s(id)
+                .build());
+
+        return itemKey;
+    }
+
+    // Attributes left out by a projection are left null or 0; the FieldSelection keeps them out of the response
     public static Entity getEntityFromDBItem(Map<String, AttributeValue> item) {
         String itemId = item.get("id").s();
-        String itemDescription = item.get("description").s();
-        int itemQuantity = Integer.parseInt(item.get("quantity").n());
+        AttributeValue description = item.get("description");
+        AttributeValue quantity = item.get("quantity");
+        String itemDescription = description == null ? "" : description.s();
+        int itemQuantity = quantity == null ? 0 : Integer.parseInt(quantity.n());
+
+        return new Entity(itemId, new BaseEntity(itemDescription, itemQuantity), getVersion(item));
+    }
+
+    public static long getVersion(Map<String, AttributeValue> item) {
+        AttributeValue version = item.get("version");
+
+        return version == null ? 0 : Long.parseLong(version.n());
+    }
+
+    // Also sets indexShard, so updating an item written before the indexes existed adds it to them
+    public static String getUpdateExpression(BaseEntity entity) {
+        if (entity.getDescription().isEmpty()) {
+            return "SET #quantity = :quantity, #indexShard = :indexShard REMOVE #description ADD #version :one";
+        }
 
-        return new Entity(itemId, new BaseEntity(itemDescription, itemQuantity));
+        return "SET #description = :description, #quantity = :quantity, #indexShard = :indexShard ADD #version :one";
     }
 
-    public static HashMap<String, AttributeValueUpdate> getUpdatedValues(BaseEntity entity) {
-        HashMap<String, AttributeValueUpdate> updatedValues = new HashMap<>();
+    public static final String UPDATE_CONDITION = "attribute_exists(#id)";
 
-        updatedValues.put("description", AttributeValueUpdate.builder()
-                .value(AttributeValue.builder()
-                        .s(entity.getDescription())
-                        .build())
-                .action(AttributeAction.PUT)
+    // Makes a write conditional on the version the caller last read; null (no If-Match, or If-Match: *) only
+    // requires the item to exist
+    public static String getVersionCondition(Long expectedVersion) {
+        if (expectedVersion == null) {
+            return UPDATE_CONDITION;
+        }
+
+        return UPDATE_CONDITION + (expectedVersion == 0 ? " AND attribute_not_exists(#version)" : " AND #version = :expectedVersion");
+    }
+
+    public static HashMap<String, String> getVersionNames() {
+        HashMap<String, String> versionNames = new HashMap<>();
+
+        versionNames.put("#id", "id");
+        versionNames.put("#version", "version");
+
+        return versionNames;
+    }
+
+    public static void addExpectedVersion(Map<String, AttributeValue> values, Long expectedVersion) {
+        if (expectedVersion != null && expectedVersion != 0) {
+            values.put(":expectedVersion", AttributeValue.builder()
+                    .n(expectedVersion + "")
+                    .build());
+        }
+    }
+
+    // ETags start with the version, so If-Match carries the version a write is conditioned on. The same version
+    // with fewer fields, in another format or in another content coding is a different representation and so gets
+    // a different strong ETag, such as "3-quantity-cbor-gzip"; every field as JSON without a content coding is just "3".
+    public static String getETag(Entity entity, FieldSelection fields, WireFormat format, String contentEncoding) {
+        StringBuilder eTag = new StringBuilder().append('"').append(entity.getVersion());
+
+        if (!fields.isAll()) {
+            eTag.append('-').append(fields.getName());
+        }
+
+        if (format != WireFormat.JSON) {
+            eTag.append('-').append(format.name().toLowerCase(Locale.ROOT));
+        }
+
+        if (contentEncoding != null) {
+            eTag.append('-').append(contentEncoding);
+        }
+
+        return eTag.append('"').toString();
+    }
+
+    // Responses that are not a single bean, such as listing pages, are tagged with a hash of the body as sent
+    public static String getContentETag(String body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body.getBytes(StandardCharsets.UTF_8));
+            return "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest).substring(0, 22) + "\"";
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // If-None-Match holds * or a list of ETags; it uses the weak comparison, so W/ prefixes are ignored
+    public static boolean matchesIfNoneMatch(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            String candidateTag = candidate.trim();
+
+            if ("*".equals(candidateTag) || stripWeakPrefix(candidateTag).equals(stripWeakPrefix(eTag))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static String stripWeakPrefix(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+
+    public static Long parseIfMatch(String ifMatch) throws ValidationException {
+        if (ifMatch == null || "*".equals(ifMatch.trim())) {
+            return null;
+        }
+
+        String eTag = ifMatch.trim();
+
+        try {
+            if (eTag.length() > 2 && eTag.startsWith("\"") && eTag.endsWith("\"")) {
+                // any representation of a version stands for that version
+                String value = eTag.substring(1, eTag.length() - 1);
+                int suffix = value.indexOf('-');
+                long version = Long.parseLong(suffix == -1 ? value : value.substring(0, suffix));
+
+                if (version >= 0) {
+                    return version;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+
+        throw new ValidationException("If-Match", "must be * or a single ETag returned by this API");
+    }
+
+    public static HashMap<String, String> getUpdatedNames() {
+        HashMap<String, String> updatedNames = new HashMap<>();
+
+        updatedNames.put("#id", "id");
+        updatedNames.put("#description", "description");
+        updatedNames.put("#quantity", "quantity");
+        updatedNames.put("#indexShard", "indexShard");
+        updatedNames.put("#version", "version");
+
+        return updatedNames;
+    }
+
+    public static HashMap<String, AttributeValue> getUpdatedValues(String id, BaseEntity entity) {
+        HashMap<String, AttributeValue> updatedValues = new HashMap<>();
+
+        if (!entity.getDescription().isEmpty()) {
+            updatedValues.put(":description", AttributeValue.builder()
+                    .s(entity.getDescription())
+                    .build());
+        }
+
+        updatedValues.put(":quantity", AttributeValue.builder()
+                .n(entity.getQuantity() + "")
                 .build());
 
-        updatedValues.put("quantity", AttributeValueUpdate.builder()
-                .value(AttributeValue.builder()
-                        .n(entity.getQuantity() + "")
-                        .build())
-                .action(AttributeAction.PUT)
+        updatedValues.put(":indexShard", getIndexShard(id));
+
+        updatedValues.put(":one", AttributeValue.builder()
+                .n("1")
                 .build());
 
         return updatedValues;
     }
 
+    // ADD applies the delta atomically; the condition keeps the result a non-negative int, as validateRequestBody requires.
+    // The version moves on by one per adjustment, including each one merged into a coalesced write.
+    public static final String QUANTITY_DELTA_EXPRESSION = "ADD #quantity :delta, #version :adjustments SET #indexShard = :indexShard";
+
+    public static String getQuantityDeltaCondition(int delta) {
+        return UPDATE_CONDITION + (delta < 0 ? " AND #quantity >= :bound" : " AND #quantity <= :bound");
+    }
+
+    public static HashMap<String, String> getQuantityDeltaNames() {
+        HashMap<String, String> deltaNames = new HashMap<>();
+
+        deltaNames.put("#id", "id");
+        deltaNames.put("#quantity", "quantity");
+        deltaNames.put("#indexShard", "indexShard");
+        deltaNames.put("#version", "version");
+
+        return deltaNames;
+    }
+
+    public static HashMap<String, AttributeValue> getQuantityDeltaValues(String id, int delta, int adjustments) {
+        HashMap<String, AttributeValue> deltaValues = new HashMap<>();
+
+        deltaValues.put(":delta", AttributeValue.builder()
+                .n(delta + "")
+                .build());
+
+        deltaValues.put(":indexShard", getIndexShard(id));
+
+        deltaValues.put(":adjustments", AttributeValue.builder()
+                .n(adjustments + "")
+                .build());
+
+        long bound = delta < 0 ? -(long) delta : Integer.MAX_VALUE - (long) delta;
+
+        deltaValues.put(":bound", AttributeValue.builder()
+                .n(bound + "")
+                .build());
+
+        return deltaValues;
+    }
+
+    // String.hashCode is specified, so a bean's shard is the same in every container and release
+    public static AttributeValue getIndexShard(String id) {
+        return AttributeValue.builder()
+                .n(String.valueOf(Math.floorMod(id.hashCode(), INDEX_SHARDS)))
+                .build();
+    }
+
     public static HashMap<String, AttributeValue> getItemValues(Entity entity) {
         HashMap<String, AttributeValue> itemValues = new HashMap<>();
 
@@ -71,14 +480,255 @@ public class EntityUtils {
                 .s(entity.getId())
                 .build());
 
-        itemValues.put("description", AttributeValue.builder()
-                .s(entity.getDescription())
-                .build());
+        if (!entity.getDescription().isEmpty()) {
+            itemValues.put("description", AttributeValue.builder()
+                    .s(entity.getDescription())
+                    .build());
+        }
 
         itemValues.put("quantity", AttributeValue.builder()
                 .n(entity.getQuantity() + "")
                 .build());
 
+        itemValues.put("indexShard", getIndexShard(entity.getId()));
+
+        itemValues.put("version", AttributeValue.builder()
+                .n(entity.getVersion() + "")
+                .build());
+
         return itemValues;
     }
+
+    public static String validateIdempotencyKey(String idempotencyKey) throws ValidationException {
+        if (idempotencyKey != null && (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH)) {
+            throw new ValidationException("Idempotency-Key", "must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+        }
+
+        return idempotencyKey;
+    }
+
+    // An expired record may still be present until DynamoDB's TTL process deletes it, so it is overwritten
+    public static final String IDEMPOTENCY_CONDITION = "attribute_not_exists(#idempotencyKey) OR #expiresAt < :now";
+
+    // The record holds the created bean itself: it is both the response to replay and the request to compare with
+    public static HashMap<String, AttributeValue> getIdempotencyRecord(String idempotencyKey, Entity entity, long expiresAtSeconds) {
+        HashMap<String, AttributeValue> record = new HashMap<>();
+
+        record.put("idempotencyKey", AttributeValue.builder()
+                .s(idempotencyKey)
+                .build());
+
+        record.put("entityId", AttributeValue.builder()
+                .s(entity.getId())
+                .build());
+
+        record.put("description", AttributeValue.builder()
+                .s(entity.getDescription())
+                .build());
+
+        record.put("quantity", AttributeValue.builder()
+                .n(entity.getQuantity() + "")
+                .build());
+
+        record.put("expiresAt", AttributeValue.builder()
+                .n(expiresAtSeconds + "")
+                .build());
+
+        return record;
+    }
+
+    public static HashMap<String, String> getIdempotencyNames() {
+        HashMap<String, String> idempotencyNames = new HashMap<>();
+
+        idempotencyNames.put("#idempotencyKey", "idempotencyKey");
+        idempotencyNames.put("#expiresAt", "expiresAt");
+
+        return idempotencyNames;
+    }
+
+    public static HashMap<String, AttributeValue> getIdempotencyValues(long nowSeconds) {
+        HashMap<String, AttributeValue> idempotencyValues = new HashMap<>();
+
+        idempotencyValues.put(":now", AttributeValue.builder()
+                .n(nowSeconds + "")
+                .build());
+
+        return idempotencyValues;
+    }
+
+    public static Entity getEntityFromIdempotencyRecord(Map<String, AttributeValue> record) {
+        return new Entity(record.get("entityId").s(),
+                new BaseEntity(record.get("description").s(), Integer.parseInt(record.get("quantity").n())), 1);
+    }
+
+    // A stream record is applied at most once: its marker can only be written while it does not exist yet
+    public static final String STATS_MARKER_CONDITION = "attribute_not_exists(#id)";
+
+    // Adds a batch's changes to the stats summary; buckets the batch leaves unchanged are left out
+    public static String getStatsUpdateExpression(BeanStats changes) {
+        StringBuilder updateExpression = new StringBuilder("SET #updatedAt = :updatedAt ADD #count :count, #totalQuantity :totalQuantity");
+
+        for (int bucket = 0; bucket < BeanStats.BUCKET_COUNT; bucket++) {
+            if (changes.getBucketCount(bucket) != 0) {
+                updateExpression.append(", #bucket").append(bucket).append(" :bucket").append(bucket);
+            }
+        }
+
+        return updateExpression.toString();
+    }
+
+    public static HashMap<String, String> getStatsNames(BeanStats changes) {
+        HashMap<String, String> statsNames = new HashMap<>();
+
+        statsNames.put("#updatedAt", "updatedAt");
+        statsNames.put("#count", "count");
+        statsNames.put("#totalQuantity", "totalQuantity");
+
+        for (int bucket = 0; bucket < BeanStats.BUCKET_COUNT; bucket++) {
+            if (changes.getBucketCount(bucket) != 0) {
+                statsNames.put("#bucket" + bucket, "bucket" + bucket);
+            }
+        }
+
+        return statsNames;
+    }
+
+    public static HashMap<String, AttributeValue> getStatsValues(BeanStats changes, long nowMillis) {
+        HashMap<String, AttributeValue> statsValues = new HashMap<>();
+
+        statsValues.put(":updatedAt", AttributeValue.builder()
+                .n(nowMillis + "")
+                .build());
+
+        statsValues.put(":count", AttributeValue.builder()
+                .n(changes.getCount() + "")
+                .build());
+
+        statsValues.put(":totalQuantity", AttributeValue.builder()
+                .n(changes.getTotalQuantity() + "")
+                .build());
+
+        for (int bucket = 0; bucket < BeanStats.BUCKET_COUNT; bucket++) {
+            if (changes.getBucketCount(bucket) != 0) {
+                statsValues.put(":bucket" + bucket, AttributeValue.builder()
+                        .n(changes.getBucketCount(bucket) + "")
+                        .build());
+            }
+        }
+
+        return statsValues;
+    }
+
+    public static HashMap<String, AttributeValue> getStatsMarker(String eventId, long expiresAtSeconds) {
+        HashMap<String, AttributeValue> marker = getItemKey("event#" + eventId);
+
+        marker.put("expiresAt", AttributeValue.builder()
+                .n(expiresAtSeconds + "")
+                .build());
+
+        return marker;
+    }
+
+    public static HashMap<String, String> getStatsMarkerNames() {
+        HashMap<String, String> markerNames = new HashMap<>();
+
+        markerNames.put("#id", "id");
+
+        return markerNames;
+    }
+
+    // A missing summary item means no stream records have been applied yet
+    public static BeanStats getStatsFromItem(Map<String, AttributeValue> item) {
+        BeanStats stats = new BeanStats();
+
+        if (item == null || item.isEmpty()) {
+            return stats;
+        }
+
+        stats.setCount(getLong(item, "count"));
+        stats.setTotalQuantity(getLong(item, "totalQuantity"));
+
+        for (int bucket = 0; bucket < BeanStats.BUCKET_COUNT; bucket++) {
+            stats.setBucketCount(bucket, getLong(item, "bucket" + bucket));
+        }
+
+        AttributeValue updatedAt = item.get("updatedAt");
+        stats.setUpdatedAt(updatedAt == null ? null : Long.parseLong(updatedAt.n()));
+
+        return stats;
+    }
+
+    private static long getLong(Map<String, AttributeValue> item, String name) {
+        AttributeValue value = item.get(name);
+
+        return value == null ? 0 : Long.parseLong(value.n());
+    }
+
+    // Page tokens are the scan's or query's LastEvaluatedKey as {"attr": {"S"|"N"|"M": value}} JSON, base64url
+    // encoded; export tokens nest the LastEvaluatedKey of each scan segment as an M value
+    public static String encodePageToken(Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+
+        byte[] tokenBytes = writeTokenValues(lastEvaluatedKey).toString().getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+    }
+
+    private static ObjectNode writeTokenValues(Map<String, AttributeValue> values) {
+        ObjectNode valuesNode = objectMapper.createObjectNode();
+
+        for (Map.Entry<String, AttributeValue> valueEntry : values.entrySet()) {
+            AttributeValue value = valueEntry.getValue();
+            ObjectNode valueNode = valuesNode.putObject(valueEntry.getKey());
+
+            if (value.s() != null) {
+                valueNode.put("S", value.s());
+            } else if (value.n() != null) {
+                valueNode.put("N", value.n());
+            } else {
+                valueNode.set("M", writeTokenValues(value.m()));
+            }
+        }
+
+        return valuesNode;
+    }
+
+    public static Map<String, AttributeValue> decodePageToken(String nextToken) throws IllegalArgumentException {
+        if (nextToken == null || nextToken.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return readTokenValues(objectMapper.readTree(Base64.getUrlDecoder().decode(nextToken)));
+        } catch (IOException | RuntimeException e) {
+            throw new IllegalArgumentException("Invalid page token", e);
+        }
+    }
+
+    private static Map<String, AttributeValue> readTokenValues(JsonNode valuesNode) throws IllegalArgumentException {
+        Map<String, AttributeValue> values = new HashMap<>();
+
+        Iterator<Map.Entry<String, JsonNode>> fields = valuesNode.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            JsonNode valueNode = field.getValue();
+
+            if (valueNode.hasNonNull("S")) {
+                values.put(field.getKey(), AttributeValue.builder().s(valueNode.get("S").asText()).build());
+            } else if (valueNode.hasNonNull("N")) {
+                values.put(field.getKey(), AttributeValue.builder().n(valueNode.get("N").asText()).build());
+            } else if (valueNode.has("M") && valueNode.get("M").isObject()) {
+                values.put(field.getKey(), AttributeValue.builder().m(readTokenValues(valueNode.get("M"))).build());
+            } else {
+                throw new IllegalArgumentException("Invalid page token");
+            }
+        }
+
+        if (values.isEmpty()) {
+            throw new IllegalArgumentException("Invalid page token");
+        }
+
+        return values;
+    }
 }
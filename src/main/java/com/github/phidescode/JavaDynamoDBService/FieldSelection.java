@@ -0,0 +1,107 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The entity fields a caller asked for with ?fields=, e.g. fields=id,quantity. The id and version are always included. A
+ * selection becomes the ProjectionExpression of the DynamoDB read and tells EntitySerializer what to write.
+ * There are only four possible selections, so they are built once and shared.
+ */
+public class FieldSelection {
+
+    private static final int DESCRIPTION = 1;
+    private static final int QUANTITY = 2;
+    private static final FieldSelection[] selections = new FieldSelection[4];
+
+    public static final FieldSelection ALL;
+    public static final FieldSelection ID_AND_QUANTITY;
+
+    static {
+        for (int fields = 0; fields < selections.length; fields++) {
+            selections[fields] = new FieldSelection(fields);
+        }
+        ALL = selections[DESCRIPTION | QUANTITY];
+        ID_AND_QUANTITY = selections[QUANTITY];
+    }
+
+    private final int fields;
+    private final String name;
+    private final String projectionExpression;
+    private final Map<String, String> expressionAttributeNames = new HashMap<>();
+
+    private FieldSelection(int fields) {
+        this.fields = fields;
+
+        StringBuilder projection = new StringBuilder("#id, #version");
+        expressionAttributeNames.put("#id", "id");
+        expressionAttributeNames.put("#version", "version");
+
+        if (includesDescription()) {
+            projection.append(", #description");
+            expressionAttributeNames.put("#description", "description");
+        }
+
+        if (includesQuantity()) {
+            projection.append(", #quantity");
+            expressionAttributeNames.put("#quantity", "quantity");
+        }
+
+        projectionExpression = projection.toString();
+        name = switch (fields) {
+            case DESCRIPTION -> "description";
+            case QUANTITY -> "quantity";
+            case 0 -> "id";
+            default -> "all";
+        };
+    }
+
+    // Returns ALL when no fields parameter was given
+    public static FieldSelection parse(String fieldsParameter) throws ValidationException {
+        if (fieldsParameter == null) {
+            return ALL;
+        }
+
+        int fields = 0;
+
+        for (String field : fieldsParameter.split(",")) {
+            switch (field.trim()) {
+                case "id" -> {
+                }
+                case "description" ->
+                    fields |= DESCRIPTION;
+                case "quantity" ->
+                    fields |= QUANTITY;
+                default ->
+                    throw new ValidationException("fields", "'" + field.trim() + "' is not a known field");
+            }
+        }
+
+        return selections[fields];
+    }
+
+    public boolean isAll() {
+        return this == ALL;
+    }
+
+    public boolean includesDescription() {
+        return (fields & DESCRIPTION) != 0;
+    }
+
+    public boolean includesQuantity() {
+        return (fields & QUANTITY) != 0;
+    }
+
+    // A short name for the selection, used to tell the ETags of its responses apart
+    public String getName() {
+        return name;
+    }
+
+    public String getProjectionExpression() {
+        return projectionExpression;
+    }
+
+    public Map<String, String> getExpressionAttributeNames() {
+        return expressionAttributeNames;
+    }
+}
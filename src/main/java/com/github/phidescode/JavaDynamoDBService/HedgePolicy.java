@@ -0,0 +1,76 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.Arrays;
+
+/**
+ * Decides when a point read is hedged: a GetItem that has not answered within a percentile (by default the p95)
+ * of recent GetItem latencies gets a second, identical request, and whichever answers first is used. The
+ * threshold follows the latencies of the last WINDOW_SIZE calls, so it adapts as DynamoDB speeds up or slows
+ * down; until MIN_SAMPLES calls have been seen nothing is hedged.
+ *
+ * Each read earns maxRate of a hedge credit and each hedge spends a whole one, so at most that share of reads is
+ * hedged (plus a small burst) and the extra read capacity stays bounded even when every call is slow. A rate of
+ * 0 or less disables hedging.
+ */
+public class HedgePolicy {
+
+    private static final int WINDOW_SIZE = 512;
+    private static final int MIN_SAMPLES = 100;
+    private static final int RECOMPUTE_INTERVAL = 32;
+    private static final double MAX_CREDIT = 10;
+
+    private final double percentile;
+    private final double maxRate;
+    private final long minDelayMillis;
+
+    private final long[] latenciesMicros = new long[WINDOW_SIZE];
+    private long samples;
+    private long delayMillis = -1;
+    private double credit;
+
+    public HedgePolicy(double percentile, double maxRate, long minDelayMillis) {
+        this.percentile = Math.min(100, Math.max(0, percentile));
+        this.maxRate = maxRate;
+        this.minDelayMillis = minDelayMillis;
+    }
+
+    public boolean isEnabled() {
+        return maxRate > 0;
+    }
+
+    public synchronized void record(long latencyNanos) {
+        latenciesMicros[(int) (samples++ % WINDOW_SIZE)] = latencyNanos / 1000;
+
+        // sorting the window on every call would cost more than the reads it speeds up
+        if (samples >= MIN_SAMPLES && samples % RECOMPUTE_INTERVAL == 0) {
+            long[] window = Arrays.copyOf(latenciesMicros, (int) Math.min(samples, WINDOW_SIZE));
+            Arrays.sort(window);
+
+            int index = (int) Math.ceil(percentile / 100 * window.length) - 1;
+            delayMillis = Math.max(minDelayMillis, window[Math.max(0, index)] / 1000);
+        }
+    }
+
+    // Called once per read: earns the read's share of hedge credit and returns how long to wait before hedging it,
+    // or -1 when it is not to be hedged
+    public synchronized long nextDelayMillis() {
+        if (!isEnabled()) {
+            return -1;
+        }
+
+        credit = Math.min(MAX_CREDIT, credit + maxRate);
+
+        return delayMillis;
+    }
+
+    // Spends a hedge credit if one is available
+    public synchronized boolean tryAcquire() {
+        if (credit < 1) {
+            return false;
+        }
+
+        credit--;
+        return true;
+    }
+}
+
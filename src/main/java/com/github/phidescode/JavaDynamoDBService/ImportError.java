@@ -0,0 +1,31 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.List;
+
+// A line of a bulk import that was skipped because it is not a valid bean
+public class ImportError {
+
+    private long line;
+    private List<FieldError> errors;
+
+    public ImportError(long line, List<FieldError> errors) {
+        this.line = line;
+        this.errors = errors;
+    }
+
+    public long getLine() {
+        return line;
+    }
+
+    public void setLine(long line) {
+        this.line = line;
+    }
+
+    public List<FieldError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<FieldError> errors) {
+        this.errors = errors;
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The outcome of one bulk import run. checkpoint is the number of input lines that are done with, either written
+ * or reported as invalid; a run that is not complete resumes by skipping that many lines.
+ */
+public class ImportResult {
+
+    private static final int MAX_REPORTED_ERRORS = 100;
+
+    private long imported;
+    private long invalid;
+    private long checkpoint;
+    private boolean complete;
+    private String failure;
+    private final List<ImportError> errors = new ArrayList<>();
+
+    void addImported(int count) {
+        imported += count;
+    }
+
+    // Every invalid line is counted, but only the first few are described
+    void addInvalid(long line, List<FieldError> fieldErrors) {
+        invalid++;
+
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new ImportError(line, fieldErrors));
+        }
+    }
+
+    void setCheckpoint(long checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    void setComplete(boolean complete) {
+        this.complete = complete;
+    }
+
+    // Why the run stopped before the end of its input, other than the deadline
+    void setFailure(String failure) {
+        this.failure = failure;
+    }
+
+    boolean isFailed() {
+        return failure != null;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public long getCheckpoint() {
+        return checkpoint;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public String getFailure() {
+        return failure;
+    }
+
+    public List<ImportError> getErrors() {
+        return errors;
+    }
+}
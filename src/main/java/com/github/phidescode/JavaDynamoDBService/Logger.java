@@ -5,34 +5,140 @@ import java.time.format.DateTimeFormatter;
 
 import com.amazonaws.services.lambda.runtime.LambdaLogger;
 
+/**
+ * Leveled logging. Messages below LOG_LEVEL (DEBUG, INFO, WARN or ERROR; defaults to INFO) are dropped before
+ * anything is formatted, and the template overloads only substitute their {} placeholders once a message is
+ * known to be written, so disabled statements cost a level check.
+ */
 public class Logger {
 
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final Level level = getConfiguredLevel();
+
     private static LambdaLogger lambdaLogger;
 
     public static void setLogger(LambdaLogger logger) {
         lambdaLogger = logger;
     }
 
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public static void debug(String message) {
+        if (isEnabled(Level.DEBUG)) {
+            write(Level.DEBUG, message, null);
+        }
+    }
+
+    public static void debug(String template, Object arg) {
+        if (isEnabled(Level.DEBUG)) {
+            write(Level.DEBUG, format(template, arg, null), null);
+        }
+    }
+
+    public static void debug(String template, Object arg1, Object arg2) {
+        if (isEnabled(Level.DEBUG)) {
+            write(Level.DEBUG, format(template, arg1, arg2), null);
+        }
+    }
+
     public static void log(String message) {
-        String timestampedMessage = getTimestamp() + " " + message;
+        if (isEnabled(Level.INFO)) {
+            write(Level.INFO, message, null);
+        }
+    }
+
+    public static void log(String template, Object arg) {
+        if (isEnabled(Level.INFO)) {
+            write(Level.INFO, format(template, arg, null), null);
+        }
+    }
+
+    public static void log(String template, Object arg1, Object arg2) {
+        if (isEnabled(Level.INFO)) {
+            write(Level.INFO, format(template, arg1, arg2), null);
+        }
+    }
+
+    public static void warn(String message) {
+        if (isEnabled(Level.WARN)) {
+            write(Level.WARN, message, null);
+        }
+    }
+
+    public static void warn(String template, Object arg) {
+        if (isEnabled(Level.WARN)) {
+            write(Level.WARN, format(template, arg, null), null);
+        }
+    }
+
+    public static void warn(String template, Object arg1, Object arg2) {
+        if (isEnabled(Level.WARN)) {
+            write(Level.WARN, format(template, arg1, arg2), null);
+        }
+    }
+
+    public static void logError(String message, Throwable throwable) {
+        if (isEnabled(Level.ERROR)) {
+            write(Level.ERROR, message, throwable);
+        }
+    }
+
+    // Writes a line as-is, whatever the level; used for Embedded Metric Format documents, which must be plain JSON
+    public static void emit(String line) {
         if (lambdaLogger != null) {
-            lambdaLogger.log(timestampedMessage + "\n");
+            lambdaLogger.log(line + "\n");
         } else {
-            System.out.println(timestampedMessage);
+            System.out.println(line);
         }
     }
 
-    public static void logError(String message, Throwable throwable) {
-        String timestampedMessage = getTimestamp() + " " + message + ": " + throwable.getMessage();
+    private static void write(Level messageLevel, String message, Throwable throwable) {
+        StringBuilder line = new StringBuilder(message.length() + 40)
+                .append(LocalDateTime.now().format(formatter))
+                .append(' ')
+                .append(messageLevel)
+                .append(' ')
+                .append(message);
+
+        if (throwable != null) {
+            line.append(": ").append(throwable.getMessage());
+        }
+
         if (lambdaLogger != null) {
-            lambdaLogger.log(timestampedMessage + "\n");
+            lambdaLogger.log(line.append('\n').toString());
+        } else if (messageLevel == Level.ERROR) {
+            System.err.println(line);
         } else {
-            System.err.println(timestampedMessage);
+            System.out.println(line);
         }
     }
 
-    private static String getTimestamp() {
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
-        return LocalDateTime.now().format(formatter);
+    private static String format(String template, Object arg1, Object arg2) {
+        StringBuilder message = new StringBuilder(template.length() + 32);
+        Object[] args = {arg1, arg2};
+        int argIndex = 0;
+        int start = 0;
+        int placeholder;
+
+        while (argIndex < args.length && (placeholder = template.indexOf("{}", start)) >= 0) {
+            message.append(template, start, placeholder).append(args[argIndex++]);
+            start = placeholder + 2;
+        }
+
+        return message.append(template, start, template.length()).toString();
+    }
+
+    private static Level getConfiguredLevel() {
+        try {
+            return Level.valueOf(Config.getString("LOG_LEVEL", "INFO").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
     }
 }
@@ -0,0 +1,196 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Collects metrics in lock-free accumulators and writes them as CloudWatch Embedded Metric Format (EMF) log lines
+ * when flushed, once per invocation, so CloudWatch extracts them from the log stream without PutMetricData calls.
+ *
+ * Every metric has a single dimension (e.g. Route or Operation). Counters and sums are written as one value per
+ * flush; distributions are kept in log-scale buckets about 10% wide and written as arrays of bucket midpoints,
+ * from which CloudWatch computes percentiles.
+ *
+ * @see <a href=https://docs.aws.amazon.com/AmazonCloudWatch/latest/monitoring/CloudWatch_Embedded_Metric_Format_Specification.html>EMF specification</a>
+ */
+public class Metrics {
+
+    public enum Unit {
+        MILLISECONDS("Milliseconds"), COUNT("Count"), NONE("None");
+
+        private final String emfName;
+
+        Unit(String emfName) {
+            this.emfName = emfName;
+        }
+    }
+
+    private static final boolean ENABLED = Config.getBoolean("METRICS_ENABLED", true);
+    private static final String NAMESPACE = Config.getString("METRICS_NAMESPACE", "Appname");
+
+    // EMF accepts at most 100 values per metric in one document
+    private static final int MAX_VALUES_PER_DOCUMENT = 100;
+    private static final double MIN_BUCKET_VALUE = 0.01;
+    private static final double BUCKET_GROWTH = 1.1;
+    private static final int BUCKET_COUNT = 200;
+    private static final double LOG_BUCKET_GROWTH = Math.log(BUCKET_GROWTH);
+    private static final double[] bucketValues = new double[BUCKET_COUNT];
+
+    private static final JsonFactory jsonFactory = new JsonFactory();
+    private static final Map<Key, DoubleAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<Key, AtomicLongArray> distributions = new ConcurrentHashMap<>();
+
+    static {
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            bucketValues[bucket] = Math.round(MIN_BUCKET_VALUE * Math.pow(BUCKET_GROWTH, bucket + 0.5) * 1000) / 1000.0;
+        }
+    }
+
+    private record Key(String dimensionName, String dimensionValue, String name, Unit unit) {}
+
+    private Metrics() {}
+
+    public static void increment(String dimensionName, String dimensionValue, String name) {
+        add(dimensionName, dimensionValue, name, Unit.COUNT, 1);
+    }
+
+    // Sums are written as a single value per flush
+    public static void add(String dimensionName, String dimensionValue, String name, Unit unit, double value) {
+        if (ENABLED) {
+            counters.computeIfAbsent(new Key(dimensionName, dimensionValue, name, unit), key -> new DoubleAdder()).add(value);
+        }
+    }
+
+    public static void record(String dimensionName, String dimensionValue, String name, Unit unit, double value) {
+        if (ENABLED) {
+            distributions.computeIfAbsent(new Key(dimensionName, dimensionValue, name, unit), key -> new AtomicLongArray(BUCKET_COUNT))
+                    .incrementAndGet(getBucket(value));
+        }
+    }
+
+    public static void recordMillisSince(String dimensionName, String dimensionValue, String name, long startNanos) {
+        record(dimensionName, dimensionValue, name, Unit.MILLISECONDS, (System.nanoTime() - startNanos) / 1_000_000.0);
+    }
+
+    // Drains every accumulator and writes one EMF document per dimension value; concurrent recordings land either
+    // in this flush or the next
+    public static void flush() {
+        if (!ENABLED) {
+            return;
+        }
+
+        Map<Key, List<Double>> values = new LinkedHashMap<>();
+
+        counters.forEach((key, counter) -> {
+            double sum = counter.sumThenReset();
+            if (sum > 0) {
+                values.put(key, List.of(sum));
+            }
+        });
+
+        distributions.forEach((key, buckets) -> {
+            List<Double> bucketMidpoints = new ArrayList<>();
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                for (long count = buckets.getAndSet(bucket, 0); count > 0; count--) {
+                    bucketMidpoints.add(bucketValues[bucket]);
+                }
+            }
+            if (!bucketMidpoints.isEmpty()) {
+                values.put(key, bucketMidpoints);
+            }
+        });
+
+        Map<List<String>, Map<Key, List<Double>>> documents = new LinkedHashMap<>();
+        values.forEach((key, keyValues) -> documents
+                .computeIfAbsent(List.of(key.dimensionName(), key.dimensionValue()), dimension -> new LinkedHashMap<>())
+                .put(key, keyValues));
+
+        long timestamp = System.currentTimeMillis();
+
+        for (Map<Key, List<Double>> document : documents.values()) {
+            for (int offset = 0; hasValuesFrom(document, offset); offset += MAX_VALUES_PER_DOCUMENT) {
+                try {
+                    Logger.emit(writeDocument(document, offset, timestamp));
+                } catch (IOException e) {
+                    Logger.logError("Metrics could not be written", e);
+                }
+            }
+        }
+    }
+
+    private static int getBucket(double value) {
+        if (value <= MIN_BUCKET_VALUE) {
+            return 0;
+        }
+
+        return (int) Math.min(BUCKET_COUNT - 1, Math.log(value / MIN_BUCKET_VALUE) / LOG_BUCKET_GROWTH);
+    }
+
+    private static boolean hasValuesFrom(Map<Key, List<Double>> document, int offset) {
+        for (List<Double> metricValues : document.values()) {
+            if (metricValues.size() > offset) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String writeDocument(Map<Key, List<Double>> document, int offset, long timestamp) throws IOException {
+        Key firstKey = document.keySet().iterator().next();
+        StringWriter writer = new StringWriter();
+
+        try (JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            generator.writeStartObject();
+            generator.writeObjectFieldStart("_aws");
+            generator.writeNumberField("Timestamp", timestamp);
+            generator.writeArrayFieldStart("CloudWatchMetrics");
+            generator.writeStartObject();
+            generator.writeStringField("Namespace", NAMESPACE);
+            generator.writeArrayFieldStart("Dimensions");
+            generator.writeStartArray();
+            generator.writeString(firstKey.dimensionName());
+            generator.writeEndArray();
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("Metrics");
+            for (Map.Entry<Key, List<Double>> metric : document.entrySet()) {
+                if (metric.getValue().size() > offset) {
+                    generator.writeStartObject();
+                    generator.writeStringField("Name", metric.getKey().name());
+                    generator.writeStringField("Unit", metric.getKey().unit().emfName);
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeEndObject();
+
+            generator.writeStringField(firstKey.dimensionName(), firstKey.dimensionValue());
+
+            for (Map.Entry<Key, List<Double>> metric : document.entrySet()) {
+                List<Double> metricValues = metric.getValue();
+                if (metricValues.size() > offset) {
+                    generator.writeArrayFieldStart(metric.getKey().name());
+                    for (Double value : metricValues.subList(offset, Math.min(offset + MAX_VALUES_PER_DOCUMENT, metricValues.size()))) {
+                        generator.writeNumber(value);
+                    }
+                    generator.writeEndArray();
+                }
+            }
+
+            generator.writeEndObject();
+        }
+
+        return writer.toString();
+    }
+}
@@ -0,0 +1,11 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+// Thrown when a conditional write finds a different version than the caller's If-Match; mapped to 412
+public class PreconditionFailedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Group commit for quantity adjustments (PATCH /beans/{id}/quantity) to hot beans. An adjustment to a bean with
+ * no write in flight is sent at once, on its own, so a lone request never waits. Adjustments that arrive while a
+ * write to the same bean is in flight queue up behind it, and when it completes up to QUANTITY_COALESCE_MAX_REQUESTS
+ * of them are summed into one conditional UpdateItem, so a burst on one partition key costs about two writes
+ * (increments, then decrements) per round trip instead of one per request.
+ *
+ * Nothing is acknowledged early: every request waits for the write that includes it, so a response still means
+ * the adjustment is stored. The merged requests are answered as if applied one after another, each with the
+ * quantity and version it produced. When a sum cannot be applied (it would take the quantity out of range), its
+ * adjustments are retried one at a time so each gets the answer it would have had on its own.
+ *
+ * Merging needs concurrent requests for the same bean in one process, i.e. the standalone Server; in Lambda, which
+ * handles one request per container at a time, every adjustment is sent at once. Set QUANTITY_COALESCE=true to
+ * enable it.
+ */
+public class QuantityCoalescer {
+
+    private final DynamoDBHandler dbHandler;
+    private final boolean enabled;
+    private final int maxRequests;
+
+    // Adjustments waiting for the write in flight, by bean id; a bean is present while it has a write in flight.
+    // Guarded by this
+    private final Map<String, List<Adjustment>> pending = new HashMap<>();
+
+    private record Adjustment(int delta, Deadline deadline, CompletableFuture<Entity> result) {}
+
+    private record Group(String id, List<Adjustment> adjustments, Deadline deadline) {}
+
+    public QuantityCoalescer(DynamoDBHandler dbHandler) {
+        this(dbHandler, Config.getBoolean("QUANTITY_COALESCE", false), Config.getInt("QUANTITY_COALESCE_MAX_REQUESTS", 100));
+    }
+
+    public QuantityCoalescer(DynamoDBHandler dbHandler, boolean enabled, int maxRequests) {
+        this.dbHandler = dbHandler;
+        this.enabled = enabled;
+        this.maxRequests = Math.max(1, maxRequests);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public CompletableFuture<Entity> adjustQuantity(String id, int delta, Deadline deadline) {
+        if (!enabled) {
+            return dbHandler.adjustQuantity(id, delta, deadline);
+        }
+
+        Adjustment adjustment = new Adjustment(delta, deadline, new CompletableFuture<>());
+
+        synchronized (this) {
+            List<Adjustment> waiting = pending.get(id);
+
+            if (waiting != null) {
+                waiting.add(adjustment);
+                return adjustment.result();
+            }
+
+            pending.put(id, new ArrayList<>());
+        }
+
+        send(new Group(id, List.of(adjustment), deadline));
+
+        return adjustment.result();
+    }
+
+    // Whatever happens to the write, the bean must not be left marked busy, or its later adjustments would wait
+    // forever
+    private void send(Group group) {
+        AsyncUtils.attempt(() -> write(group))
+                .thenCompose(written -> written)
+                .whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        group.adjustments().forEach(adjustment -> adjustment.result().completeExceptionally(throwable));
+                    }
+
+                    sendNext(group.id());
+                });
+    }
+
+    // Sends what queued up during the last write, or marks the bean idle when nothing did
+    private void sendNext(String id) {
+        List<Adjustment> next;
+
+        synchronized (this) {
+            List<Adjustment> waiting = pending.get(id);
+
+            if (waiting.isEmpty()) {
+                pending.remove(id);
+                return;
+            }
+
+            List<Adjustment> taken = waiting.subList(0, Math.min(maxRequests, waiting.size()));
+            next = new ArrayList<>(taken);
+            taken.clear();
+        }
+
+        // the write has to fit within the shortest deadline it carries
+        Deadline deadline = next.get(0).deadline();
+
+        for (Adjustment adjustment : next) {
+            if (adjustment.deadline().remainingMillis() < deadline.remainingMillis()) {
+                deadline = adjustment.deadline();
+            }
+        }
+
+        send(new Group(id, next, deadline));
+    }
+
+    // Increments are merged into one write and decrements into another, sent after it. Within each the quantity
+    // only moves one way, so when the sum is in range so is every adjustment along the way, and the answers below
+    // describe a real order: the increments, then the decrements, each in arrival order.
+    private CompletableFuture<Void> write(Group group) {
+        List<Adjustment> increments = new ArrayList<>();
+        List<Adjustment> decrements = new ArrayList<>();
+
+        for (Adjustment adjustment : group.adjustments()) {
+            (adjustment.delta() < 0 ? decrements : increments).add(adjustment);
+        }
+
+        Metrics.add("Coalesce", "Quantity", "Requests", Metrics.Unit.COUNT, group.adjustments().size());
+
+        return writeMerged(group, increments).thenCompose(ignored -> writeMerged(group, decrements));
+    }
+
+    private CompletableFuture<Void> writeMerged(Group group, List<Adjustment> adjustments) {
+        long total = adjustments.stream().mapToLong(Adjustment::delta).sum();
+
+        if (adjustments.size() <= 1 || total < -Integer.MAX_VALUE || total > Integer.MAX_VALUE) {
+            return writeSeparately(group, adjustments);
+        }
+
+        Metrics.increment("Coalesce", "Quantity", "Writes");
+
+        return dbHandler.adjustQuantity(group.id(), (int) total, adjustments.size(), group.deadline())
+                .handle((entity, throwable) -> {
+                    if (throwable == null) {
+                        complete(adjustments, entity);
+                        return CompletableFuture.<Void>completedFuture(null);
+                    }
+
+                    // the sum is out of range, though some of the adjustments on their own may not be
+                    if (AsyncUtils.unwrap(throwable) instanceof ConflictException) {
+                        Metrics.increment("Coalesce", "Quantity", "Conflicts");
+                        return writeSeparately(group, adjustments);
+                    }
+
+                    adjustments.forEach(adjustment -> adjustment.result().completeExceptionally(throwable));
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .thenCompose(future -> future);
+    }
+
+    // Works back from the merged result to what each adjustment left behind: the last one sees the final quantity
+    // and version, each earlier one the values before the adjustments after it
+    private static void complete(List<Adjustment> adjustments, Entity entity) {
+        long quantity = entity.getQuantity();
+        long version = entity.getVersion();
+
+        for (int index = adjustments.size() - 1; index >= 0; index--) {
+            Adjustment adjustment = adjustments.get(index);
+            adjustment.result().complete(new Entity(entity.getId(), new BaseEntity(null, (int) quantity), version));
+            quantity -= adjustment.delta();
+            version--;
+        }
+    }
+
+    // One write after another, each answered with its own outcome and within its own deadline
+    private CompletableFuture<Void> writeSeparately(Group group, List<Adjustment> adjustments) {
+        CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+
+        for (Adjustment adjustment : adjustments) {
+            previous = previous.thenCompose(ignored -> {
+                Metrics.increment("Coalesce", "Quantity", "Writes");
+
+                return dbHandler.adjustQuantity(group.id(), adjustment.delta(), adjustment.deadline()).handle((entity, throwable) -> {
+                    if (throwable == null) {
+                        adjustment.result().complete(entity);
+                    } else {
+                        adjustment.result().completeExceptionally(throwable);
+                    }
+                    return null;
+                });
+            });
+        }
+
+        return previous;
+    }
+}
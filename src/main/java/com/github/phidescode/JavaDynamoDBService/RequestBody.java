@@ -0,0 +1,75 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A request body and the format it is in. API Gateway passes binary bodies (and, with a catch-all binary media
+ * type, every body) base64 encoded; those are decoded once here, and the parser for the body's format is created
+ * from the bytes.
+ */
+public class RequestBody {
+
+    private final String text;
+    private final byte[] bytes;
+    private final WireFormat format;
+
+    private RequestBody(String text, byte[] bytes, WireFormat format) {
+        this.text = text;
+        this.bytes = bytes;
+        this.format = format;
+    }
+
+    public static RequestBody json(String body) {
+        return new RequestBody(body, null, WireFormat.JSON);
+    }
+
+    public static RequestBody of(APIGatewayProxyRequestEvent request, String contentType) throws ValidationException {
+        WireFormat format = WireFormat.forContentType(contentType);
+        String body = request.getBody();
+
+        if (body == null || !Boolean.TRUE.equals(request.getIsBase64Encoded())) {
+            if (body != null && format.isBinary()) {
+                throw new ValidationException("$", format.getMediaType() + " bodies must be sent as binary");
+            }
+
+            return new RequestBody(body, null, format);
+        }
+
+        try {
+            return new RequestBody(null, Base64.getDecoder().decode(body), format);
+        } catch (IllegalArgumentException e) {
+            throw new ValidationException("$", "malformed base64 body");
+        }
+    }
+
+    public boolean isEmpty() {
+        return text == null ? bytes == null || bytes.length == 0 : text.isEmpty();
+    }
+
+    // Characters of a text body, bytes of a decoded one
+    public int length() {
+        return text == null ? bytes.length : text.length();
+    }
+
+    public JsonParser createParser() throws IOException {
+        return text == null ? format.getFactory().createParser(bytes) : format.getFactory().createParser(text);
+    }
+
+    // Line-oriented bodies such as NDJSON are read as UTF-8 text whatever their Content-Type
+    public BufferedReader createReader() {
+        if (text != null) {
+            return new BufferedReader(new StringReader(text));
+        }
+
+        return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes == null ? new byte[0] : bytes), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses response bodies for clients that send Accept-Encoding: gzip or deflate. Deflaters hold native
+ * memory and are costly to create, so up to one per processor and encoding is pooled and reset between
+ * responses; one created when the pool is empty is ended, freeing its native memory, if the pool is full by the
+ * time it is done. Unlike one per thread, the pool is shared by virtual threads and does not grow with them.
+ * Compressing in the function, rather than in API Gateway, also keeps large listings under Lambda's response
+ * payload limit.
+ */
+public class ResponseCompressor {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    // Below this size the encoding overhead outweighs the bytes saved
+    private static final int MIN_BYTES = Config.getInt("RESPONSE_COMPRESSION_MIN_BYTES", 1024);
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    // gzip wraps a raw deflate stream in its own header and trailer; HTTP deflate is the zlib format
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors();
+    private static final BlockingQueue<Deflater> rawDeflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Deflater> zlibDeflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private ResponseCompressor() {}
+
+    // Returns gzip or deflate, preferring gzip, or null when the client accepts neither
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+
+        double gzipQuality = 0;
+        double deflateQuality = 0;
+
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = WireFormat.getQuality(parameters);
+
+            if (GZIP.equals(name) || "*".equals(name)) {
+                gzipQuality = Math.max(gzipQuality, quality);
+            } else if (DEFLATE.equals(name)) {
+                deflateQuality = quality;
+            }
+        }
+
+        if (gzipQuality > 0 && gzipQuality >= deflateQuality) {
+            return GZIP;
+        }
+
+        return deflateQuality > 0 ? DEFLATE : null;
+    }
+
+    public static boolean shouldCompress(String contentEncoding, int length) {
+        return contentEncoding != null && length >= MIN_BYTES;
+    }
+
+    public static byte[] compress(byte[] body, String contentEncoding) {
+        boolean gzip = GZIP.equals(contentEncoding);
+        BlockingQueue<Deflater> pool = gzip ? rawDeflaters : zlibDeflaters;
+        Deflater deflater = pool.poll();
+        byte[] buffer = new byte[Math.min(BUFFER_SIZE, body.length + 64)];
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 32);
+
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED, gzip);
+        }
+
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+
+            if (gzip) {
+                out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            }
+
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.reset();
+
+            if (!pool.offer(deflater)) {
+                deflater.end();
+            }
+        }
+
+        if (gzip) {
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            writeIntLittleEndian(out, (int) crc.getValue());
+            writeIntLittleEndian(out, body.length);
+        }
+
+        return out.toByteArray();
+    }
+
+    // For bodies streamed rather than built whole; the stream ends its Deflater when it is closed
+    public static OutputStream compressing(OutputStream output, String contentEncoding) throws IOException {
+        if (GZIP.equals(contentEncoding)) {
+            return new GZIPOutputStream(output) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+
+        if (DEFLATE.equals(contentEncoding)) {
+            return new DeflaterOutputStream(output) {
+                {
+                    def.setLevel(Deflater.BEST_SPEED);
+                }
+            };
+        }
+
+        return output;
+    }
+
+    private static void writeIntLittleEndian(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
@@ -1,15 +1,24 @@
 package com.github.phidescode.JavaDynamoDBService;
 
+import java.util.List;
+
 public class ResponseStructure {
 
     private Object data;
     private String errorMessage;
+    private List<FieldError> errors;
 
     public ResponseStructure(Object data, String errorMessage) {
         this.data = data;
         this.errorMessage = errorMessage;
     }
 
+    public ResponseStructure(Object data, String errorMessage, List<FieldError> errors) {
+        this.data = data;
+        this.errorMessage = errorMessage;
+        this.errors = errors;
+    }
+
     public Object getData() {
         return data;
     }
@@ -25,4 +34,12 @@ public class ResponseStructure {
     public void setErrorMessage(String errorMessage) {
         this.errorMessage = errorMessage;
     }
+
+    public List<FieldError> getErrors() {
+        return errors;
+    }
+
+    public void setErrors(List<FieldError> errors) {
+        this.errors = errors;
+    }
 }
@@ -0,0 +1,48 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+// Writes the {"data": ..., "errorMessage": ...} envelope directly, streaming EntityPage items into a "data" array
+public class ResponseStructureSerializer extends StdSerializer<ResponseStructure> {
+
+    private static final long serialVersionUID = 1L;
+
+    public ResponseStructureSerializer() {
+        super(ResponseStructure.class);
+    }
+
+    @Override
+    public void serialize(ResponseStructure responseContent, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        Object responseData = responseContent.getData();
+
+        generator.writeStartObject();
+
+        if (responseData instanceof EntityPage entityPage) {
+            generator.writeArrayFieldStart("data");
+            for (Entity entity : entityPage.getItems()) {
+                provider.defaultSerializeValue(entity, generator);
+            }
+            generator.writeEndArray();
+            generator.writeStringField("nextToken", entityPage.getNextToken());
+            generator.writeNullField("errorMessage");
+        } else if (responseData != null) {
+            generator.writeFieldName("data");
+            provider.defaultSerializeValue(responseData, generator);
+            generator.writeNullField("errorMessage");
+        } else {
+            generator.writeNullField("data");
+            generator.writeStringField("errorMessage", responseContent.getErrorMessage());
+
+            if (responseContent.getErrors() != null) {
+                generator.writeFieldName("errors");
+                provider.defaultSerializeValue(responseContent.getErrors(), generator);
+            }
+        }
+
+        generator.writeEndObject();
+    }
+}
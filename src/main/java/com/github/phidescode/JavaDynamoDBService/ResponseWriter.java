@@ -0,0 +1,87 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.http.HttpStatus;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Shared, preconfigured response serialization. The mappers and writers, one per WireFormat, are built once
+ * per container and bodies that never change (errors, OPTIONS) are serialized once and reused.
+ */
+public class ResponseWriter {
+
+    public static final String INTERNAL_SERVER_ERROR_BODY = "{\"data\": null, \"errorMessage\": \"Internal Server Error\"}";
+
+    private static final Map<WireFormat, ObjectWriter> responseStructureWriters = new EnumMap<>(WireFormat.class);
+    private static final ObjectWriter responseStructureWriter;
+    private static final ObjectWriter entityWriter;
+
+    static {
+        for (WireFormat format : WireFormat.values()) {
+            ObjectMapper objectMapper = new ObjectMapper(format.getFactory())
+                    .registerModule(new SimpleModule()
+                            .addSerializer(Entity.class, new EntitySerializer())
+                            .addSerializer(ResponseStructure.class, new ResponseStructureSerializer()));
+            responseStructureWriters.put(format, objectMapper.writerFor(ResponseStructure.class));
+        }
+        responseStructureWriter = responseStructureWriters.get(WireFormat.JSON);
+        entityWriter = new ObjectMapper()
+                .registerModule(new SimpleModule().addSerializer(Entity.class, new EntitySerializer()))
+                .writerFor(Entity.class);
+    }
+
+    private static final Map<HttpStatus, String> errorBodies = new ConcurrentHashMap<>();
+    private static final String emptyBody = writeConstant(new ResponseStructure(null, null));
+
+    private ResponseWriter() {}
+
+    public static String write(ResponseStructure responseContent) throws JsonProcessingException {
+        return responseStructureWriter.writeValueAsString(responseContent);
+    }
+
+    public static String write(ResponseStructure responseContent, FieldSelection fields) throws JsonProcessingException {
+        if (fields.isAll()) {
+            return write(responseContent);
+        }
+
+        return responseStructureWriter.withAttribute(FieldSelection.class, fields).writeValueAsString(responseContent);
+    }
+
+    public static byte[] writeBytes(ResponseStructure responseContent, FieldSelection fields, WireFormat format) throws JsonProcessingException {
+        ObjectWriter writer = responseStructureWriters.get(format);
+
+        if (!fields.isAll()) {
+            writer = writer.withAttribute(FieldSelection.class, fields);
+        }
+
+        return writer.writeValueAsBytes(responseContent);
+    }
+
+    // A bare bean as JSON, without the response envelope, e.g. one line of an NDJSON export
+    public static byte[] writeEntity(Entity entity) throws JsonProcessingException {
+        return entityWriter.writeValueAsBytes(entity);
+    }
+
+    public static String errorBody(HttpStatus httpStatus) {
+        return errorBodies.computeIfAbsent(httpStatus, status -> writeConstant(new ResponseStructure(null, status.getReasonPhrase())));
+    }
+
+    public static String emptyBody() {
+        return emptyBody;
+    }
+
+    private static String writeConstant(ResponseStructure responseContent) {
+        try {
+            return write(responseContent);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.http.HttpStatus;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Standalone HTTP entry point, for running the service in a long-lived container instead of behind API Gateway.
+ * Each HTTP request is turned into the APIGatewayProxyRequestEvent API Gateway would have sent and handled by a
+ * single App, so routing, authentication, CORS headers and errors are the same as in Lambda, and the App's
+ * DynamoDBHandler (with its caches and rate limiters) and SecretCache are shared by every request.
+ *
+ * Requests run on virtual threads when the JVM has them (Java 21 and later), so thousands can wait on DynamoDB
+ * at once, and otherwise on a pool of SERVER_THREADS threads. Connections are kept alive between requests.
+ * Metrics are flushed every METRICS_FLUSH_SECONDS rather than after each request. Set PRIME_ON_INIT=true to
+ * prime the App before the port is opened. NDJSON exports are streamed whole, in a chunked body, within
+ * SERVER_EXPORT_TIMEOUT_SECONDS, instead of a page per request.
+ *
+ * Usage: java -jar target/JavaDynamoDBService-server.jar (build with mvn -P server package)
+ */
+public class Server {
+
+    private static final int MAX_BODY_BYTES = 6 * 1024 * 1024;
+    private static final int STOP_DELAY_SECONDS = 5;
+
+    private final App app;
+    private final long requestTimeoutMillis;
+    private final long exportTimeoutMillis;
+
+    Server(App app, long requestTimeoutMillis) {
+        this.app = app;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.exportTimeoutMillis = Config.getInt("SERVER_EXPORT_TIMEOUT_SECONDS", 3600) * 1000L;
+    }
+
+    public static void main(String[] args) throws IOException {
+        new Server(new App(), Config.getInt("SERVER_REQUEST_TIMEOUT_MILLIS", 29_000)).start(Config.getInt("PORT", 8080));
+    }
+
+    void start(int port) throws IOException {
+        // The server writes headers and body separately; with Nagle's algorithm the body then waits for the
+        // client's delayed ACK, adding about 40 ms to every response on a kept-alive connection
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(port), Config.getInt("SERVER_BACKLOG", 1024));
+        ExecutorService executor = AsyncUtils.newBlockingExecutor("server-worker", Config.getInt("SERVER_THREADS", 200));
+
+        httpServer.createContext("/", this::handle);
+        httpServer.setExecutor(executor);
+
+        ScheduledExecutorService metricsFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long flushSeconds = Config.getInt("METRICS_FLUSH_SECONDS", 60);
+        metricsFlusher.scheduleAtFixedRate(Metrics::flush, flushSeconds, flushSeconds, TimeUnit.SECONDS);
+
+        // Requests in progress get a few seconds to finish when the container is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Logger.log("Stopping");
+            httpServer.stop(STOP_DELAY_SECONDS);
+            executor.shutdown();
+            Metrics.flush();
+        }));
+
+        httpServer.start();
+        Logger.log("Listening on port {}", port);
+    }
+
+    void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = readBody(exchange.getRequestBody());
+
+            if (body == null) {
+                writeResponse(exchange, createError(HttpStatus.PAYLOAD_TOO_LARGE));
+            } else {
+                APIGatewayProxyRequestEvent request = toRequest(exchange, body);
+                APIGatewayProxyResponseEvent response = app.isNdjsonExport(request)
+                        ? app.streamExport(request, Deadline.after(exportTimeoutMillis), responseHeaders -> startStream(exchange, responseHeaders))
+                        : app.handleRequest(request, Deadline.after(requestTimeoutMillis));
+
+                if (response != null) {
+                    writeResponse(exchange, response);
+                }
+            }
+        } catch (RuntimeException e) {
+            Logger.logError("Server could not handle request", e);
+
+            // Once the headers are out, dropping the connection without the final chunk is the only way to tell the
+            // client that the body is incomplete; the server closes it when the handler throws
+            if (exchange.getResponseCode() != -1) {
+                throw new IOException("Response broken off", e);
+            }
+
+            writeResponse(exchange, createError(HttpStatus.INTERNAL_SERVER_ERROR));
+        }
+
+        exchange.close();
+    }
+
+    // A streamed body has no length, so it is sent with chunked transfer encoding
+    private static OutputStream startStream(HttpExchange exchange, Map<String, String> responseHeaders) {
+        responseHeaders.forEach((name, value) -> exchange.getResponseHeaders().put(name, List.of(value)));
+
+        try {
+            exchange.sendResponseHeaders(HttpStatus.OK.value(), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return exchange.getResponseBody();
+    }
+
+    // Null when the body is larger than MAX_BODY_BYTES, the most Lambda accepts
+    private static byte[] readBody(InputStream input) throws IOException {
+        byte[] body = input.readNBytes(MAX_BODY_BYTES + 1);
+
+        if (body.length > MAX_BODY_BYTES) {
+            input.transferTo(OutputStream.nullOutputStream());
+            return null;
+        }
+
+        return body;
+    }
+
+    // Header names are lower-cased, as API Gateway HTTP APIs pass them; binary bodies are base64 encoded
+    private static APIGatewayProxyRequestEvent toRequest(HttpExchange exchange, byte[] body) {
+        Map<String, String> requestHeaders = new HashMap<>();
+        exchange.getRequestHeaders().forEach((name, values) -> requestHeaders.put(name.toLowerCase(Locale.ROOT), String.join(",", values)));
+
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+                .withHttpMethod(exchange.getRequestMethod())
+                .withPath(exchange.getRequestURI().getPath())
+                .withHeaders(requestHeaders)
+                .withQueryStringParameters(getQueryParameters(exchange.getRequestURI().getRawQuery()));
+
+        if (body.length > 0) {
+            if (WireFormat.forContentType(requestHeaders.get("content-type")).isBinary()) {
+                request.setIsBase64Encoded(true);
+                request.setBody(Base64.getEncoder().encodeToString(body));
+            } else {
+                request.setIsBase64Encoded(false);
+                request.setBody(new String(body, StandardCharsets.UTF_8));
+            }
+        }
+
+        return request;
+    }
+
+    // Like API Gateway, the last of repeated parameters wins; null when there are none
+    private static Map<String, String> getQueryParameters(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return null;
+        }
+
+        Map<String, String> parameters = new HashMap<>();
+
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+
+            String[] nameAndValue = parameter.split("=", 2);
+            parameters.put(URLDecoder.decode(nameAndValue[0], StandardCharsets.UTF_8),
+                    nameAndValue.length > 1 ? URLDecoder.decode(nameAndValue[1], StandardCharsets.UTF_8) : "");
+        }
+
+        return parameters;
+    }
+
+    private static APIGatewayProxyResponseEvent createError(HttpStatus httpStatus) {
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(httpStatus.value())
+                .withHeaders(Map.of("Content-Type", "application/json"))
+                .withBody(ResponseWriter.errorBody(httpStatus));
+    }
+
+    // A fixed Content-Length lets the client reuse the connection for its next request
+    private static void writeResponse(HttpExchange exchange, APIGatewayProxyResponseEvent response) throws IOException {
+        if (response.getHeaders() != null) {
+            response.getHeaders().forEach((name, value) -> exchange.getResponseHeaders().put(name, List.of(value)));
+        }
+
+        String responseBody = response.getBody();
+        byte[] body = responseBody == null ? new byte[0]
+                : Boolean.TRUE.equals(response.getIsBase64Encoded()) ? Base64.getDecoder().decode(responseBody)
+                : responseBody.getBytes(StandardCharsets.UTF_8);
+
+        exchange.sendResponseHeaders(response.getStatusCode(), body.length == 0 ? -1 : body.length);
+
+        if (body.length > 0) {
+            exchange.getResponseBody().write(body);
+        }
+    }
+}
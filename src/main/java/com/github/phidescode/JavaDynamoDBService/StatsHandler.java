@@ -0,0 +1,120 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent.DynamodbStreamRecord;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.StreamRecord;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Lambda entry point for the beans table's DynamoDB stream, which keeps the summary read by GET /beans/stats up
+ * to date. Each record's old and new images (the stream must be NEW_AND_OLD_IMAGES) are decoded like any other
+ * item and turned into the change the record makes to the aggregates; the changes of a batch are then applied
+ * together by DynamoDBHandler.applyStats, in as few writes as the transaction size allows.
+ *
+ * Failures are reported per batch: records before the first one that could not be applied are done with, and
+ * Lambda retries from that one.
+ */
+public class StatsHandler implements RequestHandler<DynamodbEvent, StreamsEventResponse> {
+
+    private static final long RESPONSE_MARGIN_MILLIS = 1000;
+
+    private final DynamoDBHandler dbHandler;
+
+    public StatsHandler() {
+        this(new DynamoDBHandler());
+    }
+
+    StatsHandler(DynamoDBHandler dbHandler) {
+        this.dbHandler = dbHandler;
+    }
+
+    @Override
+    public StreamsEventResponse handleRequest(DynamodbEvent event, Context context) {
+        Logger.setLogger(context.getLogger());
+
+        Deadline deadline = Deadline.after(context.getRemainingTimeInMillis() - RESPONSE_MARGIN_MILLIS);
+        List<DynamodbStreamRecord> records = event.getRecords() == null ? List.of() : event.getRecords();
+
+        Logger.debug("Processing {} stream records", records.size());
+
+        for (int start = 0; start < records.size(); start += DynamoDBHandler.MAX_STATS_RECORDS_PER_UPDATE) {
+            List<DynamodbStreamRecord> chunk = records.subList(start, Math.min(start + DynamoDBHandler.MAX_STATS_RECORDS_PER_UPDATE, records.size()));
+
+            try {
+                dbHandler.applyStats(getChanges(chunk), deadline).join();
+            } catch (RuntimeException e) {
+                Logger.logError("Could not apply stream records", AsyncUtils.unwrap(e));
+                Metrics.flush();
+
+                return new StreamsEventResponse(List.of(new StreamsEventResponse.BatchItemFailure(chunk.get(0).getDynamodb().getSequenceNumber())));
+            }
+
+            Metrics.add("Stats", "Stream", "Records", Metrics.Unit.COUNT, chunk.size());
+        }
+
+        Metrics.flush();
+
+        return new StreamsEventResponse(List.of());
+    }
+
+    // Records that leave the aggregates as they were, e.g. a description change, are not written at all
+    private static Map<String, BeanStats> getChanges(List<DynamodbStreamRecord> records) {
+        Map<String, BeanStats> changes = new LinkedHashMap<>();
+
+        for (DynamodbStreamRecord record : records) {
+            StreamRecord streamRecord = record.getDynamodb();
+            BeanStats change = new BeanStats();
+
+            switch (record.getEventName()) {
+                case "INSERT" ->
+                    change.add(getEntity(streamRecord.getNewImage()));
+                case "MODIFY" -> {
+                    change.remove(getEntity(streamRecord.getOldImage()));
+                    change.add(getEntity(streamRecord.getNewImage()));
+                }
+                case "REMOVE" ->
+                    change.remove(getEntity(streamRecord.getOldImage()));
+                default ->
+                    Logger.warn("Ignoring stream record {} with event {}", record.getEventID(), record.getEventName());
+            }
+
+            if (change.hasChanges()) {
+                changes.put(record.getEventID(), change);
+            }
+        }
+
+        return changes;
+    }
+
+    private static Entity getEntity(Map<String, com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue> image) {
+        if (image == null) {
+            throw new IllegalStateException("Stream records have no images; the stream view type must be NEW_AND_OLD_IMAGES");
+        }
+
+        return EntityUtils.getEntityFromDBItem(toItem(image));
+    }
+
+    // The event model has its own AttributeValue class; beans only hold strings and numbers
+    private static Map<String, AttributeValue> toItem(Map<String, com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue> image) {
+        Map<String, AttributeValue> item = new HashMap<>();
+
+        image.forEach((name, value) -> {
+            if (value.getS() != null) {
+                item.put(name, AttributeValue.builder().s(value.getS()).build());
+            } else if (value.getN() != null) {
+                item.put(name, AttributeValue.builder().n(value.getN()).build());
+            }
+        });
+
+        return item;
+    }
+}
@@ -0,0 +1,18 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+// Thrown when DynamoDB capacity is not available within the request deadline; mapped to 429 with Retry-After
+public class ThrottledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public ThrottledException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, access-ordered (LRU) cache whose entries expire after a per-entry time to live.
+ * Warm Lambda containers keep it alive between invocations.
+ */
+public class TtlCache<K, V> {
+
+    private final int maxSize;
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public TtlCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > TtlCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    // Returns null on a miss or when the entry has expired
+    public synchronized V get(K key) {
+        CacheEntry<V> entry = entries.get(key);
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.expiresAtNanos - System.nanoTime() <= 0) {
+            entries.remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value, long ttlMillis) {
+        if (!isEnabled() || ttlMillis <= 0) {
+            return;
+        }
+
+        entries.put(key, new CacheEntry<>(value, System.nanoTime() + ttlMillis * 1_000_000));
+    }
+
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "hits=" + getHits() + " misses=" + getMisses() + " evictions=" + getEvictions() + " size=" + size();
+    }
+
+    private static class CacheEntry<V> {
+
+        private final V value;
+        private final long expiresAtNanos;
+
+        private CacheEntry(V value, long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.List;
+
+public class ValidationException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient List<FieldError> fieldErrors;
+
+    public ValidationException(List<FieldError> fieldErrors) {
+        super("Invalid data format: " + describe(fieldErrors));
+        this.fieldErrors = List.copyOf(fieldErrors);
+    }
+
+    public ValidationException(String field, String message) {
+        this(List.of(new FieldError(field, message)));
+    }
+
+    public List<FieldError> getFieldErrors() {
+        return fieldErrors;
+    }
+
+    private static String describe(List<FieldError> fieldErrors) {
+        StringBuilder description = new StringBuilder();
+
+        for (FieldError fieldError : fieldErrors) {
+            if (description.length() > 0) {
+                description.append(", ");
+            }
+            description.append(fieldError.getField()).append(' ').append(fieldError.getMessage());
+        }
+
+        return description.toString();
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * The representations request and response bodies can use. The binary formats carry the same structure as JSON
+ * with smaller, faster-to-parse encodings; Jackson reads and writes all of them through the same streaming API,
+ * so parsing and serialization code is shared. Each factory is built once per container.
+ */
+public enum WireFormat {
+    JSON("application/json", new JsonFactory()),
+    CBOR("application/cbor", new CBORFactory()),
+    SMILE("application/x-jackson-smile", new SmileFactory());
+
+    private final String mediaType;
+    private final JsonFactory factory;
+
+    WireFormat(String mediaType, JsonFactory factory) {
+        this.mediaType = mediaType;
+        this.factory = factory;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public JsonFactory getFactory() {
+        return factory;
+    }
+
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    // Anything that is not a binary format, including a missing Content-Type, is read as JSON
+    public static WireFormat forContentType(String contentType) {
+        if (contentType == null) {
+            return JSON;
+        }
+
+        String mediaType = contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+
+        for (WireFormat format : values()) {
+            if (format.mediaType.equals(mediaType)) {
+                return format;
+            }
+        }
+
+        return JSON;
+    }
+
+    // Picks the supported media type with the highest q-value, preferring JSON on ties; JSON when nothing matches
+    public static WireFormat forAccept(String accept) {
+        if (accept == null) {
+            return JSON;
+        }
+
+        WireFormat best = JSON;
+        double bestQuality = 0;
+
+        for (String range : accept.split(",")) {
+            String[] parameters = range.split(";");
+            String mediaType = parameters[0].trim().toLowerCase(Locale.ROOT);
+            double quality = getQuality(parameters);
+
+            for (WireFormat format : values()) {
+                if (quality > bestQuality && (format.mediaType.equals(mediaType) || (format == JSON && isWildcard(mediaType)))) {
+                    best = format;
+                    bestQuality = quality;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    private static boolean isWildcard(String mediaType) {
+        return "*/*".equals(mediaType) || "application/*".equals(mediaType);
+    }
+
+    static double getQuality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+
+        return 1;
+    }
+}
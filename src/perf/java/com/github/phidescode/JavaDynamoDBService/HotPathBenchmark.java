@@ -0,0 +1,140 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+/**
+ * Throughput of the per-request hot path. Dispatch benchmarks run the full handleRequest against a stubbed
+ * DynamoDbAsyncClient; GET by id is served from the entity cache after the first call.
+ *
+ * Usage (with allocation profiling):
+ * mvn -P perf test-compile exec:exec -Dperf.main=org.openjdk.jmh.Main -Dperf.args="HotPathBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HotPathBenchmark {
+
+    private static final String API_KEY = "benchmark-key";
+    private static final String REQUEST_BODY = "{\"description\": \"Arabica, medium roast\", \"quantity\": 42}";
+
+    private App app;
+    private Context context;
+    private Map<String, AttributeValue> dbItem;
+    private Entity entity;
+    private ResponseStructure entityResponse;
+
+    private APIGatewayProxyRequestEvent getByIdRequest;
+    private APIGatewayProxyRequestEvent listRequest;
+    private APIGatewayProxyRequestEvent cborListRequest;
+    private APIGatewayProxyRequestEvent gzipListRequest;
+    private APIGatewayProxyRequestEvent postRequest;
+    private APIGatewayProxyRequestEvent putRequest;
+
+    @Setup
+    public void setUp() {
+        app = new App(new DynamoDBHandler(new StubDynamoDbAsyncClient(100)), new StaticSecretCache(API_KEY));
+        // A context that never runs out, so every call gets the usual 29 second deadline however long the run is
+        context = new LocalContext(Long.MAX_VALUE / 2, false);
+
+        dbItem = StubDynamoDbAsyncClient.item("5f0c7f4e-8d59-4a51-9f3e-1f4b2a9f6a10", "Arabica, medium roast", 42);
+        entity = EntityUtils.getEntityFromDBItem(dbItem);
+        entityResponse = new ResponseStructure(entity, null);
+
+        getByIdRequest = request("GET", "/beans/" + entity.getId(), null);
+        listRequest = request("GET", "/beans", null);
+        cborListRequest = request("GET", "/beans", null).withHeaders(Map.of("x-api-key", API_KEY, "Accept", "application/cbor"));
+        gzipListRequest = request("GET", "/beans", null).withHeaders(Map.of("x-api-key", API_KEY, "Accept-Encoding", "gzip"));
+        postRequest = request("POST", "/beans", REQUEST_BODY);
+        putRequest = request("PUT", "/beans/" + entity.getId(), REQUEST_BODY);
+
+        // A benchmark of error responses (e.g. timeouts) would look fast and measure the wrong path
+        for (APIGatewayProxyRequestEvent request : new APIGatewayProxyRequestEvent[] {getByIdRequest, listRequest, cborListRequest,
+                gzipListRequest, postRequest, putRequest}) {
+            int statusCode = app.handleRequest(request, context).getStatusCode();
+
+            if (statusCode != HttpStatus.OK.value()) {
+                throw new IllegalStateException(request.getHttpMethod() + " " + request.getPath() + " returned " + statusCode + " during warm-up");
+            }
+        }
+    }
+
+    private static APIGatewayProxyRequestEvent request(String httpMethod, String path, String body) {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod(httpMethod)
+                .withPath(path)
+                .withHeaders(Map.of("x-api-key", API_KEY))
+                .withBody(body);
+    }
+
+    @Benchmark
+    public BaseEntity validateRequestBody() {
+        return EntityUtils.validateRequestBody(REQUEST_BODY);
+    }
+
+    @Benchmark
+    public Entity getEntityFromDBItem() {
+        return EntityUtils.getEntityFromDBItem(dbItem);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> getItemValues() {
+        return EntityUtils.getItemValues(entity);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent createResponse() {
+        return app.createResponse(HttpStatus.OK, entityResponse);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent handleGetById() {
+        return app.handleRequest(getByIdRequest, context);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent handleList() {
+        return app.handleRequest(listRequest, context);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent handleListCbor() {
+        return app.handleRequest(cborListRequest, context);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent handleListGzip() {
+        return app.handleRequest(gzipListRequest, context);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent handlePost() {
+        return app.handleRequest(postRequest, context);
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent handlePut() {
+        return app.handleRequest(putRequest, context);
+    }
+}
@@ -0,0 +1,114 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+
+/**
+ * Measures cold-start cost in fresh JVMs, with and without priming. Each run reports the time spent in
+ * App's static initialization, its constructor, priming (what beforeCheckpoint does before a SnapStart
+ * snapshot) and the first request's local work (routing, validation, serialization).
+ *
+ * Usage: mvn -P perf test-compile exec:exec -Dperf.main=com.github.phidescode.JavaDynamoDBService.InitTimer -Dperf.args=10
+ */
+public class InitTimer {
+
+    private static final String RESULT_PREFIX = "INIT_TIMES ";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && "--child".equals(args[0])) {
+            runChild(Boolean.parseBoolean(args[1]));
+            return;
+        }
+
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        for (boolean prime : new boolean[]{false, true}) {
+            List<long[]> samples = new ArrayList<>();
+
+            for (int run = 0; run < runs; run++) {
+                samples.add(spawnChild(prime));
+            }
+
+            System.out.printf("%-10s static init %6.1f ms | constructor %6.1f ms | priming %7.1f ms | first request %6.1f ms%n",
+                    prime ? "primed" : "unprimed", median(samples, 0), median(samples, 1), median(samples, 2), median(samples, 3));
+        }
+    }
+
+    private static void runChild(boolean prime) throws Exception {
+        long start = System.nanoTime();
+        Class.forName(App.class.getName(), true, InitTimer.class.getClassLoader());
+        long staticInit = System.nanoTime();
+
+        App app = new App();
+        long constructed = System.nanoTime();
+
+        if (prime) {
+            app.beforeCheckpoint(null);
+        }
+        long primed = System.nanoTime();
+
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+                .withHttpMethod("OPTIONS")
+                .withPath("/beans")
+                .withHeaders(Map.of());
+        app.handleRequest(request, new LocalContext());
+
+        Entity entity = new Entity(EntityUtils.validateRequestBody("{\"description\": \"bean\", \"quantity\": 3}"));
+        ResponseWriter.write(new ResponseStructure(entity, null));
+        long firstRequest = System.nanoTime();
+
+        System.out.println(RESULT_PREFIX + (staticInit - start) + " " + (constructed - staticInit) + " " + (primed - constructed) + " " + (firstRequest - primed));
+    }
+
+    private static long[] spawnChild(boolean prime) throws Exception {
+        ProcessBuilder processBuilder = new ProcessBuilder(
+                System.getProperty("java.home") + "/bin/java",
+                "-cp", System.getProperty("java.class.path"),
+                InitTimer.class.getName(), "--child", String.valueOf(prime));
+        processBuilder.redirectErrorStream(true);
+
+        // the SDK clients need a region and credentials to be constructed, even if they never reach AWS
+        Map<String, String> environment = processBuilder.environment();
+        environment.putIfAbsent("AWS_REGION", "us-east-1");
+        environment.putIfAbsent("AWS_ACCESS_KEY_ID", "local");
+        environment.putIfAbsent("AWS_SECRET_ACCESS_KEY", "local");
+
+        Process process = processBuilder.start();
+        long[] sample = null;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(RESULT_PREFIX)) {
+                    String[] values = line.substring(RESULT_PREFIX.length()).split(" ");
+                    sample = new long[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        sample[i] = Long.parseLong(values[i]);
+                    }
+                }
+            }
+        }
+
+        if (process.waitFor() != 0 || sample == null) {
+            throw new IllegalStateException("Init timing run failed");
+        }
+
+        return sample;
+    }
+
+    private static double median(List<long[]> samples, int index) {
+        List<Long> values = new ArrayList<>();
+        for (long[] sample : samples) {
+            values.add(sample[index]);
+        }
+        Collections.sort(values);
+
+        return values.get(values.size() / 2) / 1_000_000.0;
+    }
+}
@@ -0,0 +1,235 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+
+/**
+ * Replays a mixed GET/POST/PUT/DELETE workload through App.handleRequest from several threads and reports
+ * throughput and p50/p99/p999 latency per operation. By default it runs against InMemoryDynamoDbAsyncClient;
+ * when DYNAMODB_ENDPOINT is set (e.g. DynamoDB Local) it uses the real client from DependencyFactory.
+ *
+ * Arguments are key=value pairs:
+ *   seconds=30 threads=8 seed=1000 latencyMs=5 jitterMs=5 throttleRate=0.0 mix=get:60,list:5,post:15,put:15,delete:5
+ *   readUnits=0 writeUnits=0
+ *
+ * readUnits and writeUnits enable the client-side rate limiter with that many capacity units per second (0 is unlimited).
+ * The "filter" operation (weight 0 by default) lists beans within a random 50-wide quantity range, and "adjust"
+ * (also weight 0) adds a random non-zero delta between -5 and 5 to a bean's quantity with PATCH /beans/{id}/quantity.
+ *
+ * Usage: mvn -P perf test-compile exec:exec -Dperf.main=com.github.phidescode.JavaDynamoDBService.LoadTest -Dperf.args="seconds=10 threads=16"
+ */
+public class LoadTest {
+
+    private static final String API_KEY = "load-test-key";
+    private static final String[] OPERATIONS = {"get", "list", "filter", "post", "put", "adjust", "delete"};
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "seconds", "30", "threads", "8", "seed", "1000",
+                "latencyMs", "5", "jitterMs", "5", "throttleRate", "0.0",
+                "mix", "get:60,list:5,post:15,put:15,delete:5",
+                "readUnits", "0", "writeUnits", "0"));
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option[1]);
+        }
+
+        int seconds = Integer.parseInt(options.get("seconds"));
+        int threads = Integer.parseInt(options.get("threads"));
+        int[] cumulativeWeights = parseMix(options.get("mix"));
+
+        InMemoryDynamoDbAsyncClient inMemoryClient = null;
+        DynamoDbAsyncClient dynamoDbClient;
+
+        if (Config.getString("DYNAMODB_ENDPOINT", null) != null) {
+            dynamoDbClient = DependencyFactory.dynamoDbClient();
+        } else {
+            inMemoryClient = new InMemoryDynamoDbAsyncClient(Long.parseLong(options.get("latencyMs")),
+                    Long.parseLong(options.get("jitterMs")), Double.parseDouble(options.get("throttleRate")));
+            // the indexes of template.yaml; queried only when QUANTITY_INDEX_NAME and DESCRIPTION_INDEX_NAME are set
+            inMemoryClient.createIndex("AppnameBeans", "QuantityIndex", "indexShard", "quantity");
+            inMemoryClient.createIndex("AppnameBeans", "DescriptionIndex", "indexShard", "description");
+            inMemoryClient.createTable("AppnameIdempotency", "idempotencyKey");
+            dynamoDbClient = inMemoryClient;
+        }
+
+        DynamoDBHandler dbHandler = new DynamoDBHandler(dynamoDbClient,
+                new AdaptiveRateLimiter(Double.parseDouble(options.get("readUnits")), 0.5),
+                new AdaptiveRateLimiter(Double.parseDouble(options.get("writeUnits")), 1));
+
+        App app = new App(dbHandler, new StaticSecretCache(API_KEY));
+
+        List<String> ids = new CopyOnWriteArrayList<>();
+        // seeded directly, so a low writeUnits setting only limits the measured traffic
+        DynamoDBHandler seeder = new DynamoDBHandler(dynamoDbClient, new AdaptiveRateLimiter(0, 0.5), new AdaptiveRateLimiter(0, 1));
+        for (int i = 0; i < Integer.parseInt(options.get("seed")); i++) {
+            ids.add(seeder.putEntity(EntityUtils.validateRequestBody(body()), Deadline.after(60_000)).join().getId());
+        }
+
+        Map<Integer, long[][]> latencyCollectors = new ConcurrentHashMap<>();
+        Map<Integer, LongAdder> statusCounts = new ConcurrentSkipListMap<>();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> workers = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            long[][] threadLatencies = new long[OPERATIONS.length][];
+            latencyCollectors.put(t, threadLatencies);
+            Thread worker = new Thread(() -> {
+                List<List<Long>> samples = new ArrayList<>();
+                for (int i = 0; i < OPERATIONS.length; i++) {
+                    samples.add(new ArrayList<>());
+                }
+
+                while (System.nanoTime() < deadline) {
+                    int operation = pick(cumulativeWeights);
+                    long start = System.nanoTime();
+                    APIGatewayProxyResponseEvent response = app.handleRequest(nextRequest(operation, ids), new LocalContext());
+                    samples.get(operation).add(System.nanoTime() - start);
+
+                    statusCounts.computeIfAbsent(response.getStatusCode(), status -> new LongAdder()).increment();
+
+                    if (response.getStatusCode() < 400 && OPERATIONS[operation].equals("post")) {
+                        recordCreatedId(response, ids);
+                    }
+                }
+
+                for (int i = 0; i < OPERATIONS.length; i++) {
+                    threadLatencies[i] = samples.get(i).stream().mapToLong(Long::longValue).toArray();
+                }
+            }, "load-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long total = 0;
+        System.out.printf("%-8s %10s %10s %10s %10s %10s%n", "op", "count", "ops/s", "p50 ms", "p99 ms", "p999 ms");
+
+        for (int operation = 0; operation < OPERATIONS.length; operation++) {
+            long[] merged = new long[0];
+            for (long[][] threadLatencies : latencyCollectors.values()) {
+                long[] samples = threadLatencies[operation];
+                long[] combined = Arrays.copyOf(merged, merged.length + samples.length);
+                System.arraycopy(samples, 0, combined, merged.length, samples.length);
+                merged = combined;
+            }
+            Arrays.sort(merged);
+            total += merged.length;
+
+            if (merged.length > 0) {
+                System.out.printf("%-8s %10d %10.1f %10.2f %10.2f %10.2f%n", OPERATIONS[operation], merged.length,
+                        merged.length / (double) seconds, percentile(merged, 0.50), percentile(merged, 0.99), percentile(merged, 0.999));
+            }
+        }
+
+        System.out.printf("total %d requests, %.1f req/s, responses by status %s%n", total, total / (double) seconds, statusCounts);
+
+        if (inMemoryClient != null) {
+            System.out.printf("DynamoDB stand-in: %d calls, %d throttled%n", inMemoryClient.getCalls(), inMemoryClient.getThrottles());
+        }
+        System.out.println("Entity cache: " + dbHandler.getEntityCache());
+    }
+
+    private static APIGatewayProxyRequestEvent nextRequest(int operation, List<String> ids) {
+        String id = ids.isEmpty() ? "missing" : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+
+        return switch (OPERATIONS[operation]) {
+            case "get" ->
+                request("GET", "/beans/" + id, null);
+            case "list" ->
+                request("GET", "/beans", null);
+            case "filter" -> {
+                int minQuantity = ThreadLocalRandom.current().nextInt(950);
+                yield request("GET", "/beans", null)
+                        .withQueryStringParameters(Map.of("minQuantity", String.valueOf(minQuantity), "maxQuantity", String.valueOf(minQuantity + 50)));
+            }
+            case "post" ->
+                request("POST", "/beans", body());
+            case "put" ->
+                request("PUT", "/beans/" + id, body());
+            case "adjust" ->
+                request("PATCH", "/beans/" + id + "/quantity", "{\"delta\": " + (ThreadLocalRandom.current().nextBoolean() ? 1 : -1) * ThreadLocalRandom.current().nextInt(1, 6) + "}");
+            default -> {
+                ids.remove(id);
+                yield request("DELETE", "/beans/" + id, null);
+            }
+        };
+    }
+
+    private static void recordCreatedId(APIGatewayProxyResponseEvent response, List<String> ids) {
+        try {
+            JsonNode id = objectMapper.readTree(response.getBody()).path("data").path("id");
+            if (id.isTextual()) {
+                ids.add(id.asText());
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static APIGatewayProxyRequestEvent request(String httpMethod, String path, String body) {
+        return new APIGatewayProxyRequestEvent()
+                .withHttpMethod(httpMethod)
+                .withPath(path)
+                .withHeaders(Map.of("x-api-key", API_KEY))
+                .withBody(body);
+    }
+
+    private static String body() {
+        return "{\"description\": \"load test bean\", \"quantity\": " + ThreadLocalRandom.current().nextInt(1000) + "}";
+    }
+
+    private static int[] parseMix(String mix) {
+        int[] cumulativeWeights = new int[OPERATIONS.length];
+        Map<String, Integer> weights = new HashMap<>();
+
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.split(":");
+            weights.put(weight[0], Integer.parseInt(weight[1]));
+        }
+
+        int sum = 0;
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            sum += weights.getOrDefault(OPERATIONS[i], 0);
+            cumulativeWeights[i] = sum;
+        }
+
+        return cumulativeWeights;
+    }
+
+    private static int pick(int[] cumulativeWeights) {
+        int roll = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (roll < cumulativeWeights[i]) {
+                return i;
+            }
+        }
+
+        return cumulativeWeights.length - 1;
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        int index = (int) Math.min(sortedNanos.length - 1, Math.ceil(percentile * sortedNanos.length) - 1);
+        return sortedNanos[Math.max(0, index)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,174 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent.DynamodbStreamRecord;
+import com.amazonaws.services.lambda.runtime.events.StreamsEventResponse;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue;
+import com.amazonaws.services.lambda.runtime.events.models.dynamodb.StreamRecord;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Feeds StatsHandler synthetic stream batches of random INSERT, MODIFY and REMOVE records, redelivering a share
+ * of them in part or in full the way Lambda retries do, then checks GET /beans/stats against the aggregates
+ * computed directly from the generated beans. Runs against InMemoryDynamoDbAsyncClient and needs
+ * STATS_TABLE_NAME=AppnameBeanStats.
+ *
+ * Arguments are key=value pairs:
+ *   records=20000 batchSize=100 redeliveryRate=0.1 seed=1000
+ *
+ * Usage: STATS_TABLE_NAME=AppnameBeanStats mvn -P perf test-compile exec:exec -Dperf.main=com.github.phidescode.JavaDynamoDBService.StreamReplay
+ */
+public class StreamReplay {
+
+    private static final String API_KEY = "stream-replay-key";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>(Map.of(
+                "records", "20000", "batchSize", "100", "redeliveryRate", "0.1", "seed", "1000"));
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            options.put(option[0], option[1]);
+        }
+
+        if (Config.getString("STATS_TABLE_NAME", null) == null) {
+            System.err.println("Set STATS_TABLE_NAME=AppnameBeanStats");
+            System.exit(2);
+        }
+
+        int records = Integer.parseInt(options.get("records"));
+        int batchSize = Integer.parseInt(options.get("batchSize"));
+        double redeliveryRate = Double.parseDouble(options.get("redeliveryRate"));
+        Random random = new Random(Long.parseLong(options.get("seed")));
+
+        InMemoryDynamoDbAsyncClient inMemoryClient = new InMemoryDynamoDbAsyncClient();
+        inMemoryClient.createTable(Config.getString("STATS_TABLE_NAME", null), "id");
+        DynamoDBHandler dbHandler = new DynamoDBHandler(inMemoryClient);
+        StatsHandler statsHandler = new StatsHandler(dbHandler);
+        App app = new App(dbHandler, new StaticSecretCache(API_KEY));
+
+        Map<String, Integer> beans = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        List<DynamodbStreamRecord> batch = new ArrayList<>();
+        List<List<DynamodbStreamRecord>> delivered = new ArrayList<>();
+        long redelivered = 0;
+        long startNanos = System.nanoTime();
+
+        for (int sequence = 0; sequence < records; sequence++) {
+            batch.add(nextRecord(sequence, beans, ids, random));
+
+            if (batch.size() == batchSize || sequence == records - 1) {
+                deliver(statsHandler, batch);
+                delivered.add(batch);
+                batch = new ArrayList<>();
+
+                if (random.nextDouble() < redeliveryRate) {
+                    List<DynamodbStreamRecord> earlier = delivered.get(random.nextInt(delivered.size()));
+                    // a bisected retry redelivers part of a batch
+                    List<DynamodbStreamRecord> retried = random.nextBoolean() ? earlier : earlier.subList(0, earlier.size() / 2);
+                    deliver(statsHandler, retried);
+                    redelivered += retried.size();
+                }
+            }
+        }
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%d records in %d batches (%d redelivered) in %.1f s, %.0f records/s, %d DynamoDB calls%n",
+                records, delivered.size(), redelivered, seconds, (records + redelivered) / seconds, inMemoryClient.getCalls());
+
+        JsonNode stats = getStats(app);
+        BeanStats expected = new BeanStats();
+        beans.values().forEach(quantity -> expected.add(new Entity("expected", new BaseEntity("expected", quantity))));
+
+        boolean matches = stats.path("count").asLong() == expected.getCount()
+                && stats.path("totalQuantity").asLong() == expected.getTotalQuantity()
+                && stats.path("histogram").toString().equals(objectMapper.writeValueAsString(expected.getHistogram()));
+
+        System.out.println("stats:    " + stats);
+        System.out.println("expected: " + objectMapper.writeValueAsString(expected));
+        System.out.println(matches ? "OK" : "MISMATCH");
+
+        System.exit(matches ? 0 : 1);
+    }
+
+    private static void deliver(StatsHandler statsHandler, List<DynamodbStreamRecord> records) {
+        DynamodbEvent event = new DynamodbEvent();
+        event.setRecords(records);
+
+        StreamsEventResponse response = statsHandler.handleRequest(event, new LocalContext());
+
+        if (!response.getBatchItemFailures().isEmpty()) {
+            throw new IllegalStateException("Batch failed at " + response.getBatchItemFailures().get(0).getItemIdentifier());
+        }
+    }
+
+    // Inserts while the table is small, then an even mix; quantities span several buckets
+    private static DynamodbStreamRecord nextRecord(int sequence, Map<String, Integer> beans, List<String> ids, Random random) {
+        int choice = ids.size() < 100 ? 0 : random.nextInt(3);
+        DynamodbStreamRecord record = new DynamodbStreamRecord();
+        StreamRecord streamRecord = new StreamRecord().withSequenceNumber(String.format("%021d", sequence));
+
+        record.setEventID("event-" + sequence);
+        record.setDynamodb(streamRecord);
+
+        if (choice == 0) {
+            String id = "bean-" + sequence;
+            int quantity = randomQuantity(random);
+            beans.put(id, quantity);
+            ids.add(id);
+            record.setEventName("INSERT");
+            streamRecord.setNewImage(image(id, quantity));
+        } else {
+            int index = random.nextInt(ids.size());
+            String id = ids.get(index);
+            streamRecord.setOldImage(image(id, beans.get(id)));
+
+            if (choice == 1) {
+                int quantity = randomQuantity(random);
+                beans.put(id, quantity);
+                record.setEventName("MODIFY");
+                streamRecord.setNewImage(image(id, quantity));
+            } else {
+                beans.remove(id);
+                ids.set(index, ids.get(ids.size() - 1));
+                ids.remove(ids.size() - 1);
+                record.setEventName("REMOVE");
+            }
+        }
+
+        return record;
+    }
+
+    private static int randomQuantity(Random random) {
+        return (int) Math.pow(10, random.nextDouble() * 6);
+    }
+
+    private static Map<String, AttributeValue> image(String id, int quantity) {
+        return Map.of(
+                "id", new AttributeValue().withS(id),
+                "description", new AttributeValue().withS("bean " + id),
+                "quantity", new AttributeValue().withN(String.valueOf(quantity)),
+                "indexShard", new AttributeValue().withN(EntityUtils.getIndexShard(id).n()),
+                "version", new AttributeValue().withN("1"));
+    }
+
+    private static JsonNode getStats(App app) throws Exception {
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+                .withHttpMethod("GET")
+                .withPath("/beans/stats")
+                .withHeaders(Map.of("x-api-key", API_KEY));
+
+        APIGatewayProxyResponseEvent response = app.handleRequest(request, new LocalContext());
+
+        return objectMapper.readTree(response.getBody()).path("data");
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+/**
+ * A DynamoDbAsyncClient that answers every call immediately with canned data, so benchmarks measure only
+ * the service's own request handling. Every id exists; scans return a fixed page of items.
+ */
+public class StubDynamoDbAsyncClient implements DynamoDbAsyncClient {
+
+    private final ScanResponse scanResponse;
+
+    public StubDynamoDbAsyncClient(int scanPageSize) {
+        List<Map<String, AttributeValue>> items = new ArrayList<>(scanPageSize);
+
+        for (int i = 0; i < scanPageSize; i++) {
+            items.add(item("bean-" + i, "bean number " + i, i));
+        }
+
+        scanResponse = ScanResponse.builder()
+                .items(items)
+                .lastEvaluatedKey(EntityUtils.getItemKey("bean-" + (scanPageSize - 1)))
+                .build();
+    }
+
+    public static Map<String, AttributeValue> item(String id, String description, int quantity) {
+        Map<String, AttributeValue> item = new HashMap<>();
+
+        item.put("id", AttributeValue.builder().s(id).build());
+        item.put("description", AttributeValue.builder().s(description).build());
+        item.put("quantity", AttributeValue.builder().n(Integer.toString(quantity)).build());
+
+        return item;
+    }
+
+    @Override
+    public CompletableFuture<GetItemResponse> getItem(GetItemRequest getItemRequest) {
+        String id = getItemRequest.key().get("id").s();
+
+        return CompletableFuture.completedFuture(GetItemResponse.builder()
+                .item(item(id, "stub bean", 7))
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<PutItemResponse> putItem(PutItemRequest putItemRequest) {
+        return CompletableFuture.completedFuture(PutItemResponse.builder().build());
+    }
+
+    @Override
+    public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest updateItemRequest) {
+        Map<String, AttributeValue> values = updateItemRequest.expressionAttributeValues();
+        Map<String, AttributeValue> attributes = new HashMap<>(updateItemRequest.key());
+
+        attributes.put("description", values.get(":description"));
+        attributes.put("quantity", values.get(":quantity"));
+
+        return CompletableFuture.completedFuture(UpdateItemResponse.builder()
+                .attributes(attributes)
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<DeleteItemResponse> deleteItem(DeleteItemRequest deleteItemRequest) {
+        return CompletableFuture.completedFuture(DeleteItemResponse.builder()
+                .attributes(item(deleteItemRequest.key().get("id").s(), "stub bean", 7))
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<ScanResponse> scan(ScanRequest scanRequest) {
+        return CompletableFuture.completedFuture(scanResponse);
+    }
+
+    @Override
+    public String serviceName() {
+        return "dynamodb";
+    }
+
+    @Override
+    public void close() {
+    }
+}
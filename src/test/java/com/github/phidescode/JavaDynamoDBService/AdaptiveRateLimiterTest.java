@@ -0,0 +1,90 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveRateLimiterTest {
+
+    // 10 units per second, so the bucket holds 50
+    private final AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(10, 1);
+
+    @Test
+    public void tryAcquire_shouldNotLimitWhenDisabled() {
+        AdaptiveRateLimiter disabled = new AdaptiveRateLimiter(0, 1);
+
+        assertFalse(disabled.isEnabled());
+        assertEquals(0, disabled.tryAcquire(1_000_000, false));
+
+        disabled.onThrottle();
+
+        assertEquals(0, disabled.tryAcquire(1_000_000, true));
+    }
+
+    @Test
+    public void tryAcquire_shouldWaitForTheRefillOnceTheBucketIsDrained() {
+        assertEquals(0, limiter.tryAcquire(50, false));
+
+        // 10 units take about a second to come back
+        long waitMillis = limiter.tryAcquire(10, false);
+        assertTrue(waitMillis > 500 && waitMillis <= 1000, "waited " + waitMillis);
+    }
+
+    @Test
+    public void tryAcquire_shouldKeepHalfTheBucketFromLowPriorityCallers() {
+        assertEquals(0, limiter.tryAcquire(20, false));
+
+        // 30 units left, but a scan has to leave 25 of them
+        assertTrue(limiter.tryAcquire(10, true) > 0);
+        assertEquals(0, limiter.tryAcquire(10, false));
+    }
+
+    @Test
+    public void onThrottle_shouldHalveTheRateDownToAQuarterOfTheBase() {
+        limiter.onThrottle();
+        assertEquals(5, limiter.getRate());
+
+        // a throttle also empties the bucket
+        assertTrue(limiter.tryAcquire(1, false) > 0);
+
+        limiter.onThrottle();
+        limiter.onThrottle();
+        assertEquals(2.5, limiter.getRate());
+    }
+
+    @Test
+    public void onSuccess_shouldRaiseTheRateUpToTwiceTheBase() {
+        limiter.onThrottle();
+
+        for (int success = 0; success < 10; success++) {
+            limiter.onSuccess("GetItem", 1, 1);
+        }
+
+        assertEquals(7, limiter.getRate(), 1e-9);
+
+        for (int success = 0; success < 100; success++) {
+            limiter.onSuccess("GetItem", 1, 1);
+        }
+
+        assertEquals(20, limiter.getRate(), 1e-9);
+    }
+
+    @Test
+    public void onSuccess_shouldSettleTheChargeAgainstTheConsumedCapacity() {
+        assertEquals(1, limiter.estimate("Scan"));
+        assertEquals(0, limiter.tryAcquire(limiter.estimate("Scan"), false));
+
+        // the scan read 41 units, so 40 more come out of the bucket
+        limiter.onSuccess("Scan", 1, 41);
+
+        assertTrue(limiter.tryAcquire(10, false) > 0);
+        assertEquals(41, limiter.estimate("Scan"));
+
+        limiter.onSuccess("Scan", 41, 1);
+
+        assertEquals(41 * 0.8 + 1 * 0.2, limiter.estimate("Scan"), 1e-9);
+        assertEquals(1, limiter.estimate("Query"));
+    }
+}
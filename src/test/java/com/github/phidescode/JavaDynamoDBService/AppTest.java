@@ -1,15 +1,231 @@
-// package com.github.phidescode.JavaDynamoDBService;
+package com.github.phidescode.JavaDynamoDBService;
 
-// import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
-// import org.junit.jupiter.api.Test;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
-// public class AppTest {
+import org.junit.jupiter.api.Test;
 
-//     @Test
-//     public void handleRequest_shouldReturnConstantValue() {
-//         App function = new App();
-//         Object result = function.handleRequest("echo", null);
-//         assertEquals("echo", result);
-//     }
-// }
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class AppTest {
+
+    private static final String API_KEY = "test-key";
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String NO_BODY = null;
+
+    private final InMemoryDynamoDbAsyncClient client = new InMemoryDynamoDbAsyncClient();
+    private final App app = new App(new DynamoDBHandler(client), new StaticSecretCache(API_KEY));
+
+    // Headers come in name, value pairs
+    private APIGatewayProxyResponseEvent send(String method, String path, String body, String... headers) {
+        return send(method, path, null, body, headers);
+    }
+
+    private APIGatewayProxyResponseEvent send(String method, String path, Map<String, String> queryParameters, String body, String... headers) {
+        Map<String, String> requestHeaders = new HashMap<>(Map.of("x-api-key", API_KEY));
+
+        for (int i = 0; i < headers.length; i += 2) {
+            requestHeaders.put(headers[i], headers[i + 1]);
+        }
+
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+                .withHttpMethod(method)
+                .withPath(path)
+                .withHeaders(requestHeaders)
+                .withQueryStringParameters(queryParameters)
+                .withBody(body);
+
+        return app.handleRequest(request, new LocalContext(10_000, false));
+    }
+
+    private static JsonNode data(APIGatewayProxyResponseEvent response) throws JsonProcessingException {
+        return objectMapper.readTree(response.getBody()).path("data");
+    }
+
+    @Test
+    public void batchWrite_shouldAnswerEachItemInOrder() throws JsonProcessingException {
+        APIGatewayProxyResponseEvent response = send("POST", "/beans/batch",
+                "{\"put\": [{\"description\": \"a\", \"quantity\": 1}, {\"description\": \"b\"}, {\"description\": \"c\", \"quantity\": 3}],"
+                        + " \"delete\": [\"gone\", 5]}");
+
+        assertEquals(200, response.getStatusCode());
+
+        JsonNode results = data(response);
+        assertEquals(5, results.size());
+        assertEquals(200, results.get(0).path("status").asInt());
+        assertEquals(400, results.get(1).path("status").asInt());
+        assertEquals(200, results.get(2).path("status").asInt());
+        assertEquals("gone", results.get(3).path("id").asText());
+        assertEquals(400, results.get(4).path("status").asInt());
+        assertEquals(2, client.itemCount("AppnameBeans"));
+    }
+
+    @Test
+    public void batchWrite_shouldRejectAnEmptyOrMalformedBatch() {
+        assertEquals(400, send("POST", "/beans/batch", "{}").getStatusCode());
+        assertEquals(400, send("POST", "/beans/batch", "{\"put\": {}}").getStatusCode());
+        assertEquals(400, send("POST", "/beans/batch", "{\"update\": []}").getStatusCode());
+    }
+
+    @Test
+    public void batchGet_shouldReturnFoundAndMissingBeans() throws JsonProcessingException {
+        String id = data(send("POST", "/beans", "{\"description\": \"a\", \"quantity\": 1}")).path("id").asText();
+
+        JsonNode results = data(send("POST", "/beans/batch-get", "{\"ids\": [\"" + id + "\", \"missing\"]}"));
+
+        assertEquals(2, results.size());
+        assertEquals(200, results.get(0).path("status").asInt());
+        assertEquals("a", results.get(0).path("data").path("description").asText());
+        assertEquals(404, results.get(1).path("status").asInt());
+    }
+
+    private String createBean(String description, int quantity) throws JsonProcessingException {
+        return data(send("POST", "/beans", "{\"description\": \"" + description + "\", \"quantity\": " + quantity + "}")).path("id").asText();
+    }
+
+    @Test
+    public void getAll_shouldPageThroughEveryBeanOnce() throws JsonProcessingException {
+        for (int i = 0; i < 23; i++) {
+            createBean("bean " + i, i);
+        }
+
+        Set<String> ids = new HashSet<>();
+        int pages = 0;
+        String nextToken = null;
+
+        do {
+            Map<String, String> queryParameters = new HashMap<>(Map.of("limit", "5"));
+
+            if (nextToken != null) {
+                queryParameters.put("nextToken", nextToken);
+            }
+
+            JsonNode page = objectMapper.readTree(send("GET", "/beans", queryParameters, null).getBody());
+
+            for (JsonNode item : page.path("data")) {
+                assertTrue(ids.add(item.path("id").asText()));
+            }
+
+            nextToken = page.path("nextToken").isTextual() ? page.path("nextToken").asText() : null;
+            pages++;
+        } while (nextToken != null);
+
+        assertEquals(23, ids.size());
+        assertTrue(pages >= 5);
+    }
+
+    @Test
+    public void postAndPut_shouldAcceptAnEmptyDescription() throws JsonProcessingException {
+        client.createIndex("AppnameBeans", "DescriptionIndex", "indexShard", "description");
+        String id = createBean("", 1);
+
+        assertEquals("", data(send("GET", "/beans/" + id, NO_BODY)).path("description").asText(null));
+
+        String described = createBean("arabica", 2);
+        assertEquals(200, send("PUT", "/beans/" + described, "{\"description\": \"\", \"quantity\": 3}").getStatusCode());
+        assertEquals("", data(send("GET", "/beans/" + described, NO_BODY)).path("description").asText(null));
+
+        // an empty description matches no prefix
+        createBean("arusha", 4);
+        JsonNode matches = data(send("GET", "/beans", Map.of("descriptionPrefix", "ar"), null));
+        assertEquals(1, matches.size());
+        assertEquals("arusha", matches.get(0).path("description").asText());
+    }
+
+    @Test
+    public void getAll_shouldRejectInvalidPageTokensAndLimits() {
+        assertEquals(400, send("GET", "/beans", Map.of("nextToken", "garbage"), null).getStatusCode());
+        assertEquals(400, send("GET", "/beans", Map.of("limit", "0"), null).getStatusCode());
+        assertEquals(400, send("GET", "/beans", Map.of("limit", "ten"), null).getStatusCode());
+    }
+
+    @Test
+    public void put_shouldWriteOnlyWhenIfMatchNamesTheCurrentVersion() throws JsonProcessingException {
+        String id = createBean("a", 1);
+        String eTag = send("GET", "/beans/" + id, NO_BODY).getHeaders().get("ETag");
+        String body = "{\"description\": \"b\", \"quantity\": 2}";
+
+        APIGatewayProxyResponseEvent updated = send("PUT", "/beans/" + id, body, "If-Match", eTag);
+        assertEquals(200, updated.getStatusCode());
+
+        // the tag read before the update is stale now
+        assertEquals(412, send("PUT", "/beans/" + id, body, "If-Match", eTag).getStatusCode());
+        assertEquals(412, send("DELETE", "/beans/" + id, NO_BODY, "If-Match", eTag).getStatusCode());
+        assertEquals(400, send("PUT", "/beans/" + id, body, "If-Match", "W/" + eTag).getStatusCode());
+        assertEquals(200, send("DELETE", "/beans/" + id, NO_BODY, "If-Match", updated.getHeaders().get("ETag")).getStatusCode());
+    }
+
+    @Test
+    public void get_shouldAnswerIfNoneMatchPerRepresentation() throws JsonProcessingException {
+        String id = createBean("a", 1);
+        APIGatewayProxyResponseEvent response = send("GET", "/beans/" + id, NO_BODY);
+
+        assertEquals("Accept, Accept-Encoding", response.getHeaders().get("Vary"));
+
+        APIGatewayProxyResponseEvent notModified = send("GET", "/beans/" + id, NO_BODY, "If-None-Match", response.getHeaders().get("ETag"));
+        assertEquals(304, notModified.getStatusCode());
+        assertEquals("", notModified.getBody());
+        assertEquals("Accept, Accept-Encoding", notModified.getHeaders().get("Vary"));
+
+        // the same version in another format is another representation
+        APIGatewayProxyResponseEvent cbor = send("GET", "/beans/" + id, NO_BODY,
+                "If-None-Match", response.getHeaders().get("ETag"), "Accept", "application/cbor");
+        assertEquals(200, cbor.getStatusCode());
+        assertEquals("\"1-cbor\"", cbor.getHeaders().get("ETag"));
+
+        // and so is the same version with fewer fields
+        APIGatewayProxyResponseEvent projected = send("GET", "/beans/" + id, Map.of("fields", "quantity"), NO_BODY,
+                "If-None-Match", response.getHeaders().get("ETag"));
+        assertEquals(200, projected.getStatusCode());
+        assertEquals("\"1-quantity\"", projected.getHeaders().get("ETag"));
+        assertEquals(304, send("GET", "/beans/" + id, Map.of("fields", "quantity"), NO_BODY,
+                "If-None-Match", projected.getHeaders().get("ETag")).getStatusCode());
+    }
+
+    @Test
+    public void post_shouldReplayARequestWithTheSameIdempotencyKey() throws JsonProcessingException {
+        client.createTable("AppnameIdempotency", "idempotencyKey");
+        String body = "{\"description\": \"a\", \"quantity\": 1}";
+
+        String id = data(send("POST", "/beans", body, "Idempotency-Key", "key-1")).path("id").asText();
+
+        assertEquals(id, data(send("POST", "/beans", body, "Idempotency-Key", "key-1")).path("id").asText());
+        assertEquals(1, client.itemCount("AppnameBeans"));
+        assertEquals(400, send("POST", "/beans", "{\"description\": \"b\", \"quantity\": 1}", "Idempotency-Key", "key-1").getStatusCode());
+        assertEquals(400, send("POST", "/beans", body, "Idempotency-Key", "k".repeat(256)).getStatusCode());
+        assertEquals(1, client.itemCount("AppnameBeans"));
+    }
+
+    @Test
+    public void patchQuantity_shouldAdjustTheQuantityWithinRange() throws JsonProcessingException {
+        String id = createBean("a", 10);
+
+        JsonNode incremented = data(send("PATCH", "/beans/" + id + "/quantity", "{\"delta\": 5}"));
+        assertEquals(15, incremented.path("quantity").asInt());
+        // only the id and the quantity come back
+        assertTrue(incremented.path("description").isMissingNode());
+
+        assertEquals(3, data(send("PATCH", "/beans/" + id + "/quantity", "{\"delta\": -12}")).path("quantity").asInt());
+        assertEquals(409, send("PATCH", "/beans/" + id + "/quantity", "{\"delta\": -4}").getStatusCode());
+        assertEquals(3, data(send("GET", "/beans/" + id, NO_BODY)).path("quantity").asInt());
+    }
+
+    @Test
+    public void patchQuantity_shouldRejectInvalidRequests() throws JsonProcessingException {
+        String id = createBean("a", 10);
+
+        assertEquals(400, send("PATCH", "/beans/" + id + "/quantity", "{\"delta\": 0}").getStatusCode());
+        // an unknown id is a 400, as on the other routes
+        assertEquals(400, send("PATCH", "/beans/missing/quantity", "{\"delta\": 1}").getStatusCode());
+        assertEquals(405, send("PATCH", "/beans/" + id, "{\"delta\": 1}").getStatusCode());
+    }
+}
@@ -0,0 +1,83 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+
+public class AppWorkerTest {
+
+    private static final String API_KEY = "test-key";
+    private static final long IMPORT_WRITE_MILLIS = 500;
+    // More imports than APP_WORKER_THREADS, so they would take every thread of a shared pool
+    private static final int IMPORTS = 20;
+
+    // Imports write with UpdateItem, which takes IMPORT_WRITE_MILLIS; reads answer at once
+    private static class SlowImportClient extends InMemoryDynamoDbAsyncClient {
+        @Override
+        public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest request) {
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(IMPORT_WRITE_MILLIS, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> super.updateItem(request));
+        }
+    }
+
+    private final InMemoryDynamoDbAsyncClient client = new SlowImportClient();
+    private final App app = new App(new DynamoDBHandler(client), new StaticSecretCache(API_KEY));
+
+    private APIGatewayProxyResponseEvent send(String method, String path, String body) {
+        APIGatewayProxyRequestEvent request = new APIGatewayProxyRequestEvent()
+                .withHttpMethod(method)
+                .withPath(path)
+                .withHeaders(Map.of("x-api-key", API_KEY))
+                .withBody(body);
+
+        return app.handleRequest(request, new LocalContext(10_000, false));
+    }
+
+    @Test
+    public void handleRequest_shouldAuthenticateReadsWhileImportsBlock() throws InterruptedException {
+        String id = new DynamoDBHandler(client).putEntity(new BaseEntity("bean", 1), Deadline.after(10_000)).join().getId();
+        ExecutorService callers = Executors.newFixedThreadPool(IMPORTS);
+
+        try {
+            List<CompletableFuture<APIGatewayProxyResponseEvent>> imports = new ArrayList<>();
+
+            for (int i = 0; i < IMPORTS; i++) {
+                String line = "{\"description\": \"imported " + i + "\", \"quantity\": " + i + "}";
+                imports.add(CompletableFuture.supplyAsync(() -> send("POST", "/beans/import", line), callers));
+            }
+
+            // let the imports reach their writes
+            Thread.sleep(100);
+
+            long startNanos = System.nanoTime();
+            APIGatewayProxyResponseEvent read = send("GET", "/beans/" + id, null);
+            long readMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+            assertEquals(200, read.getStatusCode());
+            assertTrue(readMillis < IMPORT_WRITE_MILLIS, "read took " + readMillis + " ms");
+
+            for (CompletableFuture<APIGatewayProxyResponseEvent> importResponse : imports) {
+                assertEquals(200, importResponse.join().getStatusCode());
+            }
+
+            assertEquals(IMPORTS + 1, client.itemCount("AppnameBeans"));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+
+public class DynamoDBHandlerTest {
+
+    private static final long SLOW_MILLIS = 300;
+
+    private record Step(long delayMillis, RuntimeException failure) {}
+
+    private static final Step FAST = new Step(0, null);
+
+    // Answers each GetItem as the next step says: after a delay, then normally or with a failure
+    private static class ScriptedClient extends InMemoryDynamoDbAsyncClient {
+        private final List<Step> steps;
+        private final AtomicInteger getItemCalls = new AtomicInteger();
+
+        private ScriptedClient(Step... steps) {
+            this.steps = List.of(steps);
+        }
+
+        @Override
+        public CompletableFuture<GetItemResponse> getItem(GetItemRequest request) {
+            int call = getItemCalls.getAndIncrement();
+            Step step = call < steps.size() ? steps.get(call) : FAST;
+
+            return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(step.delayMillis(), TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> step.failure() == null ? super.getItem(request) : CompletableFuture.failedFuture(step.failure()));
+        }
+    }
+
+    private static Deadline deadline() {
+        return Deadline.after(10_000);
+    }
+
+    // A policy that hedges every read after about a millisecond
+    private static HedgePolicy hedgeEveryRead() {
+        HedgePolicy policy = new HedgePolicy(95, 1, 0);
+
+        for (int sample = 0; sample < 128; sample++) {
+            policy.record(1_000_000);
+        }
+
+        return policy;
+    }
+
+    private static DynamoDBHandler hedgingHandler(ScriptedClient client) {
+        return new DynamoDBHandler(client, new AdaptiveRateLimiter(0, 0.5), new AdaptiveRateLimiter(0, 1), hedgeEveryRead());
+    }
+
+    // Written through another handler, so the bean is not in the entity cache of the one under test
+    private static Entity createBean(InMemoryDynamoDbAsyncClient client) {
+        return new DynamoDBHandler(client).putEntity(new BaseEntity("bean", 7), deadline()).join();
+    }
+
+    private static RuntimeException throttle() {
+        return ProvisionedThroughputExceededException.builder().message("throttled").build();
+    }
+
+    @Test
+    public void getEntity_shouldAnswerWithTheHedgeWhenTheFirstReadIsSlow() {
+        ScriptedClient client = new ScriptedClient(new Step(SLOW_MILLIS, null), FAST);
+        Entity bean = createBean(client);
+
+        long startNanos = System.nanoTime();
+        Entity read = hedgingHandler(client).getEntity(bean.getId(), FieldSelection.ALL, deadline()).join();
+
+        assertEquals(bean.getId(), read.getId());
+        assertTrue(System.nanoTime() - startNanos < TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS));
+        assertEquals(2, client.getItemCalls.get());
+    }
+
+    @Test
+    public void getEntity_shouldNotRetryTheLosingReadWhenItFailsLate() throws InterruptedException {
+        ScriptedClient client = new ScriptedClient(new Step(SLOW_MILLIS, throttle()), FAST);
+        Entity bean = createBean(client);
+
+        Entity read = hedgingHandler(client).getEntity(bean.getId(), FieldSelection.ALL, deadline()).join();
+        Thread.sleep(SLOW_MILLIS * 3);
+
+        assertEquals(bean.getId(), read.getId());
+        assertEquals(2, client.getItemCalls.get());
+    }
+
+    @Test
+    public void getEntity_shouldFailOnlyWhenEveryReadHasFailed() {
+        DynamoDbException failure = (DynamoDbException) DynamoDbException.builder().message("failed").build();
+        ScriptedClient client = new ScriptedClient(new Step(SLOW_MILLIS / 3, failure), new Step(SLOW_MILLIS, failure));
+        Entity bean = createBean(client);
+
+        long startNanos = System.nanoTime();
+        CompletableFuture<Entity> read = hedgingHandler(client).getEntity(bean.getId(), FieldSelection.ALL, deadline());
+
+        CompletionException thrown = assertThrows(CompletionException.class, read::join);
+        assertEquals(failure, AsyncUtils.unwrap(thrown));
+        // the first read failed early, but the read waited for the hedge
+        assertTrue(System.nanoTime() - startNanos >= TimeUnit.MILLISECONDS.toNanos(SLOW_MILLIS));
+        assertEquals(2, client.getItemCalls.get());
+    }
+
+    @Test
+    public void batchWriteEntities_shouldWriteEveryChunkAndRetryUnprocessedItems() {
+        // one write in ten comes back unprocessed
+        InMemoryDynamoDbAsyncClient client = new InMemoryDynamoDbAsyncClient(0, 0, 0.1);
+        DynamoDBHandler dbHandler = new DynamoDBHandler(client);
+        List<Entity> newEntities = new ArrayList<>();
+
+        for (int i = 0; i < 60; i++) {
+            newEntities.add(new Entity(new BaseEntity("bean " + i, i)));
+        }
+
+        Map<String, BatchItemResult> results = dbHandler.batchWriteEntities(newEntities, List.of(), deadline()).join();
+
+        assertEquals(60, results.size());
+        assertTrue(results.values().stream().allMatch(result -> result.getStatus() == 200));
+        assertEquals(60, client.itemCount("AppnameBeans"));
+    }
+
+    @Test
+    public void batchGetEntities_shouldReadEveryChunkAndReportMissingItems() {
+        InMemoryDynamoDbAsyncClient client = new InMemoryDynamoDbAsyncClient();
+        List<String> ids = new ArrayList<>();
+
+        for (int i = 0; i < 150; i++) {
+            ids.add(createBean(client).getId());
+        }
+
+        ids.add("missing");
+
+        Map<String, BatchItemResult> results = new DynamoDBHandler(client).batchGetEntities(ids, FieldSelection.ALL, deadline()).join();
+
+        assertEquals(151, results.size());
+        assertEquals(404, results.get("missing").getStatus());
+        assertEquals(150, results.values().stream().filter(result -> result.getStatus() == 200).count());
+        assertEquals(ids.get(0), ((Entity) results.get(ids.get(0)).getData()).getId());
+    }
+
+    // Follows an export from the given token to the end, checking no bean comes back twice
+    private static Set<String> export(DynamoDBHandler dbHandler, String exportToken) {
+        Set<String> ids = new HashSet<>();
+
+        do {
+            EntityPage page = dbHandler.scanRound(exportToken, deadline()).join();
+
+            for (Entity entity : page.getItems()) {
+                assertTrue(ids.add(entity.getId()));
+            }
+
+            exportToken = page.getNextToken();
+        } while (exportToken != null);
+
+        return ids;
+    }
+
+    private static Set<String> createBeans(InMemoryDynamoDbAsyncClient client, int count) {
+        Set<String> ids = new HashSet<>();
+
+        for (int i = 0; i < count; i++) {
+            ids.add(createBean(client).getId());
+        }
+
+        return ids;
+    }
+
+    @Test
+    public void scanRound_shouldExportEveryBeanOnce() {
+        InMemoryDynamoDbAsyncClient client = new InMemoryDynamoDbAsyncClient();
+        Set<String> ids = createBeans(client, 250);
+
+        assertEquals(ids, export(new DynamoDBHandler(client), null));
+    }
+
+    @Test
+    public void scanRound_shouldResumeEverySegmentOfAToken() {
+        InMemoryDynamoDbAsyncClient client = new InMemoryDynamoDbAsyncClient();
+        Set<String> ids = createBeans(client, 250);
+
+        // four segments, each starting before the lowest id
+        Map<String, AttributeValue> startKey = Map.of("id", AttributeValue.builder().s("").build());
+        Map<String, AttributeValue> token = new HashMap<>(Map.of("totalSegments", AttributeValue.builder().n("4").build()));
+
+        for (int segment = 0; segment < 4; segment++) {
+            token.put(String.valueOf(segment), AttributeValue.builder().m(startKey).build());
+        }
+
+        assertEquals(ids, export(new DynamoDBHandler(client), EntityUtils.encodePageToken(token)));
+    }
+
+    @Test
+    public void scanRound_shouldRejectTokensThatAreNotExportTokens() {
+        DynamoDBHandler dbHandler = new DynamoDBHandler(new InMemoryDynamoDbAsyncClient());
+        AttributeValue startKey = AttributeValue.builder().m(Map.of("id", AttributeValue.builder().s("a").build())).build();
+        AttributeValue twoSegments = AttributeValue.builder().n("2").build();
+
+        List<String> tokens = List.of(
+                "garbage",
+                // a page token of GET /beans
+                EntityUtils.encodePageToken(Map.of("id", AttributeValue.builder().s("a").build())),
+                EntityUtils.encodePageToken(Map.of("totalSegments", AttributeValue.builder().n("0").build(), "0", startKey)),
+                EntityUtils.encodePageToken(Map.of("totalSegments", twoSegments, "2", startKey)),
+                EntityUtils.encodePageToken(Map.of("totalSegments", twoSegments)));
+
+        for (String token : tokens) {
+            CompletionException thrown = assertThrows(CompletionException.class, () -> dbHandler.scanRound(token, deadline()).join());
+            assertInstanceOf(IllegalArgumentException.class, AsyncUtils.unwrap(thrown));
+        }
+    }
+
+    // The name the surefire configuration gives IDEMPOTENCY_TABLE_NAME
+    private static InMemoryDynamoDbAsyncClient idempotentClient() {
+        InMemoryDynamoDbAsyncClient client = new InMemoryDynamoDbAsyncClient();
+        client.createTable("AppnameIdempotency", "idempotencyKey");
+        return client;
+    }
+
+    @Test
+    public void putEntity_shouldCreateABeanOncePerIdempotencyKey() {
+        InMemoryDynamoDbAsyncClient client = idempotentClient();
+        DynamoDBHandler dbHandler = new DynamoDBHandler(client);
+
+        Entity created = dbHandler.putEntity(new BaseEntity("bean", 7), "key-1", deadline()).join();
+        Entity replayed = dbHandler.putEntity(new BaseEntity("bean", 7), "key-1", deadline()).join();
+        // another container has nothing cached and learns of the bean from the canceled transaction
+        Entity replayedElsewhere = new DynamoDBHandler(client).putEntity(new BaseEntity("bean", 7), "key-1", deadline()).join();
+
+        assertEquals(created.getId(), replayed.getId());
+        assertEquals(created.getId(), replayedElsewhere.getId());
+        assertEquals(created.getVersion(), replayedElsewhere.getVersion());
+        assertEquals(1, client.itemCount("AppnameBeans"));
+        assertEquals(1, client.itemCount("AppnameIdempotency"));
+
+        dbHandler.putEntity(new BaseEntity("bean", 7), "key-2", deadline()).join();
+        assertEquals(2, client.itemCount("AppnameBeans"));
+    }
+
+    @Test
+    public void putEntity_shouldRejectAnIdempotencyKeyReusedWithAnotherBody() {
+        InMemoryDynamoDbAsyncClient client = idempotentClient();
+        DynamoDBHandler dbHandler = new DynamoDBHandler(client);
+
+        dbHandler.putEntity(new BaseEntity("bean", 7), "key-1", deadline()).join();
+
+        // checked against the cached bean, and against the record the canceled transaction returns
+        for (DynamoDBHandler replayingHandler : List.of(dbHandler, new DynamoDBHandler(client))) {
+            CompletionException thrown = assertThrows(CompletionException.class,
+                    () -> replayingHandler.putEntity(new BaseEntity("bean", 8), "key-1", deadline()).join());
+            assertInstanceOf(ValidationException.class, AsyncUtils.unwrap(thrown));
+        }
+
+        assertEquals(1, client.itemCount("AppnameBeans"));
+    }
+
+    // The names the surefire configuration gives QUANTITY_INDEX_NAME and DESCRIPTION_INDEX_NAME
+    private static InMemoryDynamoDbAsyncClient indexedClient() {
+        InMemoryDynamoDbAsyncClient client = new InMemoryDynamoDbAsyncClient();
+        client.createIndex("AppnameBeans", "QuantityIndex", "indexShard", "quantity");
+        client.createIndex("AppnameBeans", "DescriptionIndex", "indexShard", "description");
+        return client;
+    }
+
+    // Follows a listing from its first page to the end, checking no bean comes back twice or more than limit at once
+    private static Set<Integer> listQuantities(DynamoDBHandler dbHandler, int limit, Map<String, String> filter) {
+        Set<Integer> quantities = new HashSet<>();
+        String nextToken = null;
+
+        do {
+            EntityPage page = dbHandler.listEntities(limit, nextToken, EntityFilter.parse(filter), FieldSelection.ALL, deadline()).join();
+            assertTrue(page.getItems().size() <= limit);
+
+            for (Entity entity : page.getItems()) {
+                assertTrue(quantities.add(entity.getQuantity()));
+            }
+
+            nextToken = page.getNextToken();
+        } while (nextToken != null);
+
+        return quantities;
+    }
+
+    @Test
+    public void listEntities_shouldQueryEveryIndexShard() {
+        InMemoryDynamoDbAsyncClient client = indexedClient();
+        DynamoDBHandler dbHandler = new DynamoDBHandler(client);
+        Set<Integer> shards = new HashSet<>();
+
+        for (int quantity = 0; quantity < 40; quantity++) {
+            Entity bean = dbHandler.putEntity(new BaseEntity((quantity % 2 == 0 ? "even " : "odd ") + quantity, quantity), deadline()).join();
+            shards.add(Integer.parseInt(EntityUtils.getIndexShard(bean.getId()).n()));
+        }
+
+        assertEquals(EntityUtils.INDEX_SHARDS, shards.size());
+
+        Set<Integer> between = new HashSet<>();
+        Set<Integer> even = new HashSet<>();
+
+        for (int quantity = 0; quantity < 40; quantity++) {
+            if (quantity >= 10 && quantity <= 29) {
+                between.add(quantity);
+            }
+
+            if (quantity % 2 == 0) {
+                even.add(quantity);
+            }
+        }
+
+        // limits above, below and equal to the number of shards
+        for (int limit : List.of(7, 2, EntityUtils.INDEX_SHARDS)) {
+            assertEquals(between, listQuantities(dbHandler, limit, Map.of("minQuantity", "10", "maxQuantity", "29")));
+            assertEquals(even, listQuantities(dbHandler, limit, Map.of("descriptionPrefix", "even")));
+        }
+    }
+
+    @Test
+    public void listEntities_shouldRejectTokensOfAnotherListing() {
+        InMemoryDynamoDbAsyncClient client = indexedClient();
+        DynamoDBHandler dbHandler = new DynamoDBHandler(client);
+
+        for (int quantity = 0; quantity < 10; quantity++) {
+            dbHandler.putEntity(new BaseEntity("bean", quantity), deadline()).join();
+        }
+
+        String scanToken = dbHandler.listEntities(2, null, EntityFilter.NONE, FieldSelection.ALL, deadline()).join().getNextToken();
+        String quantityToken = dbHandler.listEntities(2, null, EntityFilter.parse(Map.of("minQuantity", "0")), FieldSelection.ALL, deadline())
+                .join().getNextToken();
+
+        CompletionException thrown = assertThrows(CompletionException.class, () -> dbHandler.listEntities(2, scanToken,
+                EntityFilter.parse(Map.of("minQuantity", "0")), FieldSelection.ALL, deadline()).join());
+        assertInstanceOf(IllegalArgumentException.class, AsyncUtils.unwrap(thrown));
+
+        thrown = assertThrows(CompletionException.class, () -> dbHandler.listEntities(2, quantityToken,
+                EntityFilter.parse(Map.of("descriptionPrefix", "b")), FieldSelection.ALL, deadline()).join());
+        assertInstanceOf(IllegalArgumentException.class, AsyncUtils.unwrap(thrown));
+    }
+
+    @Test
+    public void backfillIndexKeys_shouldAddEveryOlderBeanToTheIndexes() {
+        InMemoryDynamoDbAsyncClient client = indexedClient();
+        DynamoDBHandler dbHandler = new DynamoDBHandler(client);
+
+        // beans as written before indexShard, some with the entityType key of the unsharded indexes
+        for (int quantity = 0; quantity < 150; quantity++) {
+            Map<String, AttributeValue> item = new HashMap<>(EntityUtils.getItemValues(new Entity(new BaseEntity("old", quantity))));
+            item.remove("indexShard");
+
+            if (quantity % 2 == 0) {
+                item.put("entityType", AttributeValue.builder().s("BEAN").build());
+            }
+
+            client.putItem(PutItemRequest.builder().tableName("AppnameBeans").item(item).build()).join();
+        }
+
+        for (int quantity = 150; quantity < 160; quantity++) {
+            dbHandler.putEntity(new BaseEntity("new", quantity), deadline()).join();
+        }
+
+        assertEquals(10, listQuantities(dbHandler, 50, Map.of("minQuantity", "0")).size());
+
+        int backfilled = 0;
+        String nextToken = null;
+
+        do {
+            EntityPage page = dbHandler.backfillIndexKeys(nextToken, deadline()).join();
+            backfilled += page.getItems().size();
+            nextToken = page.getNextToken();
+        } while (nextToken != null);
+
+        assertEquals(150, backfilled);
+        assertEquals(160, listQuantities(dbHandler, 50, Map.of("minQuantity", "0")).size());
+        assertEquals(0, dbHandler.backfillIndexKeys(null, deadline()).join().getItems().size());
+    }
+}
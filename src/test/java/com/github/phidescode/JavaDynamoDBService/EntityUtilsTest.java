@@ -0,0 +1,221 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+public class EntityUtilsTest {
+
+    private static List<String> fieldErrors(String requestBody) {
+        ValidationException e = assertThrows(ValidationException.class, () -> EntityUtils.validateRequestBody(requestBody));
+
+        return e.getFieldErrors().stream().map(fieldError -> fieldError.getField() + " " + fieldError.getMessage()).toList();
+    }
+
+    @Test
+    public void validateRequestBody_shouldReadAValidBean() {
+        BaseEntity entity = EntityUtils.validateRequestBody("{\"description\": \"arabica\", \"quantity\": 12}");
+
+        assertEquals("arabica", entity.getDescription());
+        assertEquals(12, entity.getQuantity());
+    }
+
+    @Test
+    public void validateRequestBody_shouldStoreAnEmptyDescriptionAsNoAttribute() {
+        BaseEntity entity = EntityUtils.validateRequestBody("{\"description\": \"\", \"quantity\": 12}");
+
+        assertEquals("", entity.getDescription());
+        assertFalse(EntityUtils.getItemValues(new Entity("id", entity)).containsKey("description"));
+        assertFalse(EntityUtils.getUpdatedValues("id", entity).containsKey(":description"));
+        assertTrue(EntityUtils.getUpdateExpression(entity).contains("REMOVE #description"));
+    }
+
+    @Test
+    public void validateRequestBody_shouldReportEveryFieldErrorAtOnce() {
+        assertEquals(List.of("description must be a string", "quantity must be a non-negative integer", "color is not a known field"),
+                fieldErrors("{\"description\": 5, \"quantity\": -1, \"color\": \"brown\"}"));
+    }
+
+    @Test
+    public void validateRequestBody_shouldRequireBothFields() {
+        assertEquals(List.of("description is required", "quantity is required"), fieldErrors("{}"));
+    }
+
+    @Test
+    public void validateRequestBody_shouldRejectDuplicatedFields() {
+        assertEquals(List.of("quantity is duplicated"), fieldErrors("{\"description\": \"a\", \"quantity\": 1, \"quantity\": 2}"));
+    }
+
+    @Test
+    public void validateRequestBody_shouldRejectQuantitiesOutsideInt() {
+        assertEquals(List.of("quantity must be an integer"), fieldErrors("{\"description\": \"a\", \"quantity\": 3000000000}"));
+        assertEquals(List.of("quantity must be an integer"), fieldErrors("{\"description\": \"a\", \"quantity\": 1.5}"));
+    }
+
+    @Test
+    public void validateRequestBody_shouldLimitDescriptionsInBytes() {
+        // 400 characters, but 1200 bytes in UTF-8
+        String description = "€".repeat(400);
+
+        assertEquals(List.of("description must be at most 1024 bytes"),
+                fieldErrors("{\"description\": \"" + description + "\", \"quantity\": 1}"));
+    }
+
+    @Test
+    public void validateRequestBody_shouldRejectContentAfterTheObject() {
+        assertEquals(List.of("$ unexpected content after the JSON object"), fieldErrors("{\"description\": \"a\", \"quantity\": 1} {}"));
+    }
+
+    @Test
+    public void validateRequestBody_shouldRejectMalformedAndMissingBodies() {
+        assertEquals("$", fieldErrors("{\"description\": ").get(0).split(" ")[0]);
+        assertEquals(List.of("$ must be a JSON object"), fieldErrors("[1, 2]"));
+        assertEquals(List.of("$ request body is required"), fieldErrors(""));
+        assertEquals(List.of("$ request body exceeds " + EntityUtils.MAX_REQUEST_BODY_LENGTH + " characters"),
+                fieldErrors(" ".repeat(EntityUtils.MAX_REQUEST_BODY_LENGTH + 1)));
+    }
+
+    @Test
+    public void readBaseEntity_shouldLeaveTheParserOnTheEndOfEachObject() throws IOException {
+        String array = "[{\"description\": \"a\", \"quantity\": 1, \"nested\": {\"x\": [1]}}, {\"description\": \"b\", \"quantity\": 2}]";
+
+        try (JsonParser parser = new JsonFactory().createParser(array)) {
+            assertEquals(JsonToken.START_ARRAY, parser.nextToken());
+
+            parser.nextToken();
+            assertThrows(ValidationException.class, () -> EntityUtils.readBaseEntity(parser));
+            assertEquals(JsonToken.END_OBJECT, parser.currentToken());
+
+            parser.nextToken();
+            assertEquals("b", EntityUtils.readBaseEntity(parser).getDescription());
+            assertEquals(JsonToken.END_OBJECT, parser.currentToken());
+
+            assertEquals(JsonToken.END_ARRAY, parser.nextToken());
+        }
+    }
+
+    @Test
+    public void readBaseEntity_shouldSkipValuesThatAreNotObjects() throws IOException {
+        try (JsonParser parser = new JsonFactory().createParser("[[1, 2], {\"description\": \"b\", \"quantity\": 2}]")) {
+            parser.nextToken();
+            parser.nextToken();
+
+            assertThrows(ValidationException.class, () -> EntityUtils.readBaseEntity(parser));
+
+            parser.nextToken();
+            assertEquals(2, EntityUtils.readBaseEntity(parser).getQuantity());
+        }
+    }
+
+    private static String base64(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void encodePageToken_shouldRoundTripStringNumberAndMapKeys() {
+        Map<String, AttributeValue> lastEvaluatedKey = Map.of(
+                "id", AttributeValue.builder().s("a/b+c=").build(),
+                "quantity", AttributeValue.builder().n("42").build(),
+                "0", AttributeValue.builder().m(Map.of("id", AttributeValue.builder().s("x").build())).build());
+
+        String token = EntityUtils.encodePageToken(lastEvaluatedKey);
+
+        assertEquals(lastEvaluatedKey, EntityUtils.decodePageToken(token));
+        // safe to pass in a query string as it is
+        assertEquals(token, URLEncoder.encode(token, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void encodePageToken_shouldReturnNullAtTheEnd() {
+        assertNull(EntityUtils.encodePageToken(null));
+        assertNull(EntityUtils.encodePageToken(Map.of()));
+        assertNull(EntityUtils.decodePageToken(null));
+        assertNull(EntityUtils.decodePageToken(""));
+    }
+
+    @Test
+    public void decodePageToken_shouldRejectTokensItDidNotWrite() {
+        assertThrows(IllegalArgumentException.class, () -> EntityUtils.decodePageToken("not base64!"));
+        assertThrows(IllegalArgumentException.class, () -> EntityUtils.decodePageToken(base64("not json")));
+        assertThrows(IllegalArgumentException.class, () -> EntityUtils.decodePageToken(base64("{}")));
+        assertThrows(IllegalArgumentException.class, () -> EntityUtils.decodePageToken(base64("{\"id\": {\"B\": \"AA==\"}}")));
+        assertThrows(IllegalArgumentException.class, () -> EntityUtils.decodePageToken(base64("{\"id\": {\"M\": {}}}")));
+    }
+
+    @Test
+    public void getETag_shouldNameTheVersionFieldsFormatAndEncoding() {
+        Entity entity = new Entity("id", new BaseEntity("a", 1), 3);
+
+        assertEquals("\"3\"", EntityUtils.getETag(entity, FieldSelection.ALL, WireFormat.JSON, null));
+        assertEquals("\"3-gzip\"", EntityUtils.getETag(entity, FieldSelection.ALL, WireFormat.JSON, "gzip"));
+        assertEquals("\"3-cbor-gzip\"", EntityUtils.getETag(entity, FieldSelection.ALL, WireFormat.CBOR, "gzip"));
+        assertEquals("\"3-quantity-cbor\"", EntityUtils.getETag(entity, FieldSelection.ID_AND_QUANTITY, WireFormat.CBOR, null));
+        assertEquals("\"3-id\"", EntityUtils.getETag(entity, FieldSelection.parse("id"), WireFormat.JSON, null));
+        assertEquals("\"3\"", EntityUtils.getETag(entity, FieldSelection.parse("id,description,quantity"), WireFormat.JSON, null));
+    }
+
+    @Test
+    public void parseIfMatch_shouldReadTheVersionOfAnyRepresentation() {
+        assertNull(EntityUtils.parseIfMatch(null));
+        assertNull(EntityUtils.parseIfMatch(" * "));
+        assertEquals(3, EntityUtils.parseIfMatch("\"3\""));
+        assertEquals(3, EntityUtils.parseIfMatch("\"3-cbor-gzip\""));
+        assertEquals(3, EntityUtils.parseIfMatch("\"3-quantity\""));
+    }
+
+    @Test
+    public void parseIfMatch_shouldRejectTagsThisApiDoesNotSend() {
+        for (String ifMatch : List.of("W/\"3\"", "3", "\"x\"", "\"-1\"", "\"\"", "\"3\", \"4\"")) {
+            assertThrows(ValidationException.class, () -> EntityUtils.parseIfMatch(ifMatch));
+        }
+    }
+
+    @Test
+    public void matchesIfNoneMatch_shouldCompareEveryListedTagWeakly() {
+        assertFalse(EntityUtils.matchesIfNoneMatch(null, "\"3\""));
+        assertTrue(EntityUtils.matchesIfNoneMatch("*", "\"3\""));
+        assertTrue(EntityUtils.matchesIfNoneMatch("\"2\", \"3\"", "\"3\""));
+        assertTrue(EntityUtils.matchesIfNoneMatch("W/\"3\"", "\"3\""));
+        assertFalse(EntityUtils.matchesIfNoneMatch("\"3\"", "\"3-gzip\""));
+    }
+
+    private static List<String> deltaErrors(String requestBody) {
+        ValidationException e = assertThrows(ValidationException.class, () -> EntityUtils.validateQuantityDelta(RequestBody.json(requestBody)));
+
+        return e.getFieldErrors().stream().map(fieldError -> fieldError.getField() + " " + fieldError.getMessage()).toList();
+    }
+
+    @Test
+    public void validateQuantityDelta_shouldReadANonZeroInteger() {
+        assertEquals(5, EntityUtils.validateQuantityDelta(RequestBody.json("{\"delta\": 5}")));
+        assertEquals(-3, EntityUtils.validateQuantityDelta(RequestBody.json("{\"delta\": -3}")));
+    }
+
+    @Test
+    public void validateQuantityDelta_shouldRejectInvalidDeltas() {
+        assertEquals(List.of("delta must not be zero"), deltaErrors("{\"delta\": 0}"));
+        assertEquals(List.of("delta is required"), deltaErrors("{}"));
+        assertEquals(List.of("delta must be an integer"), deltaErrors("{\"delta\": \"5\"}"));
+        assertEquals(List.of("delta must be an integer"), deltaErrors("{\"delta\": 3000000000}"));
+        assertEquals(List.of("quantity is not a known field", "delta is required"), deltaErrors("{\"quantity\": 5}"));
+        assertEquals(List.of("delta is duplicated"), deltaErrors("{\"delta\": 1, \"delta\": 2}"));
+        assertEquals(List.of("$ request body is required"), deltaErrors(""));
+    }
+}
@@ -0,0 +1,390 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+
+/**
+ * A small interpreter for the DynamoDB expression language, covering what the service sends: condition,
+ * filter and key-condition expressions (comparisons, BETWEEN, IN, AND/OR/NOT, attribute_exists,
+ * attribute_not_exists, begins_with, contains), update expressions (SET with + and - and if_not_exists,
+ * ADD, REMOVE) and projection expressions. Only top-level attributes are supported.
+ */
+public class Expressions {
+
+    private final List<String> tokens;
+    private final Map<String, String> names;
+    private final Map<String, AttributeValue> values;
+    private int position;
+
+    private Expressions(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+        this.tokens = tokenize(expression);
+        this.names = names == null ? Map.of() : names;
+        this.values = values == null ? Map.of() : values;
+    }
+
+    public static boolean evaluate(String expression, Map<String, AttributeValue> item, Map<String, String> names, Map<String, AttributeValue> values) {
+        if (expression == null || expression.isBlank()) {
+            return true;
+        }
+
+        Expressions parser = new Expressions(expression, names, values);
+        boolean result = parser.parseOr(item == null ? Map.of() : item);
+        parser.expectEnd();
+
+        return result;
+    }
+
+    public static Map<String, AttributeValue> update(String expression, Map<String, AttributeValue> item, Map<String, String> names, Map<String, AttributeValue> values) {
+        Expressions parser = new Expressions(expression, names, values);
+        Map<String, AttributeValue> original = item == null ? Map.of() : item;
+        Map<String, AttributeValue> updated = new HashMap<>(original);
+
+        while (!parser.atEnd()) {
+            String clause = parser.next().toUpperCase(Locale.ROOT);
+
+            do {
+                String path = parser.parsePath();
+
+                switch (clause) {
+                    case "SET" -> {
+                        parser.expect("=");
+                        updated.put(path, parser.parseOperand(original, true));
+                    }
+                    case "ADD" -> {
+                        AttributeValue delta = parser.parseOperand(original, false);
+                        AttributeValue current = updated.get(path);
+                        updated.put(path, current == null ? delta : number(toNumber(current).add(toNumber(delta))));
+                    }
+                    case "REMOVE" ->
+                        updated.remove(path);
+                    default ->
+                        throw validation("Unsupported update clause: " + clause);
+                }
+            } while (parser.accept(","));
+        }
+
+        return updated;
+    }
+
+    public static Map<String, AttributeValue> project(String expression, Map<String, AttributeValue> item, Map<String, String> names) {
+        if (expression == null || expression.isBlank()) {
+            return item;
+        }
+
+        Expressions parser = new Expressions(expression, names, null);
+        Map<String, AttributeValue> projected = new HashMap<>();
+
+        do {
+            String path = parser.parsePath();
+            if (item.containsKey(path)) {
+                projected.put(path, item.get(path));
+            }
+        } while (parser.accept(","));
+
+        parser.expectEnd();
+
+        return projected;
+    }
+
+    public static int compare(AttributeValue left, AttributeValue right) {
+        if (left.n() != null && right.n() != null) {
+            return toNumber(left).compareTo(toNumber(right));
+        }
+
+        if (left.s() != null && right.s() != null) {
+            return left.s().compareTo(right.s());
+        }
+
+        throw validation("Cannot compare values of different types");
+    }
+
+    private boolean parseOr(Map<String, AttributeValue> item) {
+        boolean result = parseAnd(item);
+
+        while (acceptKeyword("OR")) {
+            result |= parseAnd(item);
+        }
+
+        return result;
+    }
+
+    private boolean parseAnd(Map<String, AttributeValue> item) {
+        boolean result = parseNot(item);
+
+        while (acceptKeyword("AND")) {
+            result &= parseNot(item);
+        }
+
+        return result;
+    }
+
+    private boolean parseNot(Map<String, AttributeValue> item) {
+        if (acceptKeyword("NOT")) {
+            return !parseNot(item);
+        }
+
+        return parsePredicate(item);
+    }
+
+    private boolean parsePredicate(Map<String, AttributeValue> item) {
+        if (accept("(")) {
+            boolean result = parseOr(item);
+            expect(")");
+            return result;
+        }
+
+        String function = peek().toLowerCase(Locale.ROOT);
+
+        switch (function) {
+            case "attribute_exists", "attribute_not_exists" -> {
+                next();
+                expect("(");
+                String path = parsePath();
+                expect(")");
+                return item.containsKey(path) == "attribute_exists".equals(function);
+            }
+            case "begins_with", "contains" -> {
+                next();
+                expect("(");
+                AttributeValue subject = parseOperand(item, false);
+                expect(",");
+                AttributeValue operand = parseOperand(item, false);
+                expect(")");
+
+                if (subject == null || subject.s() == null || operand == null || operand.s() == null) {
+                    return false;
+                }
+
+                return "begins_with".equals(function) ? subject.s().startsWith(operand.s()) : subject.s().contains(operand.s());
+            }
+            default -> {
+                AttributeValue left = parseOperand(item, false);
+
+                if (acceptKeyword("BETWEEN")) {
+                    AttributeValue low = parseOperand(item, false);
+                    expectKeyword("AND");
+                    AttributeValue high = parseOperand(item, false);
+                    return left != null && compare(left, low) >= 0 && compare(left, high) <= 0;
+                }
+
+                if (acceptKeyword("IN")) {
+                    expect("(");
+                    boolean found = false;
+                    do {
+                        AttributeValue candidate = parseOperand(item, false);
+                        found |= left != null && left.equals(candidate);
+                    } while (accept(","));
+                    expect(")");
+                    return found;
+                }
+
+                String comparator = next();
+                AttributeValue right = parseOperand(item, false);
+
+                if (left == null || right == null) {
+                    return "<>".equals(comparator) && left != right;
+                }
+
+                boolean comparable = (left.n() != null && right.n() != null) || (left.s() != null && right.s() != null);
+
+                if (!comparable) {
+                    return switch (comparator) {
+                        case "=" ->
+                            left.equals(right);
+                        case "<>" ->
+                            !left.equals(right);
+                        default ->
+                            false;
+                    };
+                }
+
+                return switch (comparator) {
+                    case "=" ->
+                        compare(left, right) == 0;
+                    case "<>" ->
+                        compare(left, right) != 0;
+                    case "<" ->
+                        compare(left, right) < 0;
+                    case "<=" ->
+                        compare(left, right) <= 0;
+                    case ">" ->
+                        compare(left, right) > 0;
+                    case ">=" ->
+                        compare(left, right) >= 0;
+                    default ->
+                        throw validation("Unsupported comparator: " + comparator);
+                };
+            }
+        }
+    }
+
+    // Operands resolve against the item as it was before the update; arithmetic is only allowed in SET
+    private AttributeValue parseOperand(Map<String, AttributeValue> item, boolean allowArithmetic) {
+        AttributeValue result = parseTerm(item);
+
+        while (allowArithmetic && (peekIs("+") || peekIs("-"))) {
+            boolean add = "+".equals(next());
+            AttributeValue term = parseTerm(item);
+
+            if (result == null || term == null) {
+                throw validation("An operand in the update expression does not exist");
+            }
+
+            result = number(add ? toNumber(result).add(toNumber(term)) : toNumber(result).subtract(toNumber(term)));
+        }
+
+        return result;
+    }
+
+    private AttributeValue parseTerm(Map<String, AttributeValue> item) {
+        String token = peek();
+
+        if (token.startsWith(":")) {
+            next();
+            AttributeValue value = values.get(token);
+            if (value == null) {
+                throw validation("Missing expression attribute value " + token);
+            }
+            return value;
+        }
+
+        if ("if_not_exists".equalsIgnoreCase(token)) {
+            next();
+            expect("(");
+            String path = parsePath();
+            expect(",");
+            AttributeValue fallback = parseOperand(item, false);
+            expect(")");
+            return item.containsKey(path) ? item.get(path) : fallback;
+        }
+
+        return item.get(parsePath());
+    }
+
+    private String parsePath() {
+        String token = next();
+
+        if (token.startsWith("#")) {
+            String name = names.get(token);
+            if (name == null) {
+                throw validation("Missing expression attribute name " + token);
+            }
+            return name;
+        }
+
+        if (!Character.isLetter(token.charAt(0))) {
+            throw validation("Expected an attribute name but found " + token);
+        }
+
+        return token;
+    }
+
+    private static List<String> tokenize(String expression) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+
+        while (i < expression.length()) {
+            char c = expression.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (Character.isLetterOrDigit(c) || c == '#' || c == ':' || c == '_') {
+                int start = i++;
+                while (i < expression.length() && (Character.isLetterOrDigit(expression.charAt(i)) || expression.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(expression.substring(start, i));
+            } else if ((c == '<' || c == '>') && i + 1 < expression.length() && (expression.charAt(i + 1) == '=' || expression.charAt(i + 1) == '>')) {
+                tokens.add(expression.substring(i, i + 2));
+                i += 2;
+            } else if ("=<>(),+-".indexOf(c) >= 0) {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else {
+                throw validation("Unexpected character '" + c + "' in expression: " + expression);
+            }
+        }
+
+        return tokens;
+    }
+
+    private boolean atEnd() {
+        return position >= tokens.size();
+    }
+
+    private String peek() {
+        if (atEnd()) {
+            throw validation("Unexpected end of expression");
+        }
+        return tokens.get(position);
+    }
+
+    private boolean peekIs(String token) {
+        return !atEnd() && tokens.get(position).equals(token);
+    }
+
+    private String next() {
+        String token = peek();
+        position++;
+        return token;
+    }
+
+    private boolean accept(String token) {
+        if (peekIs(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean acceptKeyword(String keyword) {
+        if (!atEnd() && tokens.get(position).equalsIgnoreCase(keyword)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw validation("Expected '" + token + "' in expression");
+        }
+    }
+
+    private void expectKeyword(String keyword) {
+        if (!acceptKeyword(keyword)) {
+            throw validation("Expected " + keyword + " in expression");
+        }
+    }
+
+    private void expectEnd() {
+        if (!atEnd()) {
+            throw validation("Unexpected token '" + tokens.get(position) + "' in expression");
+        }
+    }
+
+    private static BigDecimal toNumber(AttributeValue value) {
+        if (value.n() == null) {
+            throw validation("Expected a number");
+        }
+        return new BigDecimal(value.n());
+    }
+
+    private static AttributeValue number(BigDecimal value) {
+        return AttributeValue.builder().n(value.stripTrailingZeros().toPlainString()).build();
+    }
+
+    private static DynamoDbException validation(String message) {
+        return (DynamoDbException) DynamoDbException.builder()
+                .message(message)
+                .statusCode(400)
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class HedgePolicyTest {
+
+    private static void recordMillis(HedgePolicy policy, long fromMillis, long toMillis) {
+        for (long millis = fromMillis; millis <= toMillis; millis++) {
+            policy.record(millis * 1_000_000);
+        }
+    }
+
+    @Test
+    public void nextDelayMillis_shouldNotHedgeBeforeEnoughSamples() {
+        HedgePolicy policy = new HedgePolicy(95, 1, 0);
+
+        recordMillis(policy, 1, 99);
+
+        assertEquals(-1, policy.nextDelayMillis());
+    }
+
+    @Test
+    public void nextDelayMillis_shouldFollowThePercentileOfRecentLatencies() {
+        HedgePolicy policy = new HedgePolicy(95, 1, 0);
+
+        recordMillis(policy, 1, 128);
+
+        assertEquals(122, policy.nextDelayMillis());
+    }
+
+    @Test
+    public void nextDelayMillis_shouldNotGoBelowTheMinimumDelay() {
+        HedgePolicy policy = new HedgePolicy(95, 1, 200);
+
+        recordMillis(policy, 1, 128);
+
+        assertEquals(200, policy.nextDelayMillis());
+    }
+
+    @Test
+    public void nextDelayMillis_shouldNotHedgeWhenDisabled() {
+        HedgePolicy policy = new HedgePolicy(95, 0, 0);
+
+        recordMillis(policy, 1, 128);
+
+        assertFalse(policy.isEnabled());
+        assertEquals(-1, policy.nextDelayMillis());
+    }
+
+    @Test
+    public void tryAcquire_shouldAllowAtMostTheMaxRateOfReads() {
+        HedgePolicy policy = new HedgePolicy(95, 0.25, 0);
+
+        for (int read = 0; read < 3; read++) {
+            policy.nextDelayMillis();
+        }
+
+        assertFalse(policy.tryAcquire());
+
+        policy.nextDelayMillis();
+
+        assertTrue(policy.tryAcquire());
+        assertFalse(policy.tryAcquire());
+    }
+}
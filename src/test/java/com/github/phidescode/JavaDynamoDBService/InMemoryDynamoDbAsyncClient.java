@@ -0,0 +1,608 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableRequest;
+import software.amazon.awssdk.services.dynamodb.model.DescribeTableResponse;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryResponse;
+import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValuesOnConditionCheckFailure;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.ScanResponse;
+import software.amazon.awssdk.services.dynamodb.model.TableDescription;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsResponse;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemResponse;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+/**
+ * An in-process, in-memory stand-in for DynamoDB that implements the operations the service uses, for unit tests
+ * and for end-to-end measurements without AWS. Every call can be delayed by a fixed latency plus random jitter, and a configurable
+ * fraction of calls is throttled: single-item calls fail with ProvisionedThroughputExceededException, batch calls
+ * return part of their work as unprocessed. Tables are created on first use, keyed by "id" unless registered
+ * otherwise with createTable; secondary indexes for Query are registered with createIndex. Time to live is not
+ * enforced.
+ */
+public class InMemoryDynamoDbAsyncClient implements DynamoDbAsyncClient {
+
+    private static final double READ_UNITS = 0.5;
+    private static final double WRITE_UNITS = 1.0;
+    // scans are charged by the total size read rather than per item: about 40 small items per 4KB read unit
+    private static final int ITEMS_PER_READ_UNIT = 40;
+
+    private final Map<String, Table> tables = new ConcurrentHashMap<>();
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double throttleRate;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong throttles = new AtomicLong();
+
+    public InMemoryDynamoDbAsyncClient(long latencyMillis, long jitterMillis, double throttleRate) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.throttleRate = throttleRate;
+    }
+
+    public InMemoryDynamoDbAsyncClient() {
+        this(0, 0, 0);
+    }
+
+    public void createTable(String tableName, String hashKey) {
+        tables.put(tableName, new Table(hashKey));
+    }
+
+    // Global secondary indexes project all attributes; items without both index keys are left out of the index
+    public void createIndex(String tableName, String indexName, String partitionKey, String sortKey) {
+        table(tableName).indexes.put(indexName, new Index(partitionKey, sortKey));
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getThrottles() {
+        return throttles.get();
+    }
+
+    public int itemCount(String tableName) {
+        return table(tableName).items.size();
+    }
+
+    @Override
+    public CompletableFuture<GetItemResponse> getItem(GetItemRequest request) {
+        return call(true, () -> {
+            Table table = table(request.tableName());
+            Map<String, AttributeValue> item = table.items.get(table.key(request.key()));
+
+            GetItemResponse.Builder response = GetItemResponse.builder()
+                    .consumedCapacity(capacity(request.returnConsumedCapacity(), request.tableName(), READ_UNITS));
+            if (item != null) {
+                response.item(Expressions.project(request.projectionExpression(), item, request.expressionAttributeNames()));
+            }
+            return response.build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<PutItemResponse> putItem(PutItemRequest request) {
+        return call(true, () -> {
+            Table table = table(request.tableName());
+            String key = table.key(request.item());
+
+            synchronized (table) {
+                Map<String, AttributeValue> existing = table.items.get(key);
+                checkCondition(request.conditionExpression(), existing, request.expressionAttributeNames(),
+                        request.expressionAttributeValues(), request.returnValuesOnConditionCheckFailure());
+
+                table.items.put(key, new HashMap<>(request.item()));
+
+                PutItemResponse.Builder response = PutItemResponse.builder()
+                        .consumedCapacity(capacity(request.returnConsumedCapacity(), request.tableName(), WRITE_UNITS));
+                if (request.returnValues() == ReturnValue.ALL_OLD && existing != null) {
+                    response.attributes(existing);
+                }
+                return response.build();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<UpdateItemResponse> updateItem(UpdateItemRequest request) {
+        return call(true, () -> {
+            Table table = table(request.tableName());
+            String key = table.key(request.key());
+
+            synchronized (table) {
+                Map<String, AttributeValue> existing = table.items.get(key);
+                checkCondition(request.conditionExpression(), existing, request.expressionAttributeNames(),
+                        request.expressionAttributeValues(), request.returnValuesOnConditionCheckFailure());
+
+                Map<String, AttributeValue> base = existing == null ? new HashMap<>(request.key()) : existing;
+                Map<String, AttributeValue> updated = Expressions.update(request.updateExpression(), base,
+                        request.expressionAttributeNames(), request.expressionAttributeValues());
+                table.items.put(key, updated);
+
+                UpdateItemResponse.Builder response = UpdateItemResponse.builder()
+                        .consumedCapacity(capacity(request.returnConsumedCapacity(), request.tableName(), WRITE_UNITS));
+                ReturnValue returnValue = request.returnValues();
+
+                if (returnValue == ReturnValue.ALL_NEW) {
+                    response.attributes(updated);
+                } else if (returnValue == ReturnValue.ALL_OLD && existing != null) {
+                    response.attributes(existing);
+                } else if (returnValue == ReturnValue.UPDATED_NEW || returnValue == ReturnValue.UPDATED_OLD) {
+                    Map<String, AttributeValue> changed = new HashMap<>();
+                    Map<String, AttributeValue> source = returnValue == ReturnValue.UPDATED_NEW ? updated : base;
+                    for (Map.Entry<String, AttributeValue> attribute : updated.entrySet()) {
+                        if (!attribute.getValue().equals(base.get(attribute.getKey())) && source.containsKey(attribute.getKey())) {
+                            changed.put(attribute.getKey(), source.get(attribute.getKey()));
+                        }
+                    }
+                    response.attributes(changed);
+                }
+                return response.build();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<DeleteItemResponse> deleteItem(DeleteItemRequest request) {
+        return call(true, () -> {
+            Table table = table(request.tableName());
+            String key = table.key(request.key());
+
+            synchronized (table) {
+                Map<String, AttributeValue> existing = table.items.get(key);
+                checkCondition(request.conditionExpression(), existing, request.expressionAttributeNames(),
+                        request.expressionAttributeValues(), request.returnValuesOnConditionCheckFailure());
+
+                table.items.remove(key);
+
+                DeleteItemResponse.Builder response = DeleteItemResponse.builder()
+                        .consumedCapacity(capacity(request.returnConsumedCapacity(), request.tableName(), WRITE_UNITS));
+                if (request.returnValues() == ReturnValue.ALL_OLD && existing != null) {
+                    response.attributes(existing);
+                }
+                return response.build();
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<ScanResponse> scan(ScanRequest request) {
+        return call(true, () -> {
+            Table table = table(request.tableName());
+            NavigableMap<String, Map<String, AttributeValue>> remaining = request.exclusiveStartKey().isEmpty()
+                    ? table.items
+                    : table.items.tailMap(table.key(request.exclusiveStartKey()), false);
+            int limit = request.limit() == null ? Integer.MAX_VALUE : request.limit();
+
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+            int scanned = 0;
+            String lastKey = null;
+
+            for (Map.Entry<String, Map<String, AttributeValue>> entry : remaining.entrySet()) {
+                if (scanned == limit) {
+                    break;
+                }
+
+                if (request.totalSegments() != null && Math.floorMod(entry.getKey().hashCode(), request.totalSegments()) != request.segment()) {
+                    continue;
+                }
+
+                scanned++;
+                lastKey = entry.getKey();
+
+                Map<String, AttributeValue> item = entry.getValue();
+                if (Expressions.evaluate(request.filterExpression(), item, request.expressionAttributeNames(), request.expressionAttributeValues())) {
+                    items.add(Expressions.project(request.projectionExpression(), item, request.expressionAttributeNames()));
+                }
+            }
+
+            ScanResponse.Builder response = ScanResponse.builder()
+                    .items(items)
+                    .count(items.size())
+                    .scannedCount(scanned)
+                    .consumedCapacity(capacity(request.returnConsumedCapacity(), request.tableName(), Math.max(1, (scanned + ITEMS_PER_READ_UNIT - 1) / ITEMS_PER_READ_UNIT) * READ_UNITS));
+
+            if (lastKey != null && scanned == limit && remaining.higherKey(lastKey) != null) {
+                response.lastEvaluatedKey(table.keyOf(table.items.get(lastKey)));
+            }
+            return response.build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<QueryResponse> query(QueryRequest request) {
+        return call(true, () -> {
+            Table table = table(request.tableName());
+            Index index = request.indexName() == null ? new Index(table.hashKey, null) : table.indexes.get(request.indexName());
+
+            if (index == null) {
+                throw ResourceNotFoundException.builder()
+                        .message("Requested resource not found: index " + request.indexName())
+                        .statusCode(400)
+                        .build();
+            }
+
+            // the items in the key condition's partition and sort key range, in index order
+            List<Map<String, AttributeValue>> matches = new ArrayList<>();
+            for (Map<String, AttributeValue> item : table.items.values()) {
+                if (item.containsKey(index.partitionKey()) && (index.sortKey() == null || item.containsKey(index.sortKey()))
+                        && Expressions.evaluate(request.keyConditionExpression(), item, request.expressionAttributeNames(), request.expressionAttributeValues())) {
+                    matches.add(item);
+                }
+            }
+
+            Comparator<Map<String, AttributeValue>> indexOrder = Comparator.comparing(table::key);
+            if (index.sortKey() != null) {
+                indexOrder = Comparator.<Map<String, AttributeValue>, AttributeValue>comparing(item -> item.get(index.sortKey()), Expressions::compare)
+                        .thenComparing(table::key);
+            }
+            matches.sort(Boolean.FALSE.equals(request.scanIndexForward()) ? indexOrder.reversed() : indexOrder);
+
+            int start = 0;
+            if (!request.exclusiveStartKey().isEmpty()) {
+                String startKey = table.key(request.exclusiveStartKey());
+                while (start < matches.size() && !table.key(matches.get(start)).equals(startKey)) {
+                    start++;
+                }
+                start++;
+            }
+
+            int limit = request.limit() == null ? Integer.MAX_VALUE : request.limit();
+            int end = (int) Math.min(matches.size(), (long) start + limit);
+            List<Map<String, AttributeValue>> items = new ArrayList<>();
+
+            for (Map<String, AttributeValue> item : matches.subList(Math.min(start, end), end)) {
+                if (Expressions.evaluate(request.filterExpression(), item, request.expressionAttributeNames(), request.expressionAttributeValues())) {
+                    items.add(Expressions.project(request.projectionExpression(), item, request.expressionAttributeNames()));
+                }
+            }
+
+            int evaluated = Math.max(0, end - start);
+            QueryResponse.Builder response = QueryResponse.builder()
+                    .items(items)
+                    .count(items.size())
+                    .scannedCount(evaluated)
+                    .consumedCapacity(capacity(request.returnConsumedCapacity(), request.tableName(),
+                            Math.max(1, (evaluated + ITEMS_PER_READ_UNIT - 1) / ITEMS_PER_READ_UNIT) * READ_UNITS));
+
+            if (end < matches.size() && evaluated > 0) {
+                Map<String, AttributeValue> last = matches.get(end - 1);
+                Map<String, AttributeValue> lastEvaluatedKey = new HashMap<>(table.keyOf(last));
+                lastEvaluatedKey.put(index.partitionKey(), last.get(index.partitionKey()));
+                if (index.sortKey() != null) {
+                    lastEvaluatedKey.put(index.sortKey(), last.get(index.sortKey()));
+                }
+                response.lastEvaluatedKey(lastEvaluatedKey);
+            }
+            return response.build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<DescribeTableResponse> describeTable(DescribeTableRequest request) {
+        return call(false, () -> DescribeTableResponse.builder()
+                .table(TableDescription.builder()
+                        .tableName(request.tableName())
+                        .itemCount((long) table(request.tableName()).items.size())
+                        .build())
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<BatchGetItemResponse> batchGetItem(BatchGetItemRequest request) {
+        return call(false, () -> {
+            Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+            Map<String, KeysAndAttributes> unprocessed = new HashMap<>();
+
+            for (Map.Entry<String, KeysAndAttributes> tableRequest : request.requestItems().entrySet()) {
+                Table table = table(tableRequest.getKey());
+                KeysAndAttributes keysAndAttributes = tableRequest.getValue();
+                List<Map<String, AttributeValue>> found = new ArrayList<>();
+                List<Map<String, AttributeValue>> throttledKeys = new ArrayList<>();
+
+                for (Map<String, AttributeValue> key : keysAndAttributes.keys()) {
+                    if (shouldThrottle()) {
+                        throttledKeys.add(key);
+                        continue;
+                    }
+
+                    Map<String, AttributeValue> item = table.items.get(table.key(key));
+                    if (item != null) {
+                        found.add(Expressions.project(keysAndAttributes.projectionExpression(), item, keysAndAttributes.expressionAttributeNames()));
+                    }
+                }
+
+                responses.put(tableRequest.getKey(), found);
+                if (!throttledKeys.isEmpty()) {
+                    unprocessed.put(tableRequest.getKey(), keysAndAttributes.toBuilder().keys(throttledKeys).build());
+                }
+            }
+
+            List<ConsumedCapacity> consumedCapacity = new ArrayList<>();
+            responses.forEach((tableName, found) -> consumedCapacity.add(capacity(request.returnConsumedCapacity(), tableName, Math.max(1, found.size()) * READ_UNITS)));
+
+            return BatchGetItemResponse.builder()
+                    .responses(responses)
+                    .unprocessedKeys(unprocessed)
+                    .consumedCapacity(request.returnConsumedCapacity() == ReturnConsumedCapacity.TOTAL ? consumedCapacity : null)
+                    .build();
+        });
+    }
+
+    @Override
+    public CompletableFuture<BatchWriteItemResponse> batchWriteItem(BatchWriteItemRequest request) {
+        return call(false, () -> {
+            Map<String, List<WriteRequest>> unprocessed = new HashMap<>();
+            List<ConsumedCapacity> consumedCapacity = new ArrayList<>();
+
+            for (Map.Entry<String, List<WriteRequest>> tableRequest : request.requestItems().entrySet()) {
+                Table table = table(tableRequest.getKey());
+                List<WriteRequest> throttledWrites = new ArrayList<>();
+
+                for (WriteRequest writeRequest : tableRequest.getValue()) {
+                    if (shouldThrottle()) {
+                        throttledWrites.add(writeRequest);
+                    } else if (writeRequest.putRequest() != null) {
+                        Map<String, AttributeValue> item = writeRequest.putRequest().item();
+                        table.items.put(table.key(item), new HashMap<>(item));
+                    } else {
+                        table.items.remove(table.key(writeRequest.deleteRequest().key()));
+                    }
+                }
+
+                if (!throttledWrites.isEmpty()) {
+                    unprocessed.put(tableRequest.getKey(), throttledWrites);
+                }
+
+                int written = tableRequest.getValue().size() - throttledWrites.size();
+                consumedCapacity.add(capacity(request.returnConsumedCapacity(), tableRequest.getKey(), written * WRITE_UNITS));
+            }
+
+            return BatchWriteItemResponse.builder()
+                    .unprocessedItems(unprocessed)
+                    .consumedCapacity(request.returnConsumedCapacity() == ReturnConsumedCapacity.TOTAL ? consumedCapacity : null)
+                    .build();
+        });
+    }
+
+    // All conditions are checked before any write is applied, with every table involved locked in name order
+    @Override
+    public CompletableFuture<TransactWriteItemsResponse> transactWriteItems(TransactWriteItemsRequest request) {
+        return call(true, () -> {
+            TreeMap<String, Table> lockedTables = new TreeMap<>();
+            for (TransactWriteItem transactItem : request.transactItems()) {
+                lockedTables.put(transactTableName(transactItem), table(transactTableName(transactItem)));
+            }
+
+            return withLocks(new ArrayList<>(lockedTables.values()), 0, () -> {
+                List<CancellationReason> reasons = new ArrayList<>();
+                boolean canceled = false;
+
+                for (TransactWriteItem transactItem : request.transactItems()) {
+                    Table table = table(transactTableName(transactItem));
+                    Map<String, AttributeValue> existing = table.items.get(table.key(transactKey(transactItem)));
+
+                    try {
+                        if (transactItem.put() != null) {
+                            checkCondition(transactItem.put().conditionExpression(), existing, transactItem.put().expressionAttributeNames(),
+                                    transactItem.put().expressionAttributeValues(), transactItem.put().returnValuesOnConditionCheckFailure());
+                        } else if (transactItem.update() != null) {
+                            checkCondition(transactItem.update().conditionExpression(), existing, transactItem.update().expressionAttributeNames(),
+                                    transactItem.update().expressionAttributeValues(), transactItem.update().returnValuesOnConditionCheckFailure());
+                        } else if (transactItem.delete() != null) {
+                            checkCondition(transactItem.delete().conditionExpression(), existing, transactItem.delete().expressionAttributeNames(),
+                                    transactItem.delete().expressionAttributeValues(), transactItem.delete().returnValuesOnConditionCheckFailure());
+                        } else {
+                            checkCondition(transactItem.conditionCheck().conditionExpression(), existing, transactItem.conditionCheck().expressionAttributeNames(),
+                                    transactItem.conditionCheck().expressionAttributeValues(), transactItem.conditionCheck().returnValuesOnConditionCheckFailure());
+                        }
+                        reasons.add(CancellationReason.builder().code("None").build());
+                    } catch (ConditionalCheckFailedException e) {
+                        canceled = true;
+                        reasons.add(CancellationReason.builder()
+                                .code("ConditionalCheckFailed")
+                                .message(e.getMessage())
+                                .item(e.hasItem() ? e.item() : null)
+                                .build());
+                    }
+                }
+
+                if (canceled) {
+                    throw (TransactionCanceledException) TransactionCanceledException.builder()
+                            .message("Transaction cancelled, please refer cancellation reasons for specific reasons")
+                            .cancellationReasons(reasons)
+                            .statusCode(400)
+                            .build();
+                }
+
+                Map<String, Double> capacityByTable = new TreeMap<>();
+
+                for (TransactWriteItem transactItem : request.transactItems()) {
+                    String tableName = transactTableName(transactItem);
+                    Table table = table(tableName);
+                    String key = table.key(transactKey(transactItem));
+
+                    if (transactItem.put() != null) {
+                        table.items.put(key, new HashMap<>(transactItem.put().item()));
+                    } else if (transactItem.update() != null) {
+                        Map<String, AttributeValue> existing = table.items.get(key);
+                        table.items.put(key, Expressions.update(transactItem.update().updateExpression(),
+                                existing == null ? new HashMap<>(transactItem.update().key()) : existing,
+                                transactItem.update().expressionAttributeNames(), transactItem.update().expressionAttributeValues()));
+                    } else if (transactItem.delete() != null) {
+                        table.items.remove(key);
+                    }
+
+                    // transactional requests cost twice as much as standard ones
+                    capacityByTable.merge(tableName, 2 * WRITE_UNITS, Double::sum);
+                }
+
+                List<ConsumedCapacity> consumedCapacity = new ArrayList<>();
+                capacityByTable.forEach((tableName, capacityUnits) ->
+                        consumedCapacity.add(capacity(request.returnConsumedCapacity(), tableName, capacityUnits)));
+
+                return TransactWriteItemsResponse.builder()
+                        .consumedCapacity(request.returnConsumedCapacity() == ReturnConsumedCapacity.TOTAL ? consumedCapacity : null)
+                        .build();
+            });
+        });
+    }
+
+    @Override
+    public String serviceName() {
+        return "dynamodb";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private <T> CompletableFuture<T> call(boolean throttleable, Supplier<T> operation) {
+        calls.incrementAndGet();
+
+        long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+
+        return CompletableFuture.supplyAsync(() -> {
+            if (throttleable && shouldThrottle()) {
+                throw (ProvisionedThroughputExceededException) ProvisionedThroughputExceededException.builder()
+                        .message("Rate of requests exceeds the allowed throughput (simulated)")
+                        .statusCode(400)
+                        .build();
+            }
+            return operation.get();
+        }, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS));
+    }
+
+    // Approximates capacity for items under 1KB: half a unit per eventually consistent read, one unit per write
+    private static ConsumedCapacity capacity(ReturnConsumedCapacity returnConsumedCapacity, String tableName, double capacityUnits) {
+        if (returnConsumedCapacity != ReturnConsumedCapacity.TOTAL && returnConsumedCapacity != ReturnConsumedCapacity.INDEXES) {
+            return null;
+        }
+
+        return ConsumedCapacity.builder()
+                .tableName(tableName)
+                .capacityUnits(capacityUnits)
+                .build();
+    }
+
+    private boolean shouldThrottle() {
+        if (throttleRate > 0 && ThreadLocalRandom.current().nextDouble() < throttleRate) {
+            throttles.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void checkCondition(String conditionExpression, Map<String, AttributeValue> existing, Map<String, String> names,
+            Map<String, AttributeValue> values, ReturnValuesOnConditionCheckFailure returnValuesOnFailure) {
+        if (Expressions.evaluate(conditionExpression, existing, names, values)) {
+            return;
+        }
+
+        ConditionalCheckFailedException.Builder failure = ConditionalCheckFailedException.builder()
+                .message("The conditional request failed")
+                .statusCode(400);
+
+        if (returnValuesOnFailure == ReturnValuesOnConditionCheckFailure.ALL_OLD && existing != null) {
+            failure.item(existing);
+        }
+
+        throw (ConditionalCheckFailedException) failure.build();
+    }
+
+    private static String transactTableName(TransactWriteItem transactItem) {
+        if (transactItem.put() != null) {
+            return transactItem.put().tableName();
+        }
+        if (transactItem.update() != null) {
+            return transactItem.update().tableName();
+        }
+        return transactItem.delete() != null ? transactItem.delete().tableName() : transactItem.conditionCheck().tableName();
+    }
+
+    private static Map<String, AttributeValue> transactKey(TransactWriteItem transactItem) {
+        if (transactItem.put() != null) {
+            return transactItem.put().item();
+        }
+        if (transactItem.update() != null) {
+            return transactItem.update().key();
+        }
+        return transactItem.delete() != null ? transactItem.delete().key() : transactItem.conditionCheck().key();
+    }
+
+    private static <T> T withLocks(List<Table> lockedTables, int index, Supplier<T> operation) {
+        if (index == lockedTables.size()) {
+            return operation.get();
+        }
+
+        synchronized (lockedTables.get(index)) {
+            return withLocks(lockedTables, index + 1, operation);
+        }
+    }
+
+    private Table table(String tableName) {
+        return tables.computeIfAbsent(tableName, name -> new Table("id"));
+    }
+
+    private record Index(String partitionKey, String sortKey) {}
+
+    private static class Table {
+
+        private final String hashKey;
+        private final ConcurrentSkipListMap<String, Map<String, AttributeValue>> items = new ConcurrentSkipListMap<>();
+        private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+
+        private Table(String hashKey) {
+            this.hashKey = hashKey;
+        }
+
+        private String key(Map<String, AttributeValue> item) {
+            AttributeValue keyValue = item.get(hashKey);
+            return keyValue.s() != null ? keyValue.s() : keyValue.n();
+        }
+
+        private Map<String, AttributeValue> keyOf(Map<String, AttributeValue> item) {
+            return Map.of(hashKey, item.get(hashKey));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import java.util.UUID;
+
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+// A Lambda Context for running the handler outside of Lambda; logs are discarded unless verbose is set
+public class LocalContext implements Context {
+
+    private final long deadlineMillis;
+    private final boolean verbose;
+
+    public LocalContext(long timeoutMillis, boolean verbose) {
+        this.deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+        this.verbose = verbose;
+    }
+
+    public LocalContext() {
+        this(60_000, false);
+    }
+
+    @Override
+    public String getAwsRequestId() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Override
+    public String getLogGroupName() {
+        return "local";
+    }
+
+    @Override
+    public String getLogStreamName() {
+        return "local";
+    }
+
+    @Override
+    public String getFunctionName() {
+        return "AppnameBeansFunction";
+    }
+
+    @Override
+    public String getFunctionVersion() {
+        return "$LATEST";
+    }
+
+    @Override
+    public String getInvokedFunctionArn() {
+        return "arn:aws:lambda:us-east-1:000000000000:function:AppnameBeansFunction";
+    }
+
+    @Override
+    public CognitoIdentity getIdentity() {
+        return null;
+    }
+
+    @Override
+    public ClientContext getClientContext() {
+        return null;
+    }
+
+    @Override
+    public int getRemainingTimeInMillis() {
+        // clamped, so that a long timeout does not wrap around to an already expired one
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, deadlineMillis - System.currentTimeMillis()));
+    }
+
+    @Override
+    public int getMemoryLimitInMB() {
+        return 512;
+    }
+
+    @Override
+    public LambdaLogger getLogger() {
+        return new LambdaLogger() {
+            @Override
+            public void log(String message) {
+                if (verbose) {
+                    System.out.print(message);
+                }
+            }
+
+            @Override
+            public void log(byte[] message) {
+                if (verbose) {
+                    System.out.print(new String(message));
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,122 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.Test;
+
+public class QuantityCoalescerTest {
+
+    // Long enough that the adjustments sent right after the first one queue up behind its write
+    private static final long LATENCY_MILLIS = 50;
+
+    private final InMemoryDynamoDbAsyncClient client = new InMemoryDynamoDbAsyncClient(LATENCY_MILLIS, 0, 0);
+    private final DynamoDBHandler dbHandler = new DynamoDBHandler(client);
+    private final QuantityCoalescer coalescer = new QuantityCoalescer(dbHandler, true, 100);
+
+    private Entity createBean(int quantity) {
+        return dbHandler.putEntity(new BaseEntity("bean", quantity), deadline()).join();
+    }
+
+    private static Deadline deadline() {
+        return Deadline.after(10_000);
+    }
+
+    @Test
+    public void adjustQuantity_shouldSendALoneAdjustmentAtOnce() {
+        Entity bean = createBean(10);
+        long calls = client.getCalls();
+
+        Entity adjusted = coalescer.adjustQuantity(bean.getId(), 5, deadline()).join();
+
+        assertEquals(15, adjusted.getQuantity());
+        assertEquals(bean.getVersion() + 1, adjusted.getVersion());
+        assertEquals(1, client.getCalls() - calls);
+    }
+
+    @Test
+    public void adjustQuantity_shouldMergeAdjustmentsQueuedBehindAWrite() {
+        Entity bean = createBean(100);
+        long calls = client.getCalls();
+
+        CompletableFuture<Entity> first = coalescer.adjustQuantity(bean.getId(), 1, deadline());
+        List<CompletableFuture<Entity>> increments = new ArrayList<>();
+        List<CompletableFuture<Entity>> decrements = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            increments.add(coalescer.adjustQuantity(bean.getId(), 5, deadline()));
+            decrements.add(coalescer.adjustQuantity(bean.getId(), -3, deadline()));
+        }
+
+        assertEquals(101, first.join().getQuantity());
+
+        // the queued adjustments are answered as if applied one by one: the increments, then the decrements
+        long version = bean.getVersion() + 1;
+        int quantity = 101;
+
+        for (CompletableFuture<Entity> increment : increments) {
+            quantity += 5;
+            version++;
+            assertEquals(quantity, increment.join().getQuantity());
+            assertEquals(version, increment.join().getVersion());
+        }
+
+        for (CompletableFuture<Entity> decrement : decrements) {
+            quantity -= 3;
+            version++;
+            assertEquals(quantity, decrement.join().getQuantity());
+            assertEquals(version, decrement.join().getVersion());
+        }
+
+        assertEquals(111, quantity);
+        // the first adjustment on its own, then one merged write for the increments and one for the decrements
+        assertEquals(3, client.getCalls() - calls);
+
+        Entity stored = dbHandler.getEntity(bean.getId(), FieldSelection.ALL, deadline()).join();
+        assertEquals(111, stored.getQuantity());
+        assertEquals(version, stored.getVersion());
+    }
+
+    @Test
+    public void adjustQuantity_shouldWriteSeparatelyWhenASumIsOutOfRange() {
+        Entity bean = createBean(10);
+
+        CompletableFuture<Entity> first = coalescer.adjustQuantity(bean.getId(), -1, deadline());
+        CompletableFuture<Entity> second = coalescer.adjustQuantity(bean.getId(), -5, deadline());
+        CompletableFuture<Entity> third = coalescer.adjustQuantity(bean.getId(), -5, deadline());
+
+        assertEquals(9, first.join().getQuantity());
+        // together they would take 9 below 0, but the first of them fits on its own
+        assertEquals(4, second.join().getQuantity());
+
+        CompletionException failure = assertThrows(CompletionException.class, third::join);
+        assertInstanceOf(ConflictException.class, AsyncUtils.unwrap(failure));
+
+        assertEquals(4, dbHandler.getEntity(bean.getId(), FieldSelection.ALL, deadline()).join().getQuantity());
+    }
+
+    @Test
+    public void adjustQuantity_shouldWriteEachAdjustmentWhenDisabled() {
+        QuantityCoalescer disabled = new QuantityCoalescer(dbHandler, false, 100);
+        Entity bean = createBean(10);
+        long calls = client.getCalls();
+
+        List<CompletableFuture<Entity>> results = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            results.add(disabled.adjustQuantity(bean.getId(), 1, deadline()));
+        }
+
+        results.forEach(CompletableFuture::join);
+
+        assertEquals(4, client.getCalls() - calls);
+        assertEquals(14, dbHandler.getEntity(bean.getId(), FieldSelection.ALL, deadline()).join().getQuantity());
+        assertEquals(4, results.stream().map(result -> result.join().getVersion()).distinct().count());
+    }
+}
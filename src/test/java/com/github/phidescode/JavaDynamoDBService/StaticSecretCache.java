@@ -0,0 +1,31 @@
+package com.github.phidescode.JavaDynamoDBService;
+
+import com.amazonaws.secretsmanager.caching.SecretCache;
+
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+
+// A SecretCache that always returns the same secret without calling Secrets Manager
+public class StaticSecretCache extends SecretCache {
+
+    private final String secret;
+
+    public StaticSecretCache(String secret) {
+        super(SecretsManagerClient.builder()
+                .region(Region.US_EAST_1)
+                .credentialsProvider(AnonymousCredentialsProvider.create())
+                .build());
+        this.secret = secret;
+    }
+
+    @Override
+    public String getSecretString(String secretId) {
+        return secret;
+    }
+
+    @Override
+    public boolean refreshNow(String secretId) {
+        return true;
+    }
+}